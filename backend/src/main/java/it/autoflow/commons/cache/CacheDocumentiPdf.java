@@ -0,0 +1,106 @@
+package it.autoflow.commons.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import it.autoflow.commons.dto.CacheDocumentiStatoDTO;
+import it.autoflow.commons.entity.DocumentoPDF;
+import it.autoflow.commons.service.FileStorageService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+
+/**
+ * Cache in memoria dei PDF scaricati più spesso (le fatture recenti vengono aperte
+ * da cliente, venditore e amministrazione), così il download non rilegge il file.
+ * <p>
+ * La chiave è id + ultimaModifica del documento: una rigenerazione cambia la chiave,
+ * quindi una copia vecchia non può mai essere servita, nemmeno se arriva da un altro nodo.
+ * Caffeine limita la cache per peso in byte e sceglie cosa tenere con W-TinyLFU:
+ * un PDF scaricato una volta sola non scalza quelli richiesti di continuo.
+ * I file più grandi di max-voce-bytes non entrano in cache e vengono serviti dal disco.
+ */
+@Component
+public class CacheDocumentiPdf {
+
+    private record Chiave(Long documentoId, LocalDateTime ultimaModifica) {
+    }
+
+    private final FileStorageService fileStorageService;
+    private final Cache<Chiave, byte[]> cache;
+    private final long maxVoceBytes;
+
+    public CacheDocumentiPdf(FileStorageService fileStorageService,
+                             @Value("${autoflow.pdf.cache.max-bytes:67108864}") long maxBytes,
+                             @Value("${autoflow.pdf.cache.max-voce-bytes:2097152}") long maxVoceBytes) {
+        this.fileStorageService = fileStorageService;
+        this.maxVoceBytes = maxVoceBytes;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Chiave chiave, byte[] contenuto) -> contenuto.length)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Contenuto del documento pronto: dalla cache se presente, altrimenti letto
+     * dallo storage (e messo in cache se non troppo grande).
+     * Restituisce null se il file non esiste più.
+     */
+    public Resource contenuto(DocumentoPDF documento) {
+        Chiave chiave = new Chiave(documento.getId(), documento.getUltimaModifica());
+
+        // get con loader: richieste concorrenti sullo stesso documento leggono il file una volta sola
+        byte[] contenuto = cache.get(chiave, k -> leggi(documento.getPath()));
+        if (contenuto != null) {
+            return new ByteArrayResource(contenuto);
+        }
+
+        // file troppo grande per la cache (o mancante): servito direttamente dallo storage
+        File file = fileStorageService.load(documento.getPath());
+        return file.exists() ? new FileSystemResource(file) : null;
+    }
+
+    /**
+     * Rimuove tutte le versioni in cache del documento (rigenerato o eliminato).
+     */
+    public void invalida(Long documentoId) {
+        if (documentoId == null) return;
+        cache.asMap().keySet().removeIf(chiave -> documentoId.equals(chiave.documentoId()));
+    }
+
+    public CacheDocumentiStatoDTO statistiche() {
+        CacheStats stats = cache.stats();
+        CacheDocumentiStatoDTO dto = new CacheDocumentiStatoDTO();
+        dto.setVoci(cache.estimatedSize());
+        dto.setPesoBytes(cache.policy().eviction()
+                .map(e -> e.weightedSize().orElse(0L))
+                .orElse(0L));
+        dto.setHit(stats.hitCount());
+        dto.setMiss(stats.missCount());
+        dto.setHitRate(stats.hitRate());
+        dto.setEvizioni(stats.evictionCount());
+        return dto;
+    }
+
+    // null non viene messo in cache: il file troppo grande viene riletto dallo storage a ogni richiesta
+    private byte[] leggi(String path) {
+        File file = fileStorageService.load(path);
+        if (!file.exists() || file.length() > maxVoceBytes) {
+            return null;
+        }
+        try {
+            return Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Errore nella lettura del PDF da disco", e);
+        }
+    }
+}
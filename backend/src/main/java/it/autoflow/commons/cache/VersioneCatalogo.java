@@ -0,0 +1,82 @@
+package it.autoflow.commons.cache;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.WebRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * ETag delle risposte GET del catalogo pubblico (veicoli in showroom e optional).
+ * L'ETag è un'impronta del contenuto, non un contatore del nodo: stesso contenuto,
+ * stesso ETag su tutti i nodi e dopo un riavvio, così browser e CDN possono
+ * rivalidare con un 304 qualunque nodo risponda.
+ */
+@Component
+public class VersioneCatalogo {
+
+    // il browser rivalida sempre, la CDN può servire la copia per 60 secondi
+    private static final CacheControl CACHE_CONTROL = CacheControl.maxAge(Duration.ZERO)
+            .sMaxAge(Duration.ofSeconds(60))
+            .cachePublic()
+            .mustRevalidate();
+
+    /**
+     * Impronta di una sequenza di DTO: SHA-256 delle loro rappresentazioni testuali,
+     * in ordine, troncato a 64 bit. I DTO del catalogo hanno un toString con tutti i campi.
+     */
+    public static String impronta(Iterable<?> elementi) {
+        MessageDigest digest = sha256();
+        for (Object e : elementi) {
+            digest.update(String.valueOf(e).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+        return HexFormat.of().formatHex(digest.digest(), 0, 8);
+    }
+
+    /**
+     * Risposta GET condizionale con un'impronta già calcolata (es. quella dello snapshot):
+     * 304 se il client ha già questo contenuto, altrimenti 200 con il corpo calcolato
+     * solo in questo caso. L'impronta va letta prima del corpo: se nel frattempo arriva
+     * una modifica, il client riceve un ETag vecchio e rivaliderà alla richiesta successiva.
+     */
+    public <T> ResponseEntity<T> risposta(WebRequest request, String impronta, Supplier<T> corpo) {
+        if (request.checkNotModified(etag(impronta))) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .cacheControl(CACHE_CONTROL)
+                    .build();
+        }
+        return ResponseEntity.ok()
+                .cacheControl(CACHE_CONTROL)
+                .body(corpo.get());
+    }
+
+    /**
+     * Risposta GET condizionale per un corpo già letto (es. dal DB): il 304 non
+     * risparmia la lettura, ma evita di ritrasmettere il contenuto.
+     */
+    public <T> ResponseEntity<T> risposta(WebRequest request, T corpo) {
+        Iterable<?> elementi = corpo instanceof Iterable<?> lista ? lista : List.of(corpo);
+        return risposta(request, impronta(elementi), () -> corpo);
+    }
+
+    private static String etag(String impronta) {
+        return "\"catalogo-" + impronta + "\"";
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 non disponibile", e);
+        }
+    }
+}
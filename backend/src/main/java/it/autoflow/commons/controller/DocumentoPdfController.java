@@ -0,0 +1,128 @@
+package it.autoflow.commons.controller;
+
+import it.autoflow.commons.cache.CacheDocumentiPdf;
+import it.autoflow.commons.dto.CacheDocumentiStatoDTO;
+import it.autoflow.commons.dto.DocumentoPdfStatoDTO;
+import it.autoflow.commons.dto.SpazioStorageDTO;
+import it.autoflow.commons.entity.DocumentoPDF;
+import it.autoflow.commons.entity.StatoDocumento;
+import it.autoflow.commons.repository.DocumentoPDFRepository;
+import it.autoflow.commons.service.PdfDocumentService;
+import it.autoflow.commons.service.SpazioStorage;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.net.URI;
+
+/**
+ * Stato dei documenti PDF generati dalla coda di rendering.
+ * Le richieste di generazione rispondono 202 con l'URL da interrogare
+ * finché il documento non è READY (o FAILED).
+ */
+@RestController
+@RequestMapping("/api/documenti")
+@RequiredArgsConstructor
+public class DocumentoPdfController {
+
+    // secondi suggeriti al client tra un polling e l'altro
+    private static final String RETRY_AFTER = "2";
+
+    private final DocumentoPDFRepository documentoPDFRepository;
+    private final PdfDocumentService pdfDocumentService;
+    private final CacheDocumentiPdf cacheDocumentiPdf;
+    private final SpazioStorage spazioStorage;
+
+    // GET /api/documenti/{id}  → stato del documento
+    @GetMapping("/{id}")
+    public ResponseEntity<DocumentoPdfStatoDTO> stato(@PathVariable Long id) {
+        DocumentoPDF documento = documentoPDFRepository.findById(id)
+                .orElseThrow(() -> new ResponseStatusException(
+                        HttpStatus.NOT_FOUND,
+                        "DocumentoPDF non trovato con id: " + id
+                ));
+
+        ResponseEntity.BodyBuilder risposta = ResponseEntity.ok();
+        if (documento.getStato() == StatoDocumento.PENDING) {
+            risposta.header(HttpHeaders.RETRY_AFTER, RETRY_AFTER);
+        }
+        return risposta.body(toDto(documento));
+    }
+
+    // POST /api/documenti/fattura/{id}  → accoda il PDF della fattura
+    @PostMapping("/fattura/{id}")
+    public ResponseEntity<DocumentoPdfStatoDTO> richiediFattura(@PathVariable Long id) {
+        DocumentoPDF documento = pdfDocumentService.requestInvoicePdf(id);
+        return ResponseEntity.accepted()
+                .location(location(documento.getId()))
+                .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER)
+                .body(toDto(documento));
+    }
+
+    // POST /api/documenti/proposta/{id}  → accoda il PDF della proposta
+    @PostMapping("/proposta/{id}")
+    public ResponseEntity<DocumentoPdfStatoDTO> richiediProposta(@PathVariable Long id) {
+        DocumentoPDF documento = pdfDocumentService.requestProposalPdf(id);
+        return ResponseEntity.accepted()
+                .location(location(documento.getId()))
+                .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER)
+                .body(toDto(documento));
+    }
+
+    // POST /api/documenti/{id}/rigenera  → rigenera solo se i dati sono cambiati
+    @PostMapping("/{id}/rigenera")
+    public DocumentoPdfStatoDTO rigenera(@PathVariable Long id) {
+        return toDto(pdfDocumentService.regeneratePdf(id));
+    }
+
+    // GET /api/documenti/cache  → hit, miss ed evizioni della cache dei PDF scaricati
+    @GetMapping("/cache")
+    public CacheDocumentiStatoDTO statisticheCache() {
+        return cacheDocumentiPdf.statistiche();
+    }
+
+    // GET /api/documenti/storage  → spazio libero, prenotato e soglia minima dello storage
+    @GetMapping("/storage")
+    public SpazioStorageDTO statoStorage() {
+        return spazioStorage.stato();
+    }
+
+    /**
+     * Risposta 202 senza corpo per un documento non ancora pronto,
+     * usata anche dai download che trovano il PDF in elaborazione.
+     */
+    public static <T> ResponseEntity<T> inElaborazione(Long documentoId) {
+        return ResponseEntity.accepted()
+                .location(location(documentoId))
+                .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER)
+                .build();
+    }
+
+    /**
+     * Risposta 500 con lo stato e l'errore dell'ultimo rendering fallito.
+     * Il download non riprova da solo: la rigenerazione passa da
+     * POST /api/documenti/fattura/{id} o /api/documenti/{id}/rigenera.
+     */
+    public static ResponseEntity<DocumentoPdfStatoDTO> renderingFallito(DocumentoPDF documento) {
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .location(location(documento.getId()))
+                .body(toDto(documento));
+    }
+
+    private static URI location(Long documentoId) {
+        return URI.create("/api/documenti/" + documentoId);
+    }
+
+    private static DocumentoPdfStatoDTO toDto(DocumentoPDF entity) {
+        DocumentoPdfStatoDTO dto = new DocumentoPdfStatoDTO();
+        dto.setId(entity.getId());
+        dto.setNomeFile(entity.getNomeFile());
+        dto.setStato(entity.isPronto() ? StatoDocumento.READY : entity.getStato());
+        dto.setDimensioneBytes(entity.getDimensioneBytes());
+        dto.setErrore(entity.getErrore());
+        return dto;
+    }
+}
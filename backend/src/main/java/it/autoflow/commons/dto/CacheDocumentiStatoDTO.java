@@ -0,0 +1,14 @@
+package it.autoflow.commons.dto;
+
+import lombok.Data;
+
+@Data
+public class CacheDocumentiStatoDTO {
+
+    private long voci;
+    private long pesoBytes;
+    private long hit;
+    private long miss;
+    private double hitRate;
+    private long evizioni;
+}
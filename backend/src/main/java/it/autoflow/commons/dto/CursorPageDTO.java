@@ -0,0 +1,54 @@
+package it.autoflow.commons.dto;
+
+import lombok.Data;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Pagina di risultati con paginazione a cursore (keyset) sull'id:
+ * il client rimanda nextCursor come parametro "after" per la pagina successiva.
+ */
+@Data
+public class CursorPageDTO<T> {
+
+    public static final int LIMITE_MASSIMO = 500;
+
+    private List<T> items;
+
+    // id dell'ultimo elemento della pagina, null se non ci sono altre pagine
+    private Long nextCursor;
+
+    private boolean hasNext;
+
+    public static int normalizzaLimite(int limit) {
+        return Math.max(1, Math.min(limit, LIMITE_MASSIMO));
+    }
+
+    public static long normalizzaCursore(Long after) {
+        return after != null ? after : 0L;
+    }
+
+    /**
+     * Costruisce la pagina a partire da righe lette con limite + 1:
+     * la riga in più serve solo a sapere se esiste una pagina successiva.
+     */
+    public static <T> CursorPageDTO<T> of(List<T> righe, int limite, Function<T, Long> id) {
+        boolean hasNext = righe.size() > limite;
+        List<T> pagina = hasNext ? righe.subList(0, limite) : righe;
+
+        CursorPageDTO<T> dto = new CursorPageDTO<>();
+        dto.setItems(List.copyOf(pagina));
+        dto.setHasNext(hasNext);
+        dto.setNextCursor(hasNext ? id.apply(pagina.get(pagina.size() - 1)) : null);
+        return dto;
+    }
+
+    public <R> CursorPageDTO<R> map(Function<T, R> mapper) {
+        CursorPageDTO<R> dto = new CursorPageDTO<>();
+        dto.setItems(items.stream().map(mapper).toList());
+        dto.setHasNext(hasNext);
+        dto.setNextCursor(nextCursor);
+        return dto;
+    }
+}
@@ -0,0 +1,14 @@
+package it.autoflow.commons.dto;
+
+import it.autoflow.commons.entity.StatoDocumento;
+import lombok.Data;
+
+@Data
+public class DocumentoPdfStatoDTO {
+
+    private Long id;
+    private String nomeFile;
+    private StatoDocumento stato;
+    private Long dimensioneBytes;
+    private String errore;
+}
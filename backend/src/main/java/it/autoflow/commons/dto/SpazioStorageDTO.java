@@ -0,0 +1,13 @@
+package it.autoflow.commons.dto;
+
+import lombok.Data;
+
+@Data
+public class SpazioStorageDTO {
+
+    // -1 se non ancora campionato
+    private long liberiBytes;
+    private long riservatiBytes;
+    private long disponibiliBytes;
+    private long minimoBytes;
+}
@@ -8,7 +8,9 @@ import java.time.LocalDateTime;
 
 @Getter @Setter
 @Entity
-@Table(name = "documenti_pdf")
+@Table(name = "documenti_pdf", indexes = {
+        @Index(name = "idx_documenti_pdf_path", columnList = "path")
+})
 public class DocumentoPDF {
 
     @Id
@@ -20,11 +22,28 @@ public class DocumentoPDF {
     private String nomeFile;
 
     // path sul file system, es: "/var/autoflow/docs/fatture/fattura-1234.pdf"
-    @Column(nullable = false)
+    // null finché il documento è PENDING
     private String path;
 
     private Long dimensioneBytes;
 
     private LocalDateTime dataCreazione;
     private LocalDateTime ultimaModifica;
+
+    // null per i documenti creati prima della coda di rendering: equivale a READY
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private StatoDocumento stato;
+
+    // messaggio dell'ultimo errore di rendering (solo se FAILED)
+    @Column(length = 500)
+    private String errore;
+
+    // SHA-256 dei dati da cui è stato impaginato: se non cambia, la rigenerazione si salta
+    @Column(length = 64)
+    private String hashContenuto;
+
+    public boolean isPronto() {
+        return stato == null || stato == StatoDocumento.READY;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,7 @@
+package it.autoflow.commons.entity;
+
+public enum StatoDocumento {
+    PENDING,
+    READY,
+    FAILED
+}
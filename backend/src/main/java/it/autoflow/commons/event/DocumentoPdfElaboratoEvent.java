@@ -0,0 +1,11 @@
+package it.autoflow.commons.event;
+
+import it.autoflow.commons.entity.StatoDocumento;
+
+/**
+ * Pubblicato dalla coda di rendering quando un DocumentoPDF esce dallo stato PENDING
+ * (READY oppure FAILED). Punto di aggancio per le notifiche al client.
+ */
+public record DocumentoPdfElaboratoEvent(Long documentoId,
+                                         StatoDocumento stato) {
+}
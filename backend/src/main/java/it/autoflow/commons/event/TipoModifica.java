@@ -0,0 +1,7 @@
+package it.autoflow.commons.event;
+
+public enum TipoModifica {
+    CREAZIONE,
+    MODIFICA,
+    ELIMINAZIONE
+}
@@ -0,0 +1,113 @@
+package it.autoflow.commons.pdf;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * Parte statica di un layout PDF (etichette, intestazioni, sfondi).
+ * Viene disegnata una sola volta: si conservano gli operatori del content stream
+ * e il dizionario delle risorse (solo font Standard 14, non incorporati).
+ * Gli operatori vengono compressi una volta sola; per ogni documento {@link #form(PDDocument)}
+ * crea un form XObject con quei byte già compressi,
+ * da disegnare con drawForm prima dei campi variabili.
+ * <p>
+ * Gli oggetti PDFBox non sono thread-safe e quelli agganciati a un documento vengono
+ * modificati quando lo si salva: il dizionario conservato qui non viene mai agganciato
+ * a nessun documento, ogni form ne riceve una copia profonda. Così il modello si può
+ * usare da più thread di rendering insieme.
+ */
+public final class ModelloPdf {
+
+    @FunctionalInterface
+    public interface Disegno {
+        void disegna(PDPageContentStream cs) throws IOException;
+    }
+
+    private final PDRectangle formato;
+    // operatori del content stream già compressi con Flate
+    private final byte[] compresso;
+    private final COSDictionary risorse;
+
+    private ModelloPdf(PDRectangle formato, byte[] compresso, COSDictionary risorse) {
+        this.formato = formato;
+        this.compresso = compresso;
+        this.risorse = risorse;
+    }
+
+    public static ModelloPdf di(PDRectangle formato, Disegno disegno) {
+        try (PDDocument doc = new PDDocument()) {
+            // PDPageContentStream scrive su una pagina o su un appearance stream, che è un form XObject:
+            // così il modello si disegna con gli stessi metodi usati per le pagine
+            PDAppearanceStream form = new PDAppearanceStream(doc);
+            form.setBBox(formato);
+            form.setResources(new PDResources());
+            try (PDPageContentStream cs = new PDPageContentStream(doc, form)) {
+                disegno.disegna(cs);
+            }
+            // compresso una volta qui: ogni documento copia i byte così come sono
+            COSStream stream = doc.getDocument().createCOSStream();
+            try (OutputStream os = stream.createOutputStream(COSName.FLATE_DECODE)) {
+                os.write(form.getContentStream().toByteArray());
+            }
+            byte[] compresso;
+            try (InputStream in = stream.createRawInputStream()) {
+                compresso = in.readAllBytes();
+            }
+            return new ModelloPdf(formato, compresso, form.getResources().getCOSObject());
+        } catch (IOException e) {
+            throw new IllegalStateException("Errore nella preparazione del modello PDF", e);
+        }
+    }
+
+    public PDFormXObject form(PDDocument doc) throws IOException {
+        PDFormXObject form = new PDFormXObject(doc);
+        COSStream stream = form.getCOSObject();
+        try (OutputStream os = stream.createRawOutputStream()) {
+            os.write(compresso);
+        }
+        stream.setItem(COSName.FILTER, COSName.FLATE_DECODE);
+        form.setBBox(formato);
+        form.setResources(new PDResources((COSDictionary) copia(risorse)));
+        return form;
+    }
+
+    // dizionari e array vengono copiati; nomi e numeri sono immutabili e si condividono
+    private static COSBase copia(COSBase oggetto) {
+        if (oggetto instanceof COSStream) {
+            throw new IllegalStateException("Il modello PDF ammette solo font Standard 14, senza stream incorporati");
+        }
+        if (oggetto instanceof COSObject riferimento) {
+            return copia(riferimento.getObject());
+        }
+        if (oggetto instanceof COSDictionary dizionario) {
+            COSDictionary nuovo = new COSDictionary();
+            for (Map.Entry<COSName, COSBase> voce : dizionario.entrySet()) {
+                nuovo.setItem(voce.getKey(), copia(voce.getValue()));
+            }
+            return nuovo;
+        }
+        if (oggetto instanceof COSArray array) {
+            COSArray nuovo = new COSArray();
+            for (int i = 0; i < array.size(); i++) {
+                nuovo.add(copia(array.get(i)));
+            }
+            return nuovo;
+        }
+        return oggetto;
+    }
+}
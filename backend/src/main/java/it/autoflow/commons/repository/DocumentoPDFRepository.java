@@ -2,6 +2,64 @@ package it.autoflow.commons.repository;
 
 import it.autoflow.commons.entity.DocumentoPDF;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
 
 public interface DocumentoPDFRepository extends JpaRepository<DocumentoPDF, Long> {
-}
\ No newline at end of file
+
+    // documenti che puntano allo stesso file (storage content-addressed)
+    long countByPath(String path);
+
+    // tutti i file in uso, per la manutenzione dello storage
+    @Query("select distinct d.path from DocumentoPDF d where d.path is not null")
+    List<String> findPathUsati();
+
+    interface DocumentoDaArchiviare {
+        String getPath();
+
+        LocalDateTime getDataCreazione();
+    }
+
+    // documenti pronti creati prima della soglia e non ancora in un archivio mensile
+    @Query("""
+           select d.path as path, d.dataCreazione as dataCreazione
+           from DocumentoPDF d
+           where d.path is not null
+             and d.path not like '%!/%'
+             and d.dataCreazione < :soglia
+             and (d.stato is null or d.stato = it.autoflow.commons.entity.StatoDocumento.READY)
+           order by d.dataCreazione, d.id
+           """)
+    List<DocumentoDaArchiviare> findDaArchiviare(@Param("soglia") LocalDateTime soglia);
+
+    // PENDING accodati prima della soglia: il loro rendering può essere andato perso
+    @Query("""
+           select d.id from DocumentoPDF d
+           where d.stato = it.autoflow.commons.entity.StatoDocumento.PENDING
+             and (d.ultimaModifica is null or d.ultimaModifica < :soglia)
+           order by d.id
+           """)
+    List<Long> findIdInAttesaDa(@Param("soglia") LocalDateTime soglia);
+
+    // sposta in avanti la scadenza solo se il documento è ancora PENDING e scaduto:
+    // se più nodi lo trovano insieme, uno solo lo riaccoda
+    @Modifying
+    @Query("""
+           update DocumentoPDF d set d.ultimaModifica = :ora
+           where d.id = :id
+             and d.stato = it.autoflow.commons.entity.StatoDocumento.PENDING
+             and (d.ultimaModifica is null or d.ultimaModifica < :soglia)
+           """)
+    int rinnovaInAttesa(@Param("id") Long id,
+                        @Param("soglia") LocalDateTime soglia,
+                        @Param("ora") LocalDateTime ora);
+
+    // sposta tutti i documenti da un file all'altro solo se puntano ancora a quello vecchio
+    @Modifying
+    @Query("update DocumentoPDF d set d.path = :nuovo where d.path = :vecchio")
+    int aggiornaPath(@Param("vecchio") String vecchio, @Param("nuovo") String nuovo);
+}
@@ -0,0 +1,267 @@
+package it.autoflow.commons.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Archivi mensili dei documenti vecchi: un file ZIP per mese ("archivio/2024-03.zip")
+ * al posto di migliaia di PDF sparsi, quindi meno inode e backup più rapidi.
+ * Le voci sono STORED (i PDF sono già compressi) e la directory centrale dello ZIP
+ * fa da indice: una voce si legge senza scorrere le altre.
+ * <p>
+ * Il path di un documento archiviato è "&lt;contenitore&gt;!/&lt;voce&gt;"; load() lo estrae
+ * in una copia locale sotto "archivio/estratti" al primo accesso e poi usa quella.
+ * Un contenitore non viene mai modificato sul posto: si riscrive in un temporaneo
+ * e lo si sostituisce con una move atomica, così i lettori vedono sempre uno ZIP completo.
+ */
+@Component
+public class ArchivioMensile {
+
+    static final String SEPARATORE = "!/";
+
+    private static final String CARTELLA = "archivio";
+    private static final String CARTELLA_ESTRATTI = "estratti";
+    private static final String ESTENSIONE = ".zip";
+
+    @Value("${autoflow.storage.base-path:./autoflow-storage}")
+    private String basePath;
+
+    public static boolean archiviato(String path) {
+        return path != null && path.contains(SEPARATORE);
+    }
+
+    Path root() {
+        return Paths.get(basePath).toAbsolutePath().normalize();
+    }
+
+    Path cartella() {
+        return root().resolve(CARTELLA);
+    }
+
+    // mese nel formato "2024-03"
+    String path(String mese, String voce) {
+        return contenitore(mese) + SEPARATORE + voce;
+    }
+
+    /**
+     * Copia locale della voce archiviata. Come per i file su disco,
+     * se la voce non esiste restituisce un File inesistente.
+     */
+    public File estrai(String path) {
+        int separatore = path.indexOf(SEPARATORE);
+        Path zip = Paths.get(path.substring(0, separatore));
+        String voce = path.substring(separatore + SEPARATORE.length());
+        Path copia = copia(path);
+        if (Files.exists(copia) || !Files.exists(zip)) {
+            return copia.toFile();
+        }
+
+        Path temp = null;
+        try (ZipFile archivio = new ZipFile(zip.toFile())) {
+            ZipEntry entry = archivio.getEntry(voce);
+            if (entry == null) {
+                return copia.toFile();
+            }
+            Files.createDirectories(copia.getParent());
+            temp = Files.createTempFile(copia.getParent(),
+                    FileStorageServiceImpl.PREFISSO_TEMP, FileStorageServiceImpl.SUFFISSO_TEMP);
+            try (InputStream in = archivio.getInputStream(entry)) {
+                Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(temp, copia, StandardCopyOption.ATOMIC_MOVE);
+            return copia.toFile();
+        } catch (IOException e) {
+            eliminaTemp(temp);
+            throw new RuntimeException("Errore nella lettura dall'archivio " + zip, e);
+        }
+    }
+
+    /**
+     * Elimina solo la copia estratta: la voce esce dal contenitore alla prossima compattazione.
+     */
+    public boolean eliminaEstratto(String path) {
+        try {
+            return Files.deleteIfExists(copia(path));
+        } catch (IOException e) {
+            // Se fallisce la delete non butto giù l’app
+            return false;
+        }
+    }
+
+    /**
+     * Aggiunge i file al contenitore del mese (voce → file su disco).
+     * Le voci già presenti restano quelle esistenti: il nome contiene l'hash, quindi il contenuto è lo stesso.
+     */
+    void aggiungi(String mese, Map<String, Path> file) throws IOException {
+        Files.createDirectories(cartella());
+        riscrivi(contenitore(mese), voce -> true, file);
+    }
+
+    /**
+     * Toglie dai contenitori le voci non più referenziate da nessun documento;
+     * un contenitore rimasto vuoto viene eliminato.
+     *
+     * @return numero di voci rimosse
+     */
+    int compatta(Set<String> riferiti) throws IOException {
+        if (!Files.isDirectory(cartella())) {
+            return 0;
+        }
+        List<Path> contenitori;
+        try (Stream<Path> file = Files.list(cartella())) {
+            contenitori = file.filter(p -> p.getFileName().toString().endsWith(ESTENSIONE)).toList();
+        }
+
+        int rimosse = 0;
+        for (Path zip : contenitori) {
+            String mese = mese(zip);
+            Set<String> vive = new HashSet<>();
+            int totale = 0;
+            try (ZipFile archivio = new ZipFile(zip.toFile())) {
+                for (ZipEntry entry : Collections.list(archivio.entries())) {
+                    totale++;
+                    if (riferiti.contains(path(mese, entry.getName()))) {
+                        vive.add(entry.getName());
+                    }
+                }
+            }
+            if (vive.size() == totale) {
+                continue;
+            }
+            if (vive.isEmpty()) {
+                Files.delete(zip);
+            } else {
+                riscrivi(zip, vive::contains, Map.of());
+            }
+            rimosse += totale - vive.size();
+        }
+        return rimosse;
+    }
+
+    /**
+     * Elimina le copie estratte prima della soglia:
+     * se servono ancora verranno estratte di nuovo.
+     */
+    void pulisciEstratti(Instant soglia) throws IOException {
+        Path estratti = cartella().resolve(CARTELLA_ESTRATTI);
+        if (!Files.isDirectory(estratti)) {
+            return;
+        }
+        List<Path> vecchi = new ArrayList<>();
+        try (Stream<Path> file = Files.walk(estratti)) {
+            file.filter(Files::isRegularFile)
+                    .filter(p -> p.toFile().lastModified() < soglia.toEpochMilli())
+                    .forEach(vecchi::add);
+        }
+        for (Path p : vecchi) {
+            Files.deleteIfExists(p);
+        }
+    }
+
+    // riscrive il contenitore con le voci esistenti accettate dal filtro più quelle nuove
+    private void riscrivi(Path zip, Predicate<String> tieni, Map<String, Path> nuove) throws IOException {
+        Path temp = Files.createTempFile(zip.getParent(),
+                FileStorageServiceImpl.PREFISSO_TEMP, FileStorageServiceImpl.SUFFISSO_TEMP);
+        try {
+            Set<String> scritte = new HashSet<>();
+            try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                if (Files.exists(zip)) {
+                    try (ZipFile esistente = new ZipFile(zip.toFile())) {
+                        for (ZipEntry entry : Collections.list(esistente.entries())) {
+                            if (!tieni.test(entry.getName())) {
+                                continue;
+                            }
+                            out.putNextEntry(voce(entry.getName(), entry.getSize(), entry.getCrc()));
+                            try (InputStream in = esistente.getInputStream(entry)) {
+                                in.transferTo(out);
+                            }
+                            out.closeEntry();
+                            scritte.add(entry.getName());
+                        }
+                    }
+                }
+                for (Map.Entry<String, Path> nuova : nuove.entrySet()) {
+                    if (!scritte.add(nuova.getKey())) {
+                        continue;
+                    }
+                    // STORED richiede dimensione e CRC prima dei dati
+                    out.putNextEntry(voce(nuova.getKey(), Files.size(nuova.getValue()), crc(nuova.getValue())));
+                    Files.copy(nuova.getValue(), out);
+                    out.closeEntry();
+                }
+            }
+            Files.move(temp, zip, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            eliminaTemp(temp);
+            throw e;
+        }
+    }
+
+    private static ZipEntry voce(String nome, long dimensione, long crc) {
+        ZipEntry entry = new ZipEntry(nome);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(dimensione);
+        entry.setCompressedSize(dimensione);
+        entry.setCrc(crc);
+        return entry;
+    }
+
+    private static long crc(Path file) throws IOException {
+        try (CheckedInputStream in = new CheckedInputStream(Files.newInputStream(file), new CRC32())) {
+            in.transferTo(OutputStream.nullOutputStream());
+            return in.getChecksum().getValue();
+        }
+    }
+
+    // "archivio/2024-03.zip!/fatture/..." → "archivio/estratti/2024-03/fatture/..."
+    private Path copia(String path) {
+        int separatore = path.indexOf(SEPARATORE);
+        return cartella().resolve(CARTELLA_ESTRATTI)
+                .resolve(mese(Paths.get(path.substring(0, separatore))))
+                .resolve(path.substring(separatore + SEPARATORE.length()))
+                .normalize();
+    }
+
+    private Path contenitore(String mese) {
+        return cartella().resolve(mese + ESTENSIONE);
+    }
+
+    // "archivio/2024-03.zip" → "2024-03"
+    private static String mese(Path zip) {
+        String nome = zip.getFileName().toString();
+        return nome.substring(0, nome.length() - ESTENSIONE.length());
+    }
+
+    private static void eliminaTemp(Path temp) {
+        if (temp == null) return;
+        try {
+            Files.deleteIfExists(temp);
+        } catch (IOException ignored) {
+            // il temporaneo resterà orfano, ma l'errore da riportare è quello originale
+        }
+    }
+}
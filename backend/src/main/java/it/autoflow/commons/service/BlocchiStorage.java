@@ -0,0 +1,33 @@
+package it.autoflow.commons.service;
+
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lock a strisce sui file dello storage su disco.
+ * Serializza chi riusa un file già presente (deduplica content-addressed) con chi
+ * lo elimina: chi elimina rilegge l'mtime sotto lock, quindi un file appena
+ * restituito da store() non sparisce prima che il documento che lo usa sia salvato.
+ * Due file diversi possono capitare sulla stessa striscia: si attendono a vicenda
+ * per poco, ma non c'è una mappa di lock che cresce con i file.
+ */
+@Component
+public class BlocchiStorage {
+
+    private static final int STRISCE = 64;
+
+    private final Lock[] strisce = new Lock[STRISCE];
+
+    public BlocchiStorage() {
+        for (int i = 0; i < STRISCE; i++) {
+            strisce[i] = new ReentrantLock();
+        }
+    }
+
+    public Lock per(Path file) {
+        return strisce[Math.floorMod(file.toAbsolutePath().normalize().hashCode(), STRISCE)];
+    }
+}
@@ -0,0 +1,122 @@
+package it.autoflow.commons.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Coda di rendering dei PDF.
+ * L'impaginazione (PDFBox, CPU) gira su un pool fisso grande quanto i core,
+ * con una coda limitata; la scrittura su storage e l'aggiornamento del DB
+ * (I/O) girano su virtual thread. Se la coda è piena il lavoro viene rifiutato:
+ * PDFBox non gira mai sul thread della richiesta HTTP che ha fatto commit.
+ * I lavori vivono solo in memoria: quelli rifiutati o persi (riavvio, pool chiuso)
+ * restano PENDING e vengono riaccodati da RecuperoRenderingPdf.
+ */
+@Component
+public class CodaRenderingPdf {
+
+    private final ThreadPoolExecutor impaginazione;
+    private final ExecutorService io = Executors.newVirtualThreadPerTaskExecutor();
+
+    public CodaRenderingPdf(@Value("${autoflow.pdf.render.thread:0}") int thread,
+                            @Value("${autoflow.pdf.render.coda-max:256}") int codaMax) {
+        int n = thread > 0 ? thread : Runtime.getRuntime().availableProcessors();
+        AtomicInteger contatore = new AtomicInteger();
+        this.impaginazione = new ThreadPoolExecutor(
+                n, n, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(codaMax),
+                r -> {
+                    Thread t = new Thread(r, "pdf-render-" + contatore.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+
+    /**
+     * Accoda un rendering. Se c'è una transazione attiva il lavoro parte solo
+     * dopo il commit, così il worker vede i dati appena scritti; in caso di
+     * rollback non parte affatto.
+     *
+     * @param layout    impagina il documento (su pool CPU)
+     * @param scrittura salva il documento e lo segna come pronto (su virtual thread)
+     * @param errore    invocato se una delle due fasi fallisce
+     * @param rifiutato invocato se la coda è piena: il lavoro non parte
+     */
+    public <T> void accoda(Supplier<T> layout, Consumer<T> scrittura, Consumer<Throwable> errore,
+                           Runnable rifiutato) {
+        Runnable avvio = () -> {
+            try {
+                CompletableFuture
+                        .supplyAsync(layout, impaginazione)
+                        .thenAcceptAsync(scrittura, io)
+                        .exceptionally(ex -> {
+                            errore.accept(ex.getCause() != null ? ex.getCause() : ex);
+                            return null;
+                        });
+            } catch (RejectedExecutionException e) {
+                rifiutato.run();
+            }
+        };
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    avvio.run();
+                }
+            });
+        } else {
+            avvio.run();
+        }
+    }
+
+    /**
+     * Esegue subito un lavoro sul pool di impaginazione, senza attendere il commit.
+     * Usato da chi deve generare più documenti in parallelo e attenderne il risultato:
+     * il chiamante limita da sé i lavori in volo (vedi {@link #thread()}). Se la coda
+     * è piena il future fallisce con RejectedExecutionException.
+     */
+    public <T> CompletableFuture<T> esegui(Supplier<T> lavoro) {
+        try {
+            return CompletableFuture.supplyAsync(lavoro, impaginazione);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Numero di thread del pool di impaginazione.
+     */
+    public int thread() {
+        return impaginazione.getCorePoolSize();
+    }
+
+    /**
+     * Numero di rendering in attesa di un thread di impaginazione.
+     */
+    public int inAttesa() {
+        return impaginazione.getQueue().size();
+    }
+
+    @PreDestroy
+    void chiudi() {
+        impaginazione.shutdown();
+        io.shutdown();
+    }
+}
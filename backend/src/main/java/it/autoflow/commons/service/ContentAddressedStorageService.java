@@ -0,0 +1,193 @@
+package it.autoflow.commons.service;
+
+import it.autoflow.commons.repository.DocumentoPDFRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Storage content-addressed: ogni file è salvato una sola volta, con il nome
+ * dato dallo SHA-256 del contenuto, in una cartella a due livelli ricavata
+ * dall'hash stesso ("3f/a2/3fa2c1...e9.pdf"). Due documenti identici condividono
+ * lo stesso file; il riferimento è il path salvato in DocumentoPDF, quindi un file
+ * viene eliminato solo quando nessun documento lo usa più.
+ * Si attiva con autoflow.storage.tipo=cas; folderKey e nome originale non
+ * determinano la posizione (del nome resta solo l'estensione).
+ */
+@Service
+@ConditionalOnProperty(name = "autoflow.storage.tipo", havingValue = "cas")
+@RequiredArgsConstructor
+public class ContentAddressedStorageService implements FileStorageService {
+
+    private static final String CARTELLA_TEMP = "tmp";
+
+    private final DocumentoPDFRepository documentoPDFRepository;
+    private final ArchivioMensile archivioMensile;
+    private final BlocchiStorage blocchiStorage;
+
+    @Value("${autoflow.storage.base-path:./autoflow-storage}")
+    private String basePath;
+
+    // stessa soglia della manutenzione: entro questo tempo un file riusato può non essere ancora referenziato
+    @Value("${autoflow.storage.manutenzione.eta-minima-minuti:60}")
+    private long etaMinimaMinuti;
+
+    @Override
+    public String store(File file, String folderKey) {
+        if (file == null) {
+            throw new IllegalArgumentException("File nullo");
+        }
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            return store(in, file.getName(), folderKey);
+        } catch (IOException e) {
+            throw new RuntimeException("Errore nel salvataggio del file su disco", e);
+        }
+    }
+
+    @Override
+    public String store(InputStream contenuto, String fileName, String folderKey) {
+        if (contenuto == null) {
+            throw new IllegalArgumentException("Contenuto nullo");
+        }
+        return store(fileName, folderKey, contenuto::transferTo);
+    }
+
+    @Override
+    public String store(String fileName, String folderKey, Scrittura scrittura) {
+        Path temp = null;
+        try {
+            Path root = root();
+            Path tempDir = root.resolve(CARTELLA_TEMP);
+            Files.createDirectories(tempDir);
+
+            // scrivo e calcolo l'hash in un solo passaggio
+            temp = Files.createTempFile(tempDir, FileStorageServiceImpl.PREFISSO_TEMP, FileStorageServiceImpl.SUFFISSO_TEMP);
+            MessageDigest digest = sha256();
+            try (OutputStream out = new BufferedOutputStream(
+                    new DigestOutputStream(Files.newOutputStream(temp), digest))) {
+                scrittura.scrivi(out);
+            }
+
+            Path target = percorso(root, HexFormat.of().formatHex(digest.digest()), estensione(fileName));
+            Lock lock = blocchiStorage.per(target);
+            lock.lock();
+            try {
+                if (Files.exists(target)) {
+                    // contenuto già presente: nessun byte in più su disco. Aggiorno l'mtime
+                    // così la manutenzione lo tratta come appena scritto finché il documento
+                    // che lo userà non è salvato
+                    Files.setLastModifiedTime(target, FileTime.from(Instant.now()));
+                    Files.delete(temp);
+                } else {
+                    Files.createDirectories(target.getParent());
+                    Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                }
+            } finally {
+                lock.unlock();
+            }
+            return target.toString();
+        } catch (IOException e) {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                    // il temporaneo resterà orfano, ma l'errore da riportare è quello originale
+                }
+            }
+            throw new RuntimeException("Errore nel salvataggio del file su disco", e);
+        }
+    }
+
+    @Override
+    public File load(String path) {
+        if (path == null || path.isBlank()) {
+            throw new IllegalArgumentException("path obbligatorio");
+        }
+        if (ArchivioMensile.archiviato(path)) {
+            return archivioMensile.estrai(path);
+        }
+        return Paths.get(path).toFile();
+    }
+
+    /**
+     * Elimina il file solo se nessun DocumentoPDF lo referenzia più.
+     * Va invocato dopo che il documento che lo usava ha cambiato path (o è stato eliminato).
+     * Il controllo e l'eliminazione avvengono sotto lo stesso lock della deduplica in store():
+     * se il file è stato riusato da poco, il documento che lo userà può non essere ancora
+     * salvato, quindi resta su disco e lo raccoglie la manutenzione quando è davvero orfano.
+     */
+    @Override
+    public boolean delete(String path) {
+        if (path == null || path.isBlank()) {
+            return false;
+        }
+        if (ArchivioMensile.archiviato(path)) {
+            if (documentoPDFRepository.countByPath(path) > 0) {
+                return false;
+            }
+            return archivioMensile.eliminaEstratto(path);
+        }
+        Path file = Paths.get(path);
+        Lock lock = blocchiStorage.per(file);
+        lock.lock();
+        try {
+            if (documentoPDFRepository.countByPath(path) > 0) {
+                return false;
+            }
+            long soglia = Instant.now().minus(Duration.ofMinutes(etaMinimaMinuti)).toEpochMilli();
+            if (file.toFile().lastModified() >= soglia) {
+                return false;
+            }
+            return Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // Se fallisce la delete non butto giù l’app
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Path root() {
+        return Paths.get(basePath).toAbsolutePath().normalize().resolve("cas");
+    }
+
+    // "3fa2c1...e9" → <root>/3f/a2/3fa2c1...e9.pdf
+    private static Path percorso(Path root, String hash, String estensione) {
+        return root.resolve(hash.substring(0, 2))
+                .resolve(hash.substring(2, 4))
+                .resolve(hash + estensione);
+    }
+
+    private static String estensione(String fileName) {
+        if (fileName == null) return "";
+        int dot = fileName.lastIndexOf('.');
+        return dot > 0 ? fileName.substring(dot) : "";
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 non disponibile", e);
+        }
+    }
+}
@@ -2,6 +2,8 @@ package it.autoflow.commons.service;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * Servizio per la gestione dello storage dei file nel file system locale.
@@ -9,6 +11,14 @@ import java.io.IOException;
  */
 public interface FileStorageService {
 
+    /**
+     * Scrive il contenuto di un file direttamente nello stream dello storage.
+     */
+    @FunctionalInterface
+    interface Scrittura {
+        void scrivi(OutputStream out) throws IOException;
+    }
+
     /**
      * Salva un file nella directory logica identificata da folderKey
      * (es. "2025/11/Fatture") e restituisce il path logico salvato
@@ -21,6 +31,28 @@ public interface FileStorageService {
      */
     String store(File file, String folderKey) throws IOException;
 
+    /**
+     * Salva il contenuto letto da uno stream, con una sola scrittura su disco.
+     *
+     * @param contenuto stream da copiare (non viene chiuso)
+     * @param fileName  nome del file (es. "fattura-AF-2025-001.pdf")
+     * @param folderKey chiave/cartella logica (es. "fatture/2025/11")
+     * @return percorso completo del file salvato
+     */
+    String store(InputStream contenuto, String fileName, String folderKey);
+
+    /**
+     * Salva un file il cui contenuto viene prodotto dal chiamante direttamente
+     * nello stream di destinazione, senza passare da un array di byte o da un
+     * file temporaneo (es. PDDocument::save).
+     *
+     * @param fileName  nome del file (es. "fattura-AF-2025-001.pdf")
+     * @param folderKey chiave/cartella logica (es. "fatture/2025/11")
+     * @param scrittura callback che scrive il contenuto
+     * @return percorso completo del file salvato
+     */
+    String store(String fileName, String folderKey, Scrittura scrittura);
+
     /**
      * Carica un file a partire dal path salvato.
      *
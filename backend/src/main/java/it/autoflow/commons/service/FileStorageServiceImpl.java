@@ -2,16 +2,38 @@ package it.autoflow.commons.service;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.concurrent.locks.Lock;
 
 @Service
+@ConditionalOnProperty(name = "autoflow.storage.tipo", havingValue = "locale", matchIfMissing = true)
 @RequiredArgsConstructor
 public class FileStorageServiceImpl implements FileStorageService {
 
+    // file in scrittura, non ancora rinominati con il nome definitivo
+    static final String PREFISSO_TEMP = ".autoflow-";
+    static final String SUFFISSO_TEMP = ".tmp";
+
+    // 64 bit dell'hash nel nome: collisioni trascurabili per cartella
+    private static final int LUNGHEZZA_HASH_NOME = 16;
+
+    private final ArchivioMensile archivioMensile;
+    private final BlocchiStorage blocchiStorage;
+
     /**
      * Cartella radice dove salvare i file.
      * Puoi configurarla in application.yml con:
@@ -28,10 +50,45 @@ public class FileStorageServiceImpl implements FileStorageService {
         if (file == null) {
             throw new IllegalArgumentException("File nullo");
         }
+
+        String originalName = file.getName();
+        if (originalName == null || originalName.isBlank()) {
+            originalName = "documento.pdf";
+        }
+
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            return store(in, originalName, folderKey);
+        } catch (IOException e) {
+            throw new RuntimeException("Errore nel salvataggio del file su disco", e);
+        }
+    }
+
+    @Override
+    public String store(InputStream contenuto, String fileName, String folderKey) {
+        if (contenuto == null) {
+            throw new IllegalArgumentException("Contenuto nullo");
+        }
+        return store(fileName, folderKey, contenuto::transferTo);
+    }
+
+    /**
+     * Il contenuto viene scritto una sola volta in un file temporaneo nella cartella
+     * di destinazione e poi rinominato con una move atomica: i lettori vedono il file
+     * completo oppure niente, e in caso di errore il temporaneo viene eliminato.
+     * Il nome finale contiene l'hash del contenuto ("fattura-AF-2025-001-3fa2c1d09e4b7a55.pdf"):
+     * nessuna ricerca di un nome libero, e due scrittori che arrivano allo stesso nome
+     * stanno scrivendo gli stessi byte, quindi la concorrenza non può corrompere nulla.
+     */
+    @Override
+    public String store(String fileName, String folderKey, Scrittura scrittura) {
+        if (fileName == null || fileName.isBlank()) {
+            throw new IllegalArgumentException("fileName obbligatorio");
+        }
         if (folderKey == null || folderKey.isBlank()) {
             throw new IllegalArgumentException("folderKey obbligatoria");
         }
 
+        Path temp = null;
         try {
             Path rootDir = Paths.get(basePath).toAbsolutePath().normalize();
             Path targetDir = rootDir.resolve(folderKey).normalize();
@@ -39,37 +96,69 @@ public class FileStorageServiceImpl implements FileStorageService {
             // crea le directory se non esistono
             Files.createDirectories(targetDir);
 
-            String originalName = file.getName();
-            if (originalName == null || originalName.isBlank()) {
-                originalName = "documento.pdf";
+            // stessa cartella della destinazione: la rename è atomica
+            // (createTempFile crea il file con CREATE_NEW, quindi il nome è solo nostro)
+            temp = Files.createTempFile(targetDir, PREFISSO_TEMP, SUFFISSO_TEMP);
+            MessageDigest digest = sha256();
+            try (OutputStream out = new BufferedOutputStream(
+                    new DigestOutputStream(Files.newOutputStream(temp), digest))) {
+                scrittura.scrivi(out);
             }
 
-            int dot = originalName.lastIndexOf('.');
-            String baseName = (dot > 0 ? originalName.substring(0, dot) : originalName);
-            String ext = (dot > 0 ? originalName.substring(dot) : "");
-
-            Path targetFile = targetDir.resolve(originalName);
-            int counter = 1;
-            // se esiste già, aggiungo un suffisso -1, -2, ...
-            while (Files.exists(targetFile)) {
-                String newName = baseName + "-" + counter + ext;
-                targetFile = targetDir.resolve(newName);
-                counter++;
+            Path targetFile = targetDir.resolve(nomeConHash(fileName, HexFormat.of().formatHex(digest.digest())));
+            Lock lock = blocchiStorage.per(targetFile);
+            lock.lock();
+            try {
+                if (Files.exists(targetFile)) {
+                    // stesso nome = stesso contenuto: il file c'è già. Aggiorno l'mtime
+                    // così la manutenzione non lo tratta come un orfano vecchio
+                    // finché il documento che lo userà non è salvato
+                    Files.setLastModifiedTime(targetFile, FileTime.from(Instant.now()));
+                    Files.delete(temp);
+                } else {
+                    Files.move(temp, targetFile, StandardCopyOption.ATOMIC_MOVE);
+                }
+            } finally {
+                lock.unlock();
             }
-
-            Files.copy(file.toPath(), targetFile, StandardCopyOption.REPLACE_EXISTING);
-
             return targetFile.toAbsolutePath().toString();
         } catch (IOException e) {
+            // niente file a metà sul disco
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                    // il temporaneo resterà orfano, ma l'errore da riportare è quello originale
+                }
+            }
             throw new RuntimeException("Errore nel salvataggio del file su disco", e);
         }
     }
 
+    // "fattura-AF-2025-001.pdf" → "fattura-AF-2025-001-<16 cifre esadecimali>.pdf"
+    private static String nomeConHash(String fileName, String hash) {
+        int dot = fileName.lastIndexOf('.');
+        String baseName = (dot > 0 ? fileName.substring(0, dot) : fileName);
+        String ext = (dot > 0 ? fileName.substring(dot) : "");
+        return baseName + "-" + hash.substring(0, LUNGHEZZA_HASH_NOME) + ext;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 non disponibile", e);
+        }
+    }
+
     @Override
     public File load(String path) {
         if (path == null || path.isBlank()) {
             throw new IllegalArgumentException("path obbligatorio");
         }
+        if (ArchivioMensile.archiviato(path)) {
+            return archivioMensile.estrai(path);
+        }
         return Paths.get(path).toFile();
     }
 
@@ -78,6 +167,9 @@ public class FileStorageServiceImpl implements FileStorageService {
         if (path == null || path.isBlank()) {
             return false;
         }
+        if (ArchivioMensile.archiviato(path)) {
+            return archivioMensile.eliminaEstratto(path);
+        }
         try {
             return Files.deleteIfExists(Paths.get(path));
         } catch (IOException e) {
@@ -91,12 +183,6 @@ public class FileStorageServiceImpl implements FileStorageService {
      * salva direttamente un array di byte.
      */
     public String store(byte[] bytes, String fileName, String folderKey) {
-        try {
-            Path temp = Files.createTempFile("autoflow-", "-" + fileName);
-            Files.write(temp, bytes);
-            return store(temp.toFile(), folderKey);
-        } catch (IOException e) {
-            throw new RuntimeException("Errore nel salvataggio da byte[]", e);
-        }
+        return store(fileName, folderKey, out -> out.write(bytes));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,176 @@
+package it.autoflow.commons.service;
+
+import it.autoflow.commons.repository.DocumentoPDFRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Stream;
+
+/**
+ * Manutenzione periodica dello storage su disco (backend locale e content-addressed):
+ * <ol>
+ *     <li>elimina i temporanei rimasti da scritture interrotte e i file che nessun DocumentoPDF usa più;</li>
+ *     <li>compatta gli archivi mensili togliendo le voci non più referenziate;</li>
+ *     <li>sposta i documenti più vecchi di mesi-archivio nell'archivio del loro mese;</li>
+ *     <li>elimina le copie estratte dagli archivi non più recenti.</li>
+ * </ol>
+ * Tocca solo file più vecchi di eta-minima-minuti: un file appena scritto
+ * può non essere ancora referenziato perché la transazione che salva il path non è finita.
+ * Lo storage content-addressed aggiorna l'mtime di un file quando lo riusa, e qui
+ * l'mtime viene riletto sotto {@link BlocchiStorage} subito prima di eliminare:
+ * un file riusato dopo la scansione non viene toccato.
+ */
+@Component
+@ConditionalOnExpression("'${autoflow.storage.tipo:locale}' != 's3'")
+@RequiredArgsConstructor
+public class ManutenzioneStorage {
+
+    private static final DateTimeFormatter MESE = DateTimeFormatter.ofPattern("yyyy-MM");
+
+    private final DocumentoPDFRepository documentoPDFRepository;
+    private final ArchivioMensile archivioMensile;
+    private final TransactionTemplate transactionTemplate;
+    private final BlocchiStorage blocchiStorage;
+
+    @Value("${autoflow.storage.manutenzione.eta-minima-minuti:60}")
+    private long etaMinimaMinuti;
+
+    // 0 disattiva l'archiviazione
+    @Value("${autoflow.storage.manutenzione.mesi-archivio:12}")
+    private int mesiArchivio;
+
+    @Value("${autoflow.storage.manutenzione.giorni-estratti:7}")
+    private int giorniEstratti;
+
+    @Scheduled(cron = "${autoflow.storage.manutenzione.cron:0 30 3 * * *}")
+    public synchronized void esegui() {
+        try {
+            eliminaOrfani();
+            archivioMensile.compatta(pathRiferiti());
+            if (mesiArchivio > 0) {
+                archivia(LocalDate.now().withDayOfMonth(1).minusMonths(mesiArchivio).atStartOfDay());
+            }
+            archivioMensile.pulisciEstratti(Instant.now().minus(Duration.ofDays(giorniEstratti)));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Errore nella manutenzione dello storage", e);
+        }
+    }
+
+    void eliminaOrfani() throws IOException {
+        Path root = archivioMensile.root();
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        long soglia = Instant.now().minus(Duration.ofMinutes(etaMinimaMinuti)).toEpochMilli();
+
+        List<Path> candidati;
+        try (Stream<Path> file = Files.walk(root)) {
+            candidati = file.filter(Files::isRegularFile)
+                    .filter(p -> p.toFile().lastModified() < soglia)
+                    .toList();
+        }
+
+        // letti dopo la scansione: un file già abbastanza vecchio, se è in uso, è già referenziato
+        Set<String> riferiti = pathRiferiti();
+        Path archivio = archivioMensile.cartella();
+        for (Path p : candidati) {
+            boolean orfano = !p.startsWith(archivio) && !riferiti.contains(p.toString());
+            if (temporaneo(p) || orfano) {
+                eliminaSeFermo(p, soglia);
+            }
+        }
+    }
+
+    /**
+     * Un contenitore per mese di creazione. Prima si scrive il contenitore, poi si spostano
+     * i path nel DB e solo a commit avvenuto si eliminano gli originali: se qualcosa
+     * si interrompe a metà, le voci non referenziate spariranno alla prossima compattazione.
+     */
+    void archivia(LocalDateTime soglia) throws IOException {
+        Path root = archivioMensile.root();
+        // un file riusato dalla deduplica da qui in poi ha un mtime successivo e non va eliminato
+        long inizio = System.currentTimeMillis();
+
+        // mese → voce → path salvato nel DB; un file condiviso da più documenti va nel mese del primo
+        Map<String, Map<String, String>> perMese = new TreeMap<>();
+        Set<String> visti = new HashSet<>();
+        for (DocumentoPDFRepository.DocumentoDaArchiviare d : documentoPDFRepository.findDaArchiviare(soglia)) {
+            if (!visti.add(d.getPath())) {
+                continue;
+            }
+            Path file = Paths.get(d.getPath()).toAbsolutePath().normalize();
+            if (!file.startsWith(root) || file.startsWith(archivioMensile.cartella()) || !Files.isRegularFile(file)) {
+                continue;
+            }
+            String voce = root.relativize(file).toString().replace('\\', '/');
+            perMese.computeIfAbsent(MESE.format(d.getDataCreazione()), m -> new LinkedHashMap<>())
+                    .put(voce, d.getPath());
+        }
+
+        for (Map.Entry<String, Map<String, String>> mese : perMese.entrySet()) {
+            Map<String, Path> file = new LinkedHashMap<>();
+            mese.getValue().forEach((voce, path) -> file.put(voce, Paths.get(path)));
+            archivioMensile.aggiungi(mese.getKey(), file);
+
+            transactionTemplate.executeWithoutResult(status -> mese.getValue().forEach((voce, path) ->
+                    documentoPDFRepository.aggiornaPath(path, archivioMensile.path(mese.getKey(), voce))));
+
+            // se nel frattempo un documento è stato rigenerato, il suo vecchio file è comunque superato;
+            // se invece è stato riusato, il nuovo documento punta ancora al file originale
+            for (String path : mese.getValue().values()) {
+                eliminaSeFermo(Paths.get(path), inizio);
+            }
+        }
+    }
+
+    // elimina il file solo se non è stato riscritto o riusato dopo la soglia
+    private void eliminaSeFermo(Path p, long soglia) throws IOException {
+        Lock lock = blocchiStorage.per(p);
+        lock.lock();
+        try {
+            if (p.toFile().lastModified() < soglia) {
+                Files.deleteIfExists(p);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // path in uso normalizzati come quelli trovati scorrendo il disco
+    private Set<String> pathRiferiti() {
+        Set<String> riferiti = new HashSet<>();
+        for (String path : documentoPDFRepository.findPathUsati()) {
+            riferiti.add(ArchivioMensile.archiviato(path)
+                    ? path
+                    : Paths.get(path).toAbsolutePath().normalize().toString());
+        }
+        return riferiti;
+    }
+
+    private static boolean temporaneo(Path p) {
+        String nome = p.getFileName().toString();
+        return nome.startsWith(FileStorageServiceImpl.PREFISSO_TEMP)
+                && nome.endsWith(FileStorageServiceImpl.SUFFISSO_TEMP);
+    }
+}
@@ -0,0 +1,49 @@
+package it.autoflow.commons.service;
+
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Scrive uno Stream JPA come NDJSON (un oggetto JSON per riga) man mano che
+ * le righe arrivano dal DB, senza materializzare l'intero result set.
+ * Va invocato dentro uno StreamingResponseBody: la transazione read-only
+ * resta aperta per tutta la durata dello stream.
+ */
+@Service
+@RequiredArgsConstructor
+public class NdjsonExportService {
+
+    // ogni quante righe svuotare il persistence context
+    private static final int RIGHE_PER_BLOCCO = 500;
+
+    private final JsonMapper jsonMapper;
+    private final EntityManager entityManager;
+
+    @Transactional(readOnly = true)
+    public void scrivi(Supplier<? extends Stream<?>> sorgente, OutputStream out) throws IOException {
+        try (Stream<?> righe = sorgente.get()) {
+            Iterator<?> it = righe.iterator();
+            int scritte = 0;
+            while (it.hasNext()) {
+                out.write(jsonMapper.writeValueAsBytes(it.next()));
+                out.write('\n');
+
+                if (++scritte % RIGHE_PER_BLOCCO == 0) {
+                    out.flush();
+                    // le entità già scritte non servono più: memoria costante
+                    entityManager.clear();
+                }
+            }
+            out.flush();
+        }
+    }
+}
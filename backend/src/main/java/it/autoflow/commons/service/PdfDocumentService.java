@@ -24,6 +24,40 @@ public interface PdfDocumentService {
      */
     DocumentoPDF generateInvoicePdf(Long fatturaId);
 
+    /**
+     * Accoda la generazione del PDF di una fattura e ritorna subito.
+     * Il documento restituito è collegato alla fattura e resta PENDING
+     * finché la coda di rendering non lo porta a READY o FAILED.
+     *
+     * @param fatturaId id della fattura
+     * @return entità DocumentoPDF persistita in stato PENDING
+     */
+    DocumentoPDF requestInvoicePdf(Long fatturaId);
+
+    /**
+     * Accoda la generazione del PDF di una proposta e ritorna subito.
+     *
+     * @param propostaId id della proposta
+     * @return entità DocumentoPDF persistita in stato PENDING
+     */
+    DocumentoPDF requestProposalPdf(Long propostaId);
+
+    /**
+     * Riaccoda i documenti rimasti PENDING oltre la scadenza: la coda di rendering
+     * è in memoria, quindi un riavvio o un crash possono perdere i lavori in attesa.
+     *
+     * @return numero di documenti riaccodati
+     */
+    int requeueStalePdfs();
+
+    /**
+     * Verifica che lo storage abbia spazio per un nuovo PDF, senza prenotarlo.
+     * Da chiamare prima di creare i dati da cui il PDF dipende.
+     *
+     * @throws IllegalStateException "Impossibile generare il PDF – spazio insufficiente"
+     */
+    void checkStorageCapacity();
+
     /**
      * Rigenera un PDF già esistente (es. dopo modifica dati)
      *
@@ -1,6 +1,10 @@
 package it.autoflow.commons.service;
 
+import it.autoflow.commons.cache.CacheDocumentiPdf;
 import it.autoflow.commons.entity.DocumentoPDF;
+import it.autoflow.commons.entity.StatoDocumento;
+import it.autoflow.commons.event.DocumentoPdfElaboratoEvent;
+import it.autoflow.commons.pdf.ModelloPdf;
 import it.autoflow.commons.repository.DocumentoPDFRepository;
 import it.autoflow.configuration.entity.Configurazione;
 import it.autoflow.configuration.entity.OptionalAccessorio;
@@ -10,72 +14,191 @@ import it.autoflow.proposal.entity.Proposta;
 import it.autoflow.proposal.repository.PropostaRepository;
 import it.autoflow.user.entity.Cliente;
 import it.autoflow.vehicle.entity.Veicolo;
+import jakarta.annotation.PostConstruct;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.font.PDType1Font;
 import org.apache.pdfbox.pdmodel.font.Standard14Fonts.FontName;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.io.ByteArrayOutputStream;
-import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.NumberFormat;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
 import java.util.Set;
+import java.util.function.Supplier;
 import java.awt.Color;
 
 @Service
 @RequiredArgsConstructor
 public class PdfDocumentServiceImpl implements PdfDocumentService {
 
-    private static final PDType1Font FONT_TITLE =
-            new PDType1Font(FontName.HELVETICA_BOLD);
+    private static final Color GRIGIO_INTESTAZIONE = new Color(230, 230, 230);
+    private static final Color GRIGIO_RIGA = new Color(245, 245, 245);
+
+    // NumberFormat non è thread-safe: un'istanza per thread di rendering
+    private static final ThreadLocal<NumberFormat> EURO =
+            ThreadLocal.withInitial(() -> NumberFormat.getCurrencyInstance(Locale.ITALY));
+
+    // layout proposta (Letter)
+    private static final float PROPOSTA_X = 50f;
+    private static final float PROPOSTA_Y = 750f;
+    private static final String ETICHETTA_PROPOSTA = "Proposta n. ";
+    private static final String ETICHETTA_CLIENTE = "Cliente: ";
+    private static final String ETICHETTA_PREZZO = "Prezzo proposta: ";
+
+    // layout fattura (A4)
+    private static final float A4_LARGHEZZA = PDRectangle.A4.getWidth();
+    private static final float A4_ALTEZZA = PDRectangle.A4.getHeight();
+    private static final float MARGINE = 40f;
+    private static final float CLIENTE_X = A4_LARGHEZZA / 2 + 10;
+    private static final float TABELLA_Y = A4_ALTEZZA - MARGINE - 20 - 90;
+    private static final float TABELLA_SEGUITO_Y = A4_ALTEZZA - MARGINE - 30;
+    // sotto questa quota si passa alla pagina successiva (lascia spazio a totale e numero pagina)
+    private static final float MARGINE_INFERIORE = MARGINE + 40;
+    private static final float LARGHEZZA_TABELLA = A4_LARGHEZZA - 2 * MARGINE;
+    private static final float COLONNA_DESCRIZIONE = LARGHEZZA_TABELLA * 0.65f;
+    private static final float ALTEZZA_INTESTAZIONE = 20f;
+    private static final float ALTEZZA_RIGA = 18f;
+    private static final String[] ETICHETTE_CLIENTE = {
+            "Nome: ", "Cognome: ", "Email: ", "Telefono: ",
+            "Indirizzo: ", "Codice fiscale: ", "Data di nascita: "
+    };
+    private static final float[] LARGHEZZA_ETICHETTE_CLIENTE = new float[ETICHETTE_CLIENTE.length];
+
+    // ascissa dei valori accanto alle etichette della proposta
+    private static final float X_NUMERO_PROPOSTA;
+    private static final float X_CLIENTE_PROPOSTA;
+    private static final float X_PREZZO_PROPOSTA;
+
+    // larghezze calcolate una volta sola: durante il rendering nessun font viene misurato
+    static {
+        Caratteri font = Caratteri.nuovi();
+        for (int i = 0; i < ETICHETTE_CLIENTE.length; i++) {
+            LARGHEZZA_ETICHETTE_CLIENTE[i] = larghezza(font.testo(), 9, ETICHETTE_CLIENTE[i]);
+        }
+        X_NUMERO_PROPOSTA = PROPOSTA_X + larghezza(font.titolo(), 18, ETICHETTA_PROPOSTA);
+        X_CLIENTE_PROPOSTA = PROPOSTA_X + larghezza(font.testo(), 12, ETICHETTA_CLIENTE);
+        X_PREZZO_PROPOSTA = PROPOSTA_X + larghezza(font.testo(), 12, ETICHETTA_PREZZO);
+    }
+
+    private static final ModelloPdf MODELLO_PROPOSTA =
+            ModelloPdf.di(PDRectangle.LETTER, PdfDocumentServiceImpl::disegnaModelloProposta);
+    private static final ModelloPdf MODELLO_FATTURA =
+            ModelloPdf.di(PDRectangle.A4, PdfDocumentServiceImpl::disegnaModelloFattura);
+    private static final ModelloPdf MODELLO_FATTURA_SEGUITO =
+            ModelloPdf.di(PDRectangle.A4, PdfDocumentServiceImpl::disegnaModelloFatturaSeguito);
+
+    private static final int MAX_ERRORE = 500;
 
-    private static final PDType1Font FONT_TEXT =
-            new PDType1Font(FontName.HELVETICA);
+    // da incrementare a ogni modifica del layout che debba invalidare i PDF esistenti
+    private static final String VERSIONE_LAYOUT = "2";
 
     private final PropostaRepository propostaRepository;
     private final FatturaRepository fatturaRepository;
     private final DocumentoPDFRepository documentoPDFRepository;
     private final FileStorageService fileStorageService;
+    private final CodaRenderingPdf codaRendering;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final CacheDocumentiPdf cacheDocumentiPdf;
+    private final SpazioStorage spazioStorage;
+
+    // oltre questa dimensione PDFBox sposta il documento in costruzione su file temporaneo
+    @Value("${autoflow.pdf.memoria-max-bytes:4194304}")
+    private long memoriaMaxBytes;
+
+    // un documento PENDING da più di così si considera perso e si riaccoda
+    @Value("${autoflow.pdf.render.scadenza-minuti:10}")
+    private long scadenzaMinuti;
+
+    // per le fasi del worker: una transazione propria, mai quella appena conclusa
+    // di cui un callback eseguito in afterCommit vedrebbe ancora le risorse
+    private TransactionTemplate nuovaTransazione;
+
+    @PostConstruct
+    void init() {
+        nuovaTransazione = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        nuovaTransazione.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
 
     // -------------------------------------------------------------
     //  PROPOSTA → PDF
     // -------------------------------------------------------------
     @Override
+    @Transactional
     public DocumentoPDF generateProposalPdf(Long propostaId) {
-        Proposta proposta = propostaRepository.findById(propostaId)
-                .orElseThrow(() -> new EntityNotFoundException(
-                        "Proposta non trovata con id: " + propostaId));
+        Proposta proposta = findProposta(propostaId);
 
-        byte[] pdfBytes = buildProposalPdf(proposta);
+        // il PDF viene scritto direttamente nello storage
+        String fileName = nomeFileProposta(proposta);
+        String path;
+        try (SpazioStorage.Prenotazione prenotazione = spazioStorage.riserva()) {
+            path = salva(layoutProposta(proposta), fileName, folderProposta(proposta));
+        }
 
-        String fileName = "proposta-" + proposta.getId() + ".pdf";
-        LocalDate data = proposta.getDataCreazione() != null
-                ? proposta.getDataCreazione().toLocalDate()
-                : LocalDate.now();
-        String folderKey = String.format("proposte/%d/%02d", data.getYear(), data.getMonthValue());
+        DocumentoPDF documento = documentoDi(proposta.getDocumentoPdf());
+        documento.setNomeFile(fileName);
+        segnaPronto(documento, path, hashProposta(proposta));
+        documento = documentoPDFRepository.save(documento);
 
-        // usa FileStorageService per salvare
-        String path = saveBytesWithStorage(pdfBytes, fileName, folderKey);
+        // collega il PDF alla proposta
+        proposta.setDocumentoPdf(documento);
+        propostaRepository.save(proposta);
 
-        DocumentoPDF documento = new DocumentoPDF();
-        documento.setNomeFile(fileName);
-        documento.setPath(path);
-        documento.setDimensioneBytes((long) pdfBytes.length);
-        documento.setDataCreazione(LocalDateTime.now());
-        documento.setUltimaModifica(LocalDateTime.now());
+        return documento;
+    }
+
+    @Override
+    @Transactional
+    public DocumentoPDF requestProposalPdf(Long propostaId) {
+        Proposta proposta = findProposta(propostaId);
+
+        DocumentoPDF documento = proposta.getDocumentoPdf();
+        if (documento != null && inCoda(documento)) {
+            // già in coda: non serve un secondo rendering
+            return documento;
+        }
+        return accodaProposta(proposta);
+    }
 
+    private DocumentoPDF accodaProposta(Proposta proposta) {
+        Long propostaId = proposta.getId();
+        SpazioStorage.Prenotazione prenotazione = prenotaPerRendering();
+        DocumentoPDF documento = documentoDi(proposta.getDocumentoPdf());
+        documento.setNomeFile(nomeFileProposta(proposta));
+        segnaInAttesa(documento);
         documento = documentoPDFRepository.save(documento);
 
-        // Nota: attualmente Proposta NON ha un campo DocumentoPDF.
-        // Se vuoi collegarlo, aggiungi in Proposta: @OneToOne private DocumentoPDF documentoPdf;
+        proposta.setDocumentoPdf(documento);
+        propostaRepository.save(proposta);
 
+        accodaRendering(documento.getId(), documento.getNomeFile(), folderProposta(proposta), prenotazione, () -> {
+            Proposta p = findProposta(propostaId);
+            return new Impaginato(layoutProposta(p), hashProposta(p));
+        });
         return documento;
     }
 
@@ -83,387 +206,735 @@ public class PdfDocumentServiceImpl implements PdfDocumentService {
     //  FATTURA → PDF
     // -------------------------------------------------------------
     @Override
+    @Transactional
     public DocumentoPDF generateInvoicePdf(Long fatturaId) {
-        Fattura fattura = fatturaRepository.findById(fatturaId)
-                .orElseThrow(() -> new EntityNotFoundException(
-                        "Fattura non trovata con id: " + fatturaId));
+        Fattura fattura = findFattura(fatturaId);
 
-        byte[] pdfBytes = buildInvoicePdf(fattura);
+        String fileName = nomeFileFattura(fattura);
+        String path;
+        try (SpazioStorage.Prenotazione prenotazione = spazioStorage.riserva()) {
+            path = salva(layoutFattura(fattura), fileName, folderFattura(fattura));
+        }
 
-        LocalDate data = fattura.getDataEmissione() != null
-                ? fattura.getDataEmissione()
-                : LocalDate.now();
+        DocumentoPDF documento = documentoDi(fattura.getDocumentoPdf());
+        documento.setNomeFile(fileName);
+        segnaPronto(documento, path, hashFattura(fattura));
+        documento = documentoPDFRepository.save(documento);
+
+        // collega il PDF alla fattura
+        fattura.setDocumentoPdf(documento);
+        fatturaRepository.save(fattura);
 
-        String fileName = "fattura-" + fattura.getNumeroFattura() + ".pdf";
-        String folderKey = String.format("fatture/%d/%02d", data.getYear(), data.getMonthValue());
+        return documento;
+    }
 
-        String path = saveBytesWithStorage(pdfBytes, fileName, folderKey);
+    @Override
+    @Transactional
+    public DocumentoPDF requestInvoicePdf(Long fatturaId) {
+        Fattura fattura = findFattura(fatturaId);
 
         DocumentoPDF documento = fattura.getDocumentoPdf();
-        LocalDateTime now = LocalDateTime.now();
-
-        if (documento == null) {
-            documento = new DocumentoPDF();
-            documento.setDataCreazione(now);
+        if (documento != null && inCoda(documento)) {
+            // già in coda: non serve un secondo rendering
+            return documento;
         }
-        documento.setNomeFile(fileName);
-        documento.setPath(path);
-        documento.setDimensioneBytes((long) pdfBytes.length);
-        documento.setUltimaModifica(now);
+        return accodaFattura(fattura);
+    }
 
+    private DocumentoPDF accodaFattura(Fattura fattura) {
+        Long fatturaId = fattura.getId();
+        SpazioStorage.Prenotazione prenotazione = prenotaPerRendering();
+        DocumentoPDF documento = documentoDi(fattura.getDocumentoPdf());
+        documento.setNomeFile(nomeFileFattura(fattura));
+        segnaInAttesa(documento);
         documento = documentoPDFRepository.save(documento);
 
-        // collega il PDF alla fattura
         fattura.setDocumentoPdf(documento);
         fatturaRepository.save(fattura);
 
+        accodaRendering(documento.getId(), documento.getNomeFile(), folderFattura(fattura), prenotazione, () -> {
+            Fattura f = findFattura(fatturaId);
+            return new Impaginato(layoutFattura(f), hashFattura(f));
+        });
         return documento;
     }
 
     // -------------------------------------------------------------
-    //  RE-GENERATE (implementazione minimale)
+    //  RE-GENERATE: solo se i dati sorgente sono cambiati
     // -------------------------------------------------------------
     @Override
+    public void checkStorageCapacity() {
+        spazioStorage.verifica();
+    }
+
+    @Override
+    @Transactional
     public DocumentoPDF regeneratePdf(Long documentoId) {
-        DocumentoPDF documento = documentoPDFRepository.findById(documentoId)
+        DocumentoPDF documento = findDocumento(documentoId);
+
+        Optional<Fattura> fattura = fatturaRepository.findByDocumentoPdf_Id(documentoId);
+        if (fattura.isPresent()) {
+            Fattura f = fattura.get();
+            String hash = hashFattura(f);
+            if (aggiornato(documento, hash)) {
+                return documento;
+            }
+            String path;
+            try (SpazioStorage.Prenotazione prenotazione = spazioStorage.riserva()) {
+                path = salva(layoutFattura(f), nomeFileFattura(f), folderFattura(f));
+            }
+            segnaPronto(documento, path, hash);
+            return documentoPDFRepository.save(documento);
+        }
+
+        Optional<Proposta> proposta = propostaRepository.findByDocumentoPdf_Id(documentoId);
+        if (proposta.isPresent()) {
+            Proposta p = proposta.get();
+            String hash = hashProposta(p);
+            if (aggiornato(documento, hash)) {
+                return documento;
+            }
+            String path;
+            try (SpazioStorage.Prenotazione prenotazione = spazioStorage.riserva()) {
+                path = salva(layoutProposta(p), nomeFileProposta(p), folderProposta(p));
+            }
+            segnaPronto(documento, path, hash);
+            return documentoPDFRepository.save(documento);
+        }
+
+        throw new IllegalStateException(
+                "DocumentoPDF " + documentoId + " non è collegato né a una fattura né a una proposta");
+    }
+
+    /**
+     * Il documento è già pronto, impaginato dagli stessi dati e il file esiste ancora.
+     */
+    private boolean aggiornato(DocumentoPDF documento, String hash) {
+        return documento.isPronto()
+                && hash.equals(documento.getHashContenuto())
+                && documento.getPath() != null
+                && fileStorageService.load(documento.getPath()).exists();
+    }
+
+    // -------------------------------------------------------------
+    //  Coda di rendering
+    // -------------------------------------------------------------
+
+    /**
+     * Ogni documento scaduto in una transazione sua: se uno fallisce
+     * (es. spazio insufficiente) resta PENDING e si riprova al giro successivo.
+     */
+    @Override
+    public int requeueStalePdfs() {
+        int riaccodati = 0;
+        for (Long documentoId : documentoPDFRepository.findIdInAttesaDa(sogliaScadenza())) {
+            try {
+                if (Boolean.TRUE.equals(transactionTemplate.execute(status -> riaccoda(documentoId)))) {
+                    riaccodati++;
+                }
+            } catch (RuntimeException e) {
+                // resta PENDING e scaduto: lo riprenderà il prossimo giro
+            }
+        }
+        return riaccodati;
+    }
+
+    private boolean riaccoda(Long documentoId) {
+        if (documentoPDFRepository.rinnovaInAttesa(documentoId, sogliaScadenza(), LocalDateTime.now()) == 0) {
+            // pronto nel frattempo, o già riaccodato da un altro nodo
+            return false;
+        }
+        Optional<Fattura> fattura = fatturaRepository.findByDocumentoPdf_Id(documentoId);
+        if (fattura.isPresent()) {
+            accodaFattura(fattura.get());
+            return true;
+        }
+        Optional<Proposta> proposta = propostaRepository.findByDocumentoPdf_Id(documentoId);
+        if (proposta.isPresent()) {
+            accodaProposta(proposta.get());
+            return true;
+        }
+        // nessuno da cui impaginarlo: non diventerebbe mai pronto
+        DocumentoPDF documento = findDocumento(documentoId);
+        documento.setStato(StatoDocumento.FAILED);
+        documento.setErrore("DocumentoPDF non collegato né a una fattura né a una proposta");
+        documentoPDFRepository.save(documento);
+        return false;
+    }
+
+    /**
+     * PENDING e accodato da meno della scadenza. La coda vive solo in memoria: un lavoro perso
+     * (riavvio, crash, pool chiuso, afterCommit mai eseguito) lascerebbe il documento
+     * PENDING per sempre, quindi oltre la scadenza una nuova richiesta lo riaccoda.
+     */
+    private boolean inCoda(DocumentoPDF documento) {
+        return documento.getStato() == StatoDocumento.PENDING
+                && documento.getUltimaModifica() != null
+                && !documento.getUltimaModifica().isBefore(sogliaScadenza());
+    }
+
+    private LocalDateTime sogliaScadenza() {
+        return LocalDateTime.now().minusMinutes(scadenzaMinuti);
+    }
+
+    // documento impaginato insieme all'hash dei dati letti nella stessa transazione
+    private record Impaginato(PDDocument doc, String hash) {
+    }
+
+    /**
+     * Impaginazione sul pool CPU (in una transazione, per i lazy delle entità),
+     * poi salvataggio su storage e passaggio a READY; a FAILED se una delle due fasi fallisce.
+     * Se la coda è piena il documento resta PENDING e lo riprende RecuperoRenderingPdf.
+     * La prenotazione di spazio viene rilasciata quando la scrittura finisce, fallisce
+     * o non parte.
+     */
+    private void accodaRendering(Long documentoId, String fileName, String folderKey,
+                                 SpazioStorage.Prenotazione prenotazione, Supplier<Impaginato> layout) {
+        codaRendering.accoda(
+                () -> nuovaTransazione.execute(status -> layout.get()),
+                impaginato -> {
+                    String path;
+                    try (prenotazione) {
+                        path = salva(impaginato.doc(), fileName, folderKey);
+                    }
+                    DocumentoPDF documento = nuovaTransazione.execute(status -> {
+                        DocumentoPDF d = findDocumento(documentoId);
+                        segnaPronto(d, path, impaginato.hash());
+                        return documentoPDFRepository.save(d);
+                    });
+                    eventPublisher.publishEvent(
+                            new DocumentoPdfElaboratoEvent(documento.getId(), documento.getStato()));
+                },
+                errore -> {
+                    prenotazione.close();
+                    nuovaTransazione.executeWithoutResult(status -> {
+                        DocumentoPDF d = findDocumento(documentoId);
+                        invalidaCache(d);
+                        d.setStato(StatoDocumento.FAILED);
+                        d.setErrore(messaggio(errore));
+                        d.setUltimaModifica(LocalDateTime.now());
+                        documentoPDFRepository.save(d);
+                    });
+                    eventPublisher.publishEvent(
+                            new DocumentoPdfElaboratoEvent(documentoId, StatoDocumento.FAILED));
+                },
+                () -> prenotazione.close()
+        );
+    }
+
+    /**
+     * Prenota lo spazio per un rendering accodato, prima di scrivere qualsiasi riga:
+     * se lo storage è pieno la richiesta fallisce subito. Se la transazione va in rollback
+     * il rendering non parte e la prenotazione viene rilasciata.
+     */
+    private SpazioStorage.Prenotazione prenotaPerRendering() {
+        SpazioStorage.Prenotazione prenotazione = spazioStorage.riserva();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        prenotazione.close();
+                    }
+                }
+            });
+        }
+        return prenotazione;
+    }
+
+    private static DocumentoPDF documentoDi(DocumentoPDF esistente) {
+        if (esistente != null) {
+            return esistente;
+        }
+        DocumentoPDF documento = new DocumentoPDF();
+        documento.setDataCreazione(LocalDateTime.now());
+        return documento;
+    }
+
+    private static void segnaInAttesa(DocumentoPDF documento) {
+        documento.setStato(StatoDocumento.PENDING);
+        documento.setErrore(null);
+        documento.setUltimaModifica(LocalDateTime.now());
+    }
+
+    /**
+     * Collega il nuovo file al documento ed elimina quello precedente, ormai superato.
+     */
+    private void segnaPronto(DocumentoPDF documento, String path, String hash) {
+        String precedente = documento.getPath();
+        if (precedente != null && !precedente.equals(path)) {
+            // il vecchio file serve finché la transazione che sposta il path non è confermata
+            dopoCommit(() -> fileStorageService.delete(precedente));
+        }
+        invalidaCache(documento);
+        documento.setPath(path);
+        documento.setHashContenuto(hash);
+        documento.setDimensioneBytes(fileStorageService.load(path).length());
+        documento.setStato(StatoDocumento.READY);
+        documento.setErrore(null);
+        documento.setUltimaModifica(LocalDateTime.now());
+    }
+
+    // la versione in cache resta valida per i lettori finché la nuova non è confermata
+    private void invalidaCache(DocumentoPDF documento) {
+        Long id = documento.getId();
+        if (id != null) {
+            dopoCommit(() -> cacheDocumentiPdf.invalida(id));
+        }
+    }
+
+    // eseguita solo a transazione confermata, subito se non ce n'è una attiva
+    private static void dopoCommit(Runnable azione) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    azione.run();
+                }
+            });
+        } else {
+            azione.run();
+        }
+    }
+
+    private static String messaggio(Throwable errore) {
+        String m = errore.getMessage() != null ? errore.getMessage() : errore.getClass().getSimpleName();
+        return m.length() > MAX_ERRORE ? m.substring(0, MAX_ERRORE) : m;
+    }
+
+    private Proposta findProposta(Long propostaId) {
+        return propostaRepository.findById(propostaId)
+                .orElseThrow(() -> new EntityNotFoundException(
+                        "Proposta non trovata con id: " + propostaId));
+    }
+
+    private Fattura findFattura(Long fatturaId) {
+        return fatturaRepository.findById(fatturaId)
+                .orElseThrow(() -> new EntityNotFoundException(
+                        "Fattura non trovata con id: " + fatturaId));
+    }
+
+    private DocumentoPDF findDocumento(Long documentoId) {
+        return documentoPDFRepository.findById(documentoId)
                 .orElseThrow(() -> new EntityNotFoundException(
                         "DocumentoPDF non trovato con id: " + documentoId));
+    }
 
-        // Implementazione "light": aggiorno solo il timestamp.
-        // Se vuoi rigenerare davvero il file, devi capire se è legato
-        // a una Fattura o a una Proposta e richiamare il metodo giusto.
-        documento.setUltimaModifica(LocalDateTime.now());
-        return documentoPDFRepository.save(documento);
+    private static String nomeFileProposta(Proposta proposta) {
+        return "proposta-" + proposta.getId() + ".pdf";
+    }
+
+    private static String folderProposta(Proposta proposta) {
+        LocalDate data = proposta.getDataCreazione() != null
+                ? proposta.getDataCreazione().toLocalDate()
+                : LocalDate.now();
+        return String.format("proposte/%d/%02d", data.getYear(), data.getMonthValue());
+    }
+
+    private static String nomeFileFattura(Fattura fattura) {
+        return "fattura-" + fattura.getNumeroFattura() + ".pdf";
+    }
+
+    private static String folderFattura(Fattura fattura) {
+        LocalDate data = fattura.getDataEmissione() != null
+                ? fattura.getDataEmissione()
+                : LocalDate.now();
+        return String.format("fatture/%d/%02d", data.getYear(), data.getMonthValue());
     }
 
     // -------------------------------------------------------------
     //  Helpers
     // -------------------------------------------------------------
-    private String saveBytesWithStorage(byte[] bytes, String fileName, String folderKey) {
-        // uso il metodo extra di FileStorageServiceImpl
-        if (fileStorageService instanceof FileStorageServiceImpl impl) {
-            return impl.store(bytes, fileName, folderKey);
-        }
+    /**
+     * Documento vuoto: oltre la soglia configurata PDFBox usa un file di scratch
+     * temporaneo invece dell'heap, così un documento lungo non pesa in memoria.
+     */
+    private PDDocument nuovoDocumento() {
+        PDDocument doc = new PDDocument(MemoryUsageSetting.setupMixed(memoriaMaxBytes).streamCache);
+        // /ID del trailer fisso invece che basato sull'ora: stessi dati → stessi byte,
+        // così lo storage può riconoscere i duplicati
+        doc.setDocumentId(0L);
+        return doc;
+    }
 
-        // fallback: temp file + store(File,...)
-        try {
-            File temp = File.createTempFile("autoflow-", "-" + fileName);
-            java.nio.file.Files.write(temp.toPath(), bytes);
-            return fileStorageService.store(temp, folderKey);
+    /**
+     * Scrive il documento direttamente nello stream dello storage e lo chiude.
+     */
+    private String salva(PDDocument doc, String fileName, String folderKey) {
+        try (doc) {
+            return fileStorageService.store(fileName, folderKey, doc::save);
         } catch (IOException e) {
             throw new RuntimeException("Errore nel salvataggio PDF", e);
         }
     }
 
-    private byte[] buildProposalPdf(Proposta proposta) {
-        try (PDDocument doc = new PDDocument();
-             ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+    private static void chiudi(PDDocument doc) {
+        try {
+            doc.close();
+        } catch (IOException ignored) {
+            // si riporta l'errore di impaginazione, non quello di chiusura
+        }
+    }
 
-            PDPage page = new PDPage();
+    // -------------------------------------------------------------
+    //  Layout proposta: la parte fissa è nel modello, qui solo i valori
+    // -------------------------------------------------------------
+    private PDDocument layoutProposta(Proposta proposta) {
+        PDDocument doc = nuovoDocumento();
+        Caratteri font = Caratteri.nuovi();
+        try {
+            PDPage page = new PDPage(PDRectangle.LETTER);
             doc.addPage(page);
 
             try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
-                float y = 750;
+                cs.drawForm(MODELLO_PROPOSTA.form(doc));
 
-                cs.beginText();
-                cs.setFont(FONT_TITLE, 18);
-                cs.newLineAtOffset(50, y);
-                cs.showText("Proposta n. " + proposta.getId());
-                cs.endText();
+                float y = PROPOSTA_Y;
+                testo(cs, font.titolo(), 18, X_NUMERO_PROPOSTA, y,
+                        String.valueOf(proposta.getId()));
 
                 y -= 40;
-
-                cs.beginText();
-                cs.setFont(FONT_TEXT, 12);
-                cs.newLineAtOffset(50, y);
-                cs.showText("Cliente: " +
-                        (proposta.getCliente() != null
+                testo(cs, font.testo(), 12, X_CLIENTE_PROPOSTA, y,
+                        proposta.getCliente() != null
                                 ? proposta.getCliente().getNome() + " " + proposta.getCliente().getCognome()
-                                : "N/D"));
-                cs.endText();
+                                : "N/D");
 
                 y -= 20;
-
-                cs.beginText();
-                cs.setFont(FONT_TEXT, 12);
-                cs.newLineAtOffset(50, y);
-                cs.showText("Prezzo proposta: " + proposta.getPrezzoProposta() + " EUR");
-                cs.endText();
+                testo(cs, font.testo(), 12, X_PREZZO_PROPOSTA, y,
+                        proposta.getPrezzoProposta() + " EUR");
 
                 if (proposta.getConfigurazione() != null) {
                     y -= 20;
-                    cs.beginText();
-                    cs.setFont(FONT_TEXT, 12);
-                    cs.newLineAtOffset(50, y);
-                    cs.showText("Prezzo configurazione: " +
+                    testo(cs, font.testo(), 12, PROPOSTA_X, y, "Prezzo configurazione: " +
                             proposta.getConfigurazione().getPrezzoTotale() + " EUR");
-                    cs.endText();
                 }
 
                 // puoi aggiungere altre righe (note, stato, ecc.)
             }
-
-            doc.save(baos);
-            return baos.toByteArray();
+            return doc;
         } catch (IOException e) {
+            chiudi(doc);
             throw new RuntimeException("Errore nella generazione del PDF della proposta", e);
+        } catch (RuntimeException e) {
+            chiudi(doc);
+            throw e;
         }
     }
 
-    private byte[] buildInvoicePdf(Fattura fattura) {
-        // Font (PDFBox 3.x)
-        PDType1Font fontTitle = new PDType1Font(FontName.HELVETICA_BOLD);
-        PDType1Font fontText  = new PDType1Font(FontName.HELVETICA);
-
-        java.text.NumberFormat currency =
-                java.text.NumberFormat.getCurrencyInstance(java.util.Locale.ITALY);
-
-        try (PDDocument doc = new PDDocument();
-             ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-
+    // -------------------------------------------------------------
+    //  Layout fattura: la parte fissa è nel modello, qui solo i valori
+    // -------------------------------------------------------------
+    private PDDocument layoutFattura(Fattura fattura) {
+        PDDocument doc = nuovoDocumento();
+        Caratteri font = Caratteri.nuovi();
+        try {
             PDPage page = new PDPage(PDRectangle.A4);
             doc.addPage(page);
 
-            float pageWidth  = page.getMediaBox().getWidth();
-            float pageHeight = page.getMediaBox().getHeight();
-            float margin     = 40f;
+            List<RigaFattura> righe = righeFattura(fattura);
+            String numero = fattura.getNumeroFattura() != null ? fattura.getNumeroFattura() : "-";
 
-            Cliente cliente = fattura.getCliente();
-            Proposta proposta = fattura.getProposta();
-            Configurazione configurazione = proposta != null ? proposta.getConfigurazione() : null;
-            Veicolo veicolo = configurazione != null ? configurazione.getVeicolo() : null;
-            Set<OptionalAccessorio> optionals =
-                    configurazione != null && configurazione.getOptional() != null
-                            ? configurazione.getOptional()
-                            : java.util.Collections.emptySet();
-
-            try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
+            PDPageContentStream cs = new PDPageContentStream(doc, page);
+            try {
+                cs.drawForm(MODELLO_FATTURA.form(doc));
 
-                float y = pageHeight - margin;
+                // TITOLO: "FATTURA <numero>"
+                testo(cs, font.titolo(), 18, MARGINE, A4_ALTEZZA - MARGINE, "FATTURA " + numero);
 
-                // ---------------------------------------------------------
-                // TITOLO: "FATTURA <numero>" + "AutoFlow"
-                // ---------------------------------------------------------
-                String numero = fattura.getNumeroFattura() != null ? fattura.getNumeroFattura() : "-";
-                String titolo = "FATTURA " + numero;
-
-                cs.beginText();
-                cs.setFont(fontTitle, 18);
-                cs.newLineAtOffset(margin, y);
-                cs.showText(titolo);
-                cs.endText();
+                // DATI CLIENTE A DESTRA, accanto alle etichette del modello
+                String[] valoriCliente = valoriCliente(fattura.getCliente());
+                for (int i = 0; i < valoriCliente.length; i++) {
+                    testo(cs, font.testo(), 9, CLIENTE_X + LARGHEZZA_ETICHETTE_CLIENTE[i], clienteY(i), valoriCliente[i]);
+                }
 
-                y -= 20;
+                // RIGHE DELLA TABELLA (intestazione nel modello)
+                float tabellaY = TABELLA_Y;
+                float currentY = tabellaY - ALTEZZA_INTESTAZIONE - ALTEZZA_RIGA;
+                double totaleCalcolato = 0d;
+                PDFormXObject seguito = null;
 
-                cs.beginText();
-                cs.setFont(fontText, 12);
-                cs.newLineAtOffset(margin, y);
-                cs.showText("AutoFlow");
-                cs.endText();
-
-                // ---------------------------------------------------------
-                // DATI CLIENTE A DESTRA
-                // ---------------------------------------------------------
-                float clientBoxX = pageWidth / 2 + 10;
-                float clientY = pageHeight - margin;
-
-                String nome      = cliente != null ? String.valueOf(cliente.getNome()) : "null";
-                String cognome   = cliente != null ? String.valueOf(cliente.getCognome()) : "null";
-                String email     = cliente != null ? String.valueOf(cliente.getEmail()) : "null";
-                String telefono  = cliente != null ? String.valueOf(cliente.getTelefono()) : "null";
-                String indirizzo = cliente != null ? String.valueOf(cliente.getIndirizzo()) : "null";
-                String cf        = cliente != null ? String.valueOf(cliente.getCodiceFiscale()) : "null";
-                String nascita   = (cliente != null && cliente.getDataNascita() != null)
-                        ? cliente.getDataNascita().toString()
-                        : "null";
-
-                cs.beginText();
-                cs.setFont(fontTitle, 10);
-                cs.newLineAtOffset(clientBoxX, clientY);
-                cs.showText("CLIENTE");
-                cs.endText();
-
-                clientY -= 14;
-                cs.beginText();
-                cs.setFont(fontText, 9);
-                cs.newLineAtOffset(clientBoxX, clientY);
-                cs.showText("Nome: " + nome);
-                cs.newLineAtOffset(0, -12);
-                cs.showText("Cognome: " + cognome);
-                cs.newLineAtOffset(0, -12);
-                cs.showText("Email: " + email);
-                cs.newLineAtOffset(0, -12);
-                cs.showText("Telefono: " + telefono);
-                cs.newLineAtOffset(0, -12);
-                cs.showText("Indirizzo: " + indirizzo);
-                cs.newLineAtOffset(0, -12);
-                cs.showText("Codice fiscale: " + cf);
-                cs.newLineAtOffset(0, -12);
-                cs.showText("Data di nascita: " + nascita);
-                cs.endText();
-
-                // ---------------------------------------------------------
-                // TABELLA CENTRALE: DESCRIZIONE | PREZZO
-                // ---------------------------------------------------------
-                y -= 90; // un po' di spazio dopo il titolo
-                float tableStartY = y;
-
-                float colDescrWidth  = (pageWidth - 2 * margin) * 0.65f;
-                float colPrezzoWidth = (pageWidth - 2 * margin) - colDescrWidth;
-
-                float headerHeight = 20f;
-                float rowHeight    = 18f;
-
-                // header background
-                cs.setNonStrokingColor(new Color(230, 230, 230));
-                cs.addRect(margin, tableStartY - headerHeight,
-                        colDescrWidth + colPrezzoWidth, headerHeight);
-                cs.fill();
-                cs.setNonStrokingColor(new Color(0, 0, 0));
-
-                // header text
-                cs.beginText();
-                cs.setFont(fontText, 10);
-                cs.newLineAtOffset(margin + 4, tableStartY - 14);
-                cs.showText("Descrizione");
-                cs.endText();
-
-                cs.beginText();
-                cs.setFont(fontText, 10);
-                cs.newLineAtOffset(margin + colDescrWidth + 4, tableStartY - 14);
-                cs.showText("Prezzo");
-                cs.endText();
-
-                float currentY = tableStartY - headerHeight - rowHeight;
-
-                // RIGA VEICOLO (se esiste configurazione/veicolo)
-                java.util.List<String> descs = new java.util.ArrayList<>();
-                java.util.List<Double> prezzi = new java.util.ArrayList<>();
-
-                if (configurazione != null) {
-                    if (veicolo != null) {
-                        String marca   = veicolo.getMarca() != null ? veicolo.getMarca() : "-";
-                        String modello = veicolo.getModello() != null ? veicolo.getModello() : "-";
-                        String anno    = veicolo.getAnno() != null ? veicolo.getAnno().toString() : "-";
-                        String targa   = veicolo.getTarga() != null ? veicolo.getTarga() : "-";
-                        String vin     = veicolo.getVin() != null ? veicolo.getVin() : "-";
-                        String alim    = veicolo.getAlimentazione() != null ? veicolo.getAlimentazione().toString() : "-";
-                        String cambio  = veicolo.getCambio() != null ? veicolo.getCambio().toString() : "-";
-                        String colore  = veicolo.getColoreEsterno() != null ? veicolo.getColoreEsterno() : "-";
-                        String km      = veicolo.getChilometraggio() != null ? veicolo.getChilometraggio().toString() : "-";
-
-                        // riga 1: titolo veicolo + marca/modello (con prezzo)
-                        descs.add(String.format("Veicolo: %s %s", marca, modello));
-                        prezzi.add(configurazione.getPrezzoBase() != null ? configurazione.getPrezzoBase() : 0d);
-
-                        // riga 2: anno/targa/VIN (senza prezzo)
-                        descs.add(String.format("Anno: %s, targa: %s, VIN: %s", anno, targa, vin));
-                        prezzi.add(0d);
-
-                        // riga 3: alimentazione/cambio/colore/km (senza prezzo)
-                        descs.add(String.format("Alimentazione: %s, cambio: %s, colore: %s, km: %s",
-                                alim, cambio, colore, km));
-                        prezzi.add(0d);
-                    } else {
-                        // fallback
-                        descs.add("Veicolo configurato");
-                        prezzi.add(configurazione.getPrezzoBase() != null ? configurazione.getPrezzoBase() : 0d);
-                    }
+                for (RigaFattura riga : righe) {
+                    if (currentY < MARGINE_INFERIORE) {
+                        // pagina piena: chiudo la tabella e continuo su una nuova
+                        // pagina con l'intestazione ripetuta
+                        bordoTabella(cs, tabellaY, currentY);
+                        cs.close();
 
-                    // OPTIONAL
-                    if (optionals != null && !optionals.isEmpty()) {
-                        for (OptionalAccessorio opt : optionals) {
-                            String nomeOpt = opt.getNome() != null ? opt.getNome() : "-";
-                            String descOpt = opt.getDescrizione() != null ? opt.getDescrizione() : "";
-                            String descFull = descOpt.isBlank()
-                                    ? "Optional: " + nomeOpt
-                                    : "Optional: " + nomeOpt + " - " + descOpt;
-
-                            Double p = opt.getPrezzo() != null ? opt.getPrezzo() : 0d;
-                            descs.add(descFull);
-                            prezzi.add(p);
+                        if (seguito == null) {
+                            seguito = MODELLO_FATTURA_SEGUITO.form(doc);
                         }
+                        page = new PDPage(PDRectangle.A4);
+                        doc.addPage(page);
+                        cs = new PDPageContentStream(doc, page);
+                        cs.drawForm(seguito);
+                        testo(cs, font.titolo(), 12, MARGINE, A4_ALTEZZA - MARGINE, "FATTURA " + numero + " (segue)");
+
+                        tabellaY = TABELLA_SEGUITO_Y;
+                        currentY = tabellaY - ALTEZZA_INTESTAZIONE - ALTEZZA_RIGA;
                     }
-                }
-
-                // se per qualche motivo non abbiamo niente, mettiamo una riga generica
-                if (descs.isEmpty()) {
-                    descs.add("Prodotto/servizio");
-                    prezzi.add(fattura.getImportoTotale() != null ? fattura.getImportoTotale() : 0d);
-                }
-
-                // disegno le righe della tabella
-                double totaleCalcolato = 0d;
-
-                for (int i = 0; i < descs.size(); i++) {
-                    String descr = descs.get(i);
-                    Double prezzo = prezzi.get(i) != null ? prezzi.get(i) : 0d;
 
-                    // sfondo riga
-                    cs.setNonStrokingColor(new Color(245, 245, 245));
-                    cs.addRect(margin, currentY + 2,
-                            colDescrWidth + colPrezzoWidth, rowHeight);
+                    cs.setNonStrokingColor(GRIGIO_RIGA);
+                    cs.addRect(MARGINE, currentY + 2, LARGHEZZA_TABELLA, ALTEZZA_RIGA);
                     cs.fill();
                     cs.setNonStrokingColor(Color.BLACK);
 
-                    // descrizione
-                    cs.beginText();
-                    cs.setFont(fontText, 9);
-                    cs.newLineAtOffset(margin + 4, currentY + 7);
-                    cs.showText(descr);
-                    cs.endText();
+                    testo(cs, font.testo(), 9, MARGINE + 4, currentY + 7, riga.descrizione());
 
                     // prezzo (solo se > 0)
-                    if (prezzo != null && prezzo > 0.0) {
-                        totaleCalcolato += prezzo;
-
-                        cs.beginText();
-                        cs.setFont(fontText, 9);
-                        cs.newLineAtOffset(margin + colDescrWidth + 4, currentY + 7);
-                        cs.showText(formatEuro(currency, prezzo));
-                        cs.endText();
+                    if (riga.prezzo() > 0.0) {
+                        totaleCalcolato += riga.prezzo();
+                        testo(cs, font.testo(), 9, MARGINE + COLONNA_DESCRIZIONE + 4, currentY + 7,
+                                formatEuro(riga.prezzo()));
                     }
 
-                    currentY -= rowHeight;
+                    currentY -= ALTEZZA_RIGA;
                 }
 
-                // bordo tabella
-                cs.setLineWidth(0.5f);
-                cs.addRect(margin, currentY,
-                        colDescrWidth + colPrezzoWidth,
-                        (tableStartY - currentY));
-                cs.stroke();
+                bordoTabella(cs, tabellaY, currentY);
 
-                // ---------------------------------------------------------
-                // IMPORTO TOTALE (alla fine della tabella)
-                // ---------------------------------------------------------
+                // IMPORTO TOTALE (alla fine della tabella, MARGINE_INFERIORE lascia lo spazio)
                 double totale = fattura.getImportoTotale() != null
                         ? fattura.getImportoTotale()
                         : totaleCalcolato;
 
-                currentY -= 30;
-
-                cs.beginText();
-                cs.setFont(fontTitle, 12);
-                cs.newLineAtOffset(margin + colDescrWidth, currentY);
-                cs.showText("Importo totale: " + formatEuro(currency, totale));
-                cs.endText();
+                testo(cs, font.titolo(), 12, MARGINE + COLONNA_DESCRIZIONE, currentY - 30,
+                        "Importo totale: " + formatEuro(totale));
+            } finally {
+                cs.close();
             }
 
-            doc.save(baos);
-            return baos.toByteArray();
+            numeraPagine(doc, font);
+            return doc;
 
         } catch (IOException e) {
+            chiudi(doc);
             throw new RuntimeException("Errore nella generazione del PDF della fattura", e);
+        } catch (RuntimeException e) {
+            chiudi(doc);
+            throw e;
+        }
+    }
+
+    private static void bordoTabella(PDPageContentStream cs, float tabellaY, float currentY) throws IOException {
+        cs.setLineWidth(0.5f);
+        cs.addRect(MARGINE, currentY, LARGHEZZA_TABELLA, tabellaY - currentY);
+        cs.stroke();
+    }
+
+    /**
+     * "Pagina i di n" in fondo a ogni pagina, aggiunto alla fine perché solo allora n è noto.
+     */
+    private static void numeraPagine(PDDocument doc, Caratteri font) throws IOException {
+        int totale = doc.getNumberOfPages();
+        if (totale < 2) {
+            return;
+        }
+        for (int i = 0; i < totale; i++) {
+            try (PDPageContentStream cs = new PDPageContentStream(
+                    doc, doc.getPage(i), PDPageContentStream.AppendMode.APPEND, true, true)) {
+                testo(cs, font.testo(), 8, A4_LARGHEZZA - MARGINE - 60, MARGINE / 2,
+                        "Pagina " + (i + 1) + " di " + totale);
+            }
+        }
+    }
+
+    private record RigaFattura(String descrizione, double prezzo) {
+    }
+
+    /**
+     * Font di un documento. PDFont non è thread-safe (le larghezze dei glifi vengono
+     * messe in cache alla prima misura) e il suo dizionario COS finisce nel documento,
+     * che PDFBox modifica quando lo salva: ogni documento ha i suoi font.
+     */
+    private record Caratteri(PDType1Font titolo, PDType1Font testo) {
+
+        static Caratteri nuovi() {
+            return new Caratteri(new PDType1Font(FontName.HELVETICA_BOLD), new PDType1Font(FontName.HELVETICA));
+        }
+    }
+
+    private static String[] valoriCliente(Cliente cliente) {
+        return new String[]{
+                cliente != null ? String.valueOf(cliente.getNome()) : "null",
+                cliente != null ? String.valueOf(cliente.getCognome()) : "null",
+                cliente != null ? String.valueOf(cliente.getEmail()) : "null",
+                cliente != null ? String.valueOf(cliente.getTelefono()) : "null",
+                cliente != null ? String.valueOf(cliente.getIndirizzo()) : "null",
+                cliente != null ? String.valueOf(cliente.getCodiceFiscale()) : "null",
+                cliente != null && cliente.getDataNascita() != null
+                        ? cliente.getDataNascita().toString()
+                        : "null"
+        };
+    }
+
+    /**
+     * Righe della tabella: veicolo (tre righe, prezzo solo sulla prima) e optional
+     * in ordine di id, così lo stesso input produce sempre lo stesso documento.
+     */
+    private static List<RigaFattura> righeFattura(Fattura fattura) {
+        Proposta proposta = fattura.getProposta();
+        Configurazione configurazione = proposta != null ? proposta.getConfigurazione() : null;
+        List<RigaFattura> righe = new ArrayList<>();
+
+        if (configurazione != null) {
+            double prezzoBase = configurazione.getPrezzoBase() != null ? configurazione.getPrezzoBase() : 0d;
+            Veicolo veicolo = configurazione.getVeicolo();
+            if (veicolo != null) {
+                String marca   = veicolo.getMarca() != null ? veicolo.getMarca() : "-";
+                String modello = veicolo.getModello() != null ? veicolo.getModello() : "-";
+                String anno    = veicolo.getAnno() != null ? veicolo.getAnno().toString() : "-";
+                String targa   = veicolo.getTarga() != null ? veicolo.getTarga() : "-";
+                String vin     = veicolo.getVin() != null ? veicolo.getVin() : "-";
+                String alim    = veicolo.getAlimentazione() != null ? veicolo.getAlimentazione().toString() : "-";
+                String cambio  = veicolo.getCambio() != null ? veicolo.getCambio().toString() : "-";
+                String colore  = veicolo.getColoreEsterno() != null ? veicolo.getColoreEsterno() : "-";
+                String km      = veicolo.getChilometraggio() != null ? veicolo.getChilometraggio().toString() : "-";
+
+                righe.add(new RigaFattura(String.format("Veicolo: %s %s", marca, modello), prezzoBase));
+                righe.add(new RigaFattura(String.format("Anno: %s, targa: %s, VIN: %s", anno, targa, vin), 0d));
+                righe.add(new RigaFattura(String.format("Alimentazione: %s, cambio: %s, colore: %s, km: %s",
+                        alim, cambio, colore, km), 0d));
+            } else {
+                righe.add(new RigaFattura("Veicolo configurato", prezzoBase));
+            }
+
+            Set<OptionalAccessorio> optionals = configurazione.getOptional();
+            if (optionals != null) {
+                List<OptionalAccessorio> ordinati = new ArrayList<>(optionals);
+                ordinati.sort(Comparator.comparing(OptionalAccessorio::getId,
+                        Comparator.nullsLast(Comparator.naturalOrder())));
+                for (OptionalAccessorio opt : ordinati) {
+                    String nomeOpt = opt.getNome() != null ? opt.getNome() : "-";
+                    String descOpt = opt.getDescrizione() != null ? opt.getDescrizione() : "";
+                    String descFull = descOpt.isBlank()
+                            ? "Optional: " + nomeOpt
+                            : "Optional: " + nomeOpt + " - " + descOpt;
+                    righe.add(new RigaFattura(descFull, opt.getPrezzo() != null ? opt.getPrezzo() : 0d));
+                }
+            }
+        }
+
+        // se per qualche motivo non abbiamo niente, mettiamo una riga generica
+        if (righe.isEmpty()) {
+            righe.add(new RigaFattura("Prodotto/servizio",
+                    fattura.getImportoTotale() != null ? fattura.getImportoTotale() : 0d));
+        }
+        return righe;
+    }
+
+    // -------------------------------------------------------------
+    //  Hash dei dati sorgente (tutto ciò che finisce nel PDF)
+    // -------------------------------------------------------------
+    private static String hashFattura(Fattura fattura) {
+        List<String> campi = new ArrayList<>();
+        campi.add("fattura");
+        campi.add(String.valueOf(fattura.getNumeroFattura()));
+        campi.add(String.valueOf(fattura.getDataEmissione()));
+        campi.add(String.valueOf(fattura.getImportoTotale()));
+        campi.addAll(List.of(valoriCliente(fattura.getCliente())));
+        for (RigaFattura riga : righeFattura(fattura)) {
+            campi.add(riga.descrizione());
+            campi.add(String.valueOf(riga.prezzo()));
+        }
+        return sha256(campi);
+    }
+
+    private static String hashProposta(Proposta proposta) {
+        Cliente cliente = proposta.getCliente();
+        Configurazione configurazione = proposta.getConfigurazione();
+        return sha256(List.of(
+                "proposta",
+                String.valueOf(proposta.getId()),
+                cliente != null ? cliente.getNome() + " " + cliente.getCognome() : "N/D",
+                String.valueOf(proposta.getPrezzoProposta()),
+                configurazione != null ? String.valueOf(configurazione.getPrezzoTotale()) : "-"
+        ));
+    }
+
+    /**
+     * SHA-256 dei campi separati da un carattere che non compare nei dati,
+     * preceduti dalla versione del layout: cambiando il layout cambiano tutti gli hash.
+     */
+    private static String sha256(List<String> campi) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(VERSIONE_LAYOUT.getBytes(StandardCharsets.UTF_8));
+            for (String campo : campi) {
+                digest.update((byte) 0x1F);
+                digest.update(campo.getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 non disponibile", e);
+        }
+    }
+
+    // -------------------------------------------------------------
+    //  Modelli: disegnati una volta al caricamento della classe
+    // -------------------------------------------------------------
+    private static void disegnaModelloProposta(PDPageContentStream cs) throws IOException {
+        Caratteri font = Caratteri.nuovi();
+        testo(cs, font.titolo(), 18, PROPOSTA_X, PROPOSTA_Y, ETICHETTA_PROPOSTA);
+        testo(cs, font.testo(), 12, PROPOSTA_X, PROPOSTA_Y - 40, ETICHETTA_CLIENTE);
+        testo(cs, font.testo(), 12, PROPOSTA_X, PROPOSTA_Y - 60, ETICHETTA_PREZZO);
+    }
+
+    private static void disegnaModelloFattura(PDPageContentStream cs) throws IOException {
+        Caratteri font = Caratteri.nuovi();
+        testo(cs, font.testo(), 12, MARGINE, A4_ALTEZZA - MARGINE - 20, "AutoFlow");
+
+        testo(cs, font.titolo(), 10, CLIENTE_X, A4_ALTEZZA - MARGINE, "CLIENTE");
+        for (int i = 0; i < ETICHETTE_CLIENTE.length; i++) {
+            testo(cs, font.testo(), 9, CLIENTE_X, clienteY(i), ETICHETTE_CLIENTE[i]);
+        }
+
+        disegnaIntestazioneTabella(cs, font, TABELLA_Y);
+    }
+
+    // pagine successive alla prima: solo l'intestazione della tabella, più in alto
+    private static void disegnaModelloFatturaSeguito(PDPageContentStream cs) throws IOException {
+        disegnaIntestazioneTabella(cs, Caratteri.nuovi(), TABELLA_SEGUITO_Y);
+    }
+
+    // intestazione tabella: DESCRIZIONE | PREZZO
+    private static void disegnaIntestazioneTabella(PDPageContentStream cs, Caratteri font, float tabellaY)
+            throws IOException {
+        cs.setNonStrokingColor(GRIGIO_INTESTAZIONE);
+        cs.addRect(MARGINE, tabellaY - ALTEZZA_INTESTAZIONE, LARGHEZZA_TABELLA, ALTEZZA_INTESTAZIONE);
+        cs.fill();
+        cs.setNonStrokingColor(Color.BLACK);
+
+        testo(cs, font.testo(), 10, MARGINE + 4, tabellaY - 14, "Descrizione");
+        testo(cs, font.testo(), 10, MARGINE + COLONNA_DESCRIZIONE + 4, tabellaY - 14, "Prezzo");
+    }
+
+    private static float clienteY(int riga) {
+        return A4_ALTEZZA - MARGINE - 14 - 12 * riga;
+    }
+
+    private static void testo(PDPageContentStream cs, PDType1Font font, float size,
+                              float x, float y, String testo) throws IOException {
+        cs.beginText();
+        cs.setFont(font, size);
+        cs.newLineAtOffset(x, y);
+        cs.showText(testo);
+        cs.endText();
+    }
+
+    private static float larghezza(PDType1Font font, float size, String testo) {
+        try {
+            return font.getStringWidth(testo) / 1000f * size;
+        } catch (IOException e) {
+            throw new IllegalStateException("Carattere non disponibile nel font " + font.getName(), e);
         }
     }
 
-    private String formatEuro(NumberFormat currency, double value) {
-        String s = currency.format(value); // es: "24.999,99 €" o "24.999,99 €"
+    private static String formatEuro(double value) {
+        String s = EURO.get().format(value); // es: "24.999,99 €" o "24.999,99 €"
         s = s.replace('\u00A0', ' ').trim(); // rimuove eventuale NBSP
         if (s.endsWith("€")) {
             s = s.substring(0, s.lastIndexOf('€')).trim();
         }
         return "€ " + s;
     }
-}
\ No newline at end of file
+}
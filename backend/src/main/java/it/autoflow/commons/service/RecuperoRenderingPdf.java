@@ -0,0 +1,30 @@
+package it.autoflow.commons.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Riprende i PDF rimasti PENDING oltre la scadenza (autoflow.pdf.render.scadenza-minuti).
+ * La coda di rendering è in memoria: i lavori in attesa si perdono con un riavvio,
+ * un deploy o un crash, e nessuna richiesta successiva li riaccoderebbe.
+ * Gira all'avvio e poi periodicamente; su più nodi ogni documento viene ripreso da uno solo.
+ * Si disattiva con autoflow.pdf.render.recupero.abilitato=false (es. nei test).
+ */
+@Component
+@ConditionalOnProperty(name = "autoflow.pdf.render.recupero.abilitato", havingValue = "true", matchIfMissing = true)
+@RequiredArgsConstructor
+public class RecuperoRenderingPdf {
+
+    private final PdfDocumentService pdfDocumentService;
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${autoflow.pdf.render.recupero-ms:60000}",
+            initialDelayString = "${autoflow.pdf.render.recupero-ms:60000}")
+    public void recupera() {
+        pdfDocumentService.requeueStalePdfs();
+    }
+}
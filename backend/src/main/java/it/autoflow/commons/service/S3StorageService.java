@@ -0,0 +1,430 @@
+package it.autoflow.commons.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Storage su object storage con API S3 (AWS S3, MinIO, ...), per eseguire più
+ * nodi del backend sullo stesso archivio. Si attiva con autoflow.storage.tipo=s3.
+ * <p>
+ * Il path salvato in DocumentoPDF è "s3://bucket/chiave". La chiave contiene un UUID,
+ * quindi ogni oggetto è scritto una sola volta e non cambia più: load() lo scarica
+ * in streaming in una cache locale al primo accesso e poi lo serve da lì.
+ * La cache locale è limitata a cache-max-bytes: oltre, i file usati meno di recente
+ * vengono eliminati (ManutenzioneStorage non gira con questo storage).
+ * <p>
+ * Per MinIO o altri servizi compatibili basta impostare endpoint e path-style, es.:
+ * <pre>
+ * autoflow:
+ *   storage:
+ *     tipo: s3
+ *     s3:
+ *       bucket: autoflow
+ *       endpoint: http://localhost:9000
+ *       path-style: true
+ *       access-key: minioadmin
+ *       secret-key: minioadmin
+ * </pre>
+ */
+@Service
+@ConditionalOnProperty(name = "autoflow.storage.tipo", havingValue = "s3")
+public class S3StorageService implements FileStorageService {
+
+    private static final String SCHEMA = "s3://";
+
+    // S3 richiede parti di almeno 5 MB (tranne l'ultima)
+    private static final int PARTE_MINIMA = 5 * 1024 * 1024;
+
+    // buffer iniziale dell'upload: cresce fino a dimensioneParte solo se il file lo richiede
+    private static final int BUFFER_INIZIALE = 64 * 1024;
+
+    private final S3Client s3;
+    private final String bucket;
+    private final int dimensioneParte;
+    private final Path cacheDir;
+    private final long cacheMaxBytes;
+
+    // file della cache locale (chiave → byte) dal meno al più usato di recente
+    private final LinkedHashMap<String, Long> inCache = new LinkedHashMap<>(16, 0.75f, true);
+    private long cacheBytes;
+
+    @Autowired
+    public S3StorageService(@Value("${autoflow.storage.s3.bucket}") String bucket,
+                            @Value("${autoflow.storage.s3.region:eu-south-1}") String regione,
+                            @Value("${autoflow.storage.s3.endpoint:}") String endpoint,
+                            @Value("${autoflow.storage.s3.path-style:false}") boolean pathStyle,
+                            @Value("${autoflow.storage.s3.access-key:}") String accessKey,
+                            @Value("${autoflow.storage.s3.secret-key:}") String secretKey,
+                            @Value("${autoflow.storage.s3.dimensione-parte:8388608}") int dimensioneParte,
+                            @Value("${autoflow.storage.base-path:./autoflow-storage}") String basePath,
+                            @Value("${autoflow.storage.s3.cache-max-bytes:1073741824}") long cacheMaxBytes) {
+        this(client(regione, endpoint, pathStyle, accessKey, secretKey), bucket, dimensioneParte,
+                Paths.get(basePath).toAbsolutePath().normalize().resolve("s3-cache"), cacheMaxBytes);
+    }
+
+    S3StorageService(S3Client s3, String bucket, int dimensioneParte, Path cacheDir, long cacheMaxBytes) {
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.dimensioneParte = Math.max(dimensioneParte, PARTE_MINIMA);
+        this.cacheDir = cacheDir;
+        this.cacheMaxBytes = cacheMaxBytes;
+        // i file rimasti da un avvio precedente non sono conteggiati: si riparte da vuota
+        svuota(cacheDir);
+    }
+
+    private static S3Client client(String regione, String endpoint, boolean pathStyle,
+                                   String accessKey, String secretKey) {
+        S3ClientBuilder builder = S3Client.builder()
+                .region(Region.of(regione))
+                .forcePathStyle(pathStyle);
+        if (!endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        // senza chiavi esplicite vale la catena standard (variabili d'ambiente, profilo, ruolo IAM)
+        if (!accessKey.isBlank()) {
+            builder.credentialsProvider(StaticCredentialsProvider.create(
+                    AwsBasicCredentials.create(accessKey, secretKey)));
+        }
+        return builder.build();
+    }
+
+    @Override
+    public String store(File file, String folderKey) {
+        if (file == null) {
+            throw new IllegalArgumentException("File nullo");
+        }
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            return store(in, file.getName(), folderKey);
+        } catch (IOException e) {
+            throw new RuntimeException("Errore nel salvataggio del file su S3", e);
+        }
+    }
+
+    @Override
+    public String store(InputStream contenuto, String fileName, String folderKey) {
+        if (contenuto == null) {
+            throw new IllegalArgumentException("Contenuto nullo");
+        }
+        return store(fileName, folderKey, contenuto::transferTo);
+    }
+
+    @Override
+    public String store(String fileName, String folderKey, Scrittura scrittura) {
+        if (fileName == null || fileName.isBlank()) {
+            throw new IllegalArgumentException("fileName obbligatorio");
+        }
+        if (folderKey == null || folderKey.isBlank()) {
+            throw new IllegalArgumentException("folderKey obbligatoria");
+        }
+
+        String chiave = chiave(fileName, folderKey);
+        UploadS3 upload = new UploadS3(chiave, contentType(fileName));
+        try {
+            scrittura.scrivi(upload);
+            // l'oggetto diventa visibile solo qui, a scrittura riuscita
+            upload.completa();
+            return SCHEMA + bucket + "/" + chiave;
+        } catch (IOException | RuntimeException e) {
+            upload.annulla();
+            throw new RuntimeException("Errore nel salvataggio del file su S3", e);
+        }
+    }
+
+    /**
+     * Copia locale dell'oggetto, scaricata in streaming al primo accesso.
+     * Se l'oggetto non esiste restituisce un File inesistente, come lo storage locale.
+     */
+    @Override
+    public File load(String path) {
+        String chiave = chiaveDi(path);
+        Path locale = cacheDir.resolve(chiave).normalize();
+        if (Files.exists(locale)) {
+            usato(chiave, locale);
+            return locale.toFile();
+        }
+
+        Path temp = null;
+        try {
+            Files.createDirectories(locale.getParent());
+            temp = Files.createTempFile(locale.getParent(),
+                    FileStorageServiceImpl.PREFISSO_TEMP, FileStorageServiceImpl.SUFFISSO_TEMP);
+            try (ResponseInputStream<GetObjectResponse> in = s3.getObject(GetObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(chiave)
+                    .build())) {
+                Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(temp, locale, StandardCopyOption.ATOMIC_MOVE);
+            usato(chiave, locale);
+            return locale.toFile();
+        } catch (NoSuchKeyException e) {
+            eliminaTemp(temp);
+            return locale.toFile();
+        } catch (IOException e) {
+            eliminaTemp(temp);
+            throw new RuntimeException("Errore nel download del file da S3", e);
+        }
+    }
+
+    @Override
+    public boolean delete(String path) {
+        if (path == null || path.isBlank()) {
+            return false;
+        }
+        String chiave = chiaveDi(path);
+        try {
+            s3.deleteObject(DeleteObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(chiave)
+                    .build());
+            synchronized (inCache) {
+                Long dimensione = inCache.remove(chiave);
+                if (dimensione != null) {
+                    cacheBytes -= dimensione;
+                }
+            }
+            Files.deleteIfExists(cacheDir.resolve(chiave).normalize());
+            return true;
+        } catch (S3Exception | IOException e) {
+            // Se fallisce la delete non butto giù l’app
+            return false;
+        }
+    }
+
+    @PreDestroy
+    void chiudi() {
+        s3.close();
+    }
+
+    /**
+     * Segna il file come appena usato ed elimina i meno usati di recente finché la cache
+     * rientra nel limite. Il file appena scaricato non viene mai eliminato qui,
+     * anche se da solo supera il limite: il chiamante lo sta per leggere.
+     */
+    private void usato(String chiave, Path locale) {
+        List<Path> daEliminare = new ArrayList<>();
+        synchronized (inCache) {
+            // get() in ordine di accesso sposta il file in fondo, tra i più recenti
+            if (inCache.get(chiave) == null) {
+                long dimensione = locale.toFile().length();
+                inCache.put(chiave, dimensione);
+                cacheBytes += dimensione;
+            }
+            Iterator<Map.Entry<String, Long>> it = inCache.entrySet().iterator();
+            while (cacheBytes > cacheMaxBytes && it.hasNext()) {
+                Map.Entry<String, Long> meno = it.next();
+                if (meno.getKey().equals(chiave)) {
+                    break;
+                }
+                cacheBytes -= meno.getValue();
+                daEliminare.add(cacheDir.resolve(meno.getKey()).normalize());
+                it.remove();
+            }
+        }
+        daEliminare.forEach(S3StorageService::elimina);
+    }
+
+    private static void svuota(Path cartella) {
+        if (!Files.isDirectory(cartella)) return;
+        try (Stream<Path> s = Files.walk(cartella)) {
+            s.sorted(Comparator.reverseOrder())
+                    .filter(p -> !p.equals(cartella))
+                    .forEach(S3StorageService::elimina);
+        } catch (IOException ignored) {
+            // la cache si ripopola comunque: i file non eliminati restano solo come spazio occupato
+        }
+    }
+
+    // "fatture/2025/11" + "fattura-AF-2025-001.pdf" → "fatture/2025/11/fattura-AF-2025-001-<uuid>.pdf"
+    private static String chiave(String fileName, String folderKey) {
+        int dot = fileName.lastIndexOf('.');
+        String baseName = (dot > 0 ? fileName.substring(0, dot) : fileName);
+        String ext = (dot > 0 ? fileName.substring(dot) : "");
+        String cartella = folderKey.replace('\\', '/').replaceAll("^/+|/+$", "");
+        return cartella + "/" + baseName + "-" + UUID.randomUUID() + ext;
+    }
+
+    private String chiaveDi(String path) {
+        String prefisso = SCHEMA + bucket + "/";
+        if (path == null || !path.startsWith(prefisso)) {
+            throw new IllegalArgumentException("Path non appartenente al bucket " + bucket + ": " + path);
+        }
+        return path.substring(prefisso.length());
+    }
+
+    private static String contentType(String fileName) {
+        return fileName.toLowerCase().endsWith(".pdf") ? "application/pdf" : "application/octet-stream";
+    }
+
+    private static void elimina(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            // resta su disco fino al prossimo avvio, che svuota la cache
+        }
+    }
+
+    private static void eliminaTemp(Path temp) {
+        if (temp == null) return;
+        try {
+            Files.deleteIfExists(temp);
+        } catch (IOException ignored) {
+            // il temporaneo resterà orfano, ma l'errore da riportare è quello originale
+        }
+    }
+
+    /**
+     * OutputStream che carica su S3 a blocchi di dimensioneParte: i file piccoli
+     * con un solo PUT, quelli grandi in multipart senza tenerli interi in memoria.
+     * close() non pubblica nulla (PDDocument.save chiude lo stream anche in caso
+     * di errore): l'oggetto è creato solo da completa().
+     */
+    private final class UploadS3 extends OutputStream {
+
+        private final String chiave;
+        private final String contentType;
+        private byte[] buffer = new byte[Math.min(BUFFER_INIZIALE, dimensioneParte)];
+        private final List<CompletedPart> parti = new ArrayList<>();
+        private int posizione;
+        private String uploadId;
+
+        private UploadS3(String chiave, String contentType) {
+            this.chiave = chiave;
+            this.contentType = contentType;
+        }
+
+        @Override
+        public void write(int b) {
+            if (posizione == buffer.length) {
+                liberaSpazio();
+            }
+            buffer[posizione++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            while (len > 0) {
+                if (posizione == buffer.length) {
+                    liberaSpazio();
+                }
+                int n = Math.min(len, buffer.length - posizione);
+                System.arraycopy(b, off, buffer, posizione, n);
+                posizione += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        // il buffer raddoppia fino a una parte intera; da lì in poi ogni parte piena viene inviata
+        private void liberaSpazio() {
+            if (buffer.length < dimensioneParte) {
+                buffer = Arrays.copyOf(buffer, (int) Math.min(2L * buffer.length, dimensioneParte));
+            } else {
+                inviaParte();
+            }
+        }
+
+        // il contenuto viene letto dal buffer durante la chiamata sincrona, senza copiarlo
+        private RequestBody contenuto() {
+            byte[] dati = buffer;
+            int n = posizione;
+            return RequestBody.fromContentProvider(() -> new ByteArrayInputStream(dati, 0, n), n, contentType);
+        }
+
+        private void inviaParte() {
+            if (uploadId == null) {
+                uploadId = s3.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                        .bucket(bucket)
+                        .key(chiave)
+                        .contentType(contentType)
+                        .build()).uploadId();
+            }
+            int numero = parti.size() + 1;
+            String etag = s3.uploadPart(UploadPartRequest.builder()
+                            .bucket(bucket)
+                            .key(chiave)
+                            .uploadId(uploadId)
+                            .partNumber(numero)
+                            .build(),
+                    contenuto()).eTag();
+            parti.add(CompletedPart.builder().partNumber(numero).eTag(etag).build());
+            posizione = 0;
+        }
+
+        void completa() {
+            if (uploadId == null) {
+                s3.putObject(PutObjectRequest.builder()
+                                .bucket(bucket)
+                                .key(chiave)
+                                .contentType(contentType)
+                                .build(),
+                        contenuto());
+                return;
+            }
+            if (posizione > 0) {
+                inviaParte();
+            }
+            s3.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(chiave)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parti).build())
+                    .build());
+        }
+
+        void annulla() {
+            if (uploadId == null) return;
+            try {
+                s3.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                        .bucket(bucket)
+                        .key(chiave)
+                        .uploadId(uploadId)
+                        .build());
+            } catch (S3Exception ignored) {
+                // le parti orfane vengono comunque rimosse dalla lifecycle policy del bucket
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package it.autoflow.commons.service;
+
+import it.autoflow.commons.dto.SpazioStorageDTO;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Controllo dello spazio libero sul volume dello storage, prima di generare un PDF.
+ * Lo spazio libero viene campionato periodicamente, fuori dalle richieste; ogni rendering
+ * in corso o in coda tiene una prenotazione della dimensione stimata di un PDF.
+ * Se lo spazio libero meno le prenotazioni scende sotto minimo-bytes la generazione
+ * viene rifiutata subito, prima di creare righe o impaginare qualcosa.
+ */
+@Component
+public class SpazioStorage {
+
+    public static final String SPAZIO_INSUFFICIENTE = "Impossibile generare il PDF – spazio insufficiente";
+
+    private final AtomicLong riservati = new AtomicLong();
+
+    // -1 finché non è stato fatto il primo campionamento
+    private volatile long liberi = -1;
+
+    @Value("${autoflow.storage.base-path:./autoflow-storage}")
+    private String basePath;
+
+    // 0 disattiva il controllo
+    @Value("${autoflow.storage.spazio.minimo-bytes:536870912}")
+    private long minimoBytes;
+
+    @Value("${autoflow.storage.spazio.stima-pdf-bytes:1048576}")
+    private long stimaPdfBytes;
+
+    /**
+     * Prenotazione di spazio per una scrittura; close() la rilascia (anche più volte).
+     */
+    public final class Prenotazione implements AutoCloseable {
+
+        private final long bytes;
+        private final AtomicBoolean rilasciata = new AtomicBoolean();
+
+        private Prenotazione(long bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void close() {
+            if (rilasciata.compareAndSet(false, true)) {
+                riservati.addAndGet(-bytes);
+            }
+        }
+    }
+
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${autoflow.storage.spazio.campionamento-ms:5000}")
+    public void campiona() {
+        try {
+            liberi = Files.getFileStore(cartellaEsistente()).getUsableSpace();
+        } catch (IOException e) {
+            // resta l'ultimo valore letto: meglio un dato vecchio che bloccare le generazioni
+        }
+    }
+
+    /**
+     * Verifica senza prenotare: per rifiutare una richiesta prima di iniziare a scrivere.
+     *
+     * @throws IllegalStateException se lo spazio non basta per un altro PDF
+     */
+    public void verifica() {
+        if (disponibili() - stimaPdfBytes < minimoBytes) {
+            throw new IllegalStateException(SPAZIO_INSUFFICIENTE);
+        }
+    }
+
+    /**
+     * Prenota lo spazio stimato per un PDF, da rilasciare a scrittura finita o fallita.
+     *
+     * @throws IllegalStateException se lo spazio non basta
+     */
+    public Prenotazione riserva() {
+        long totale = riservati.addAndGet(stimaPdfBytes);
+        if (minimoBytes > 0 && liberi >= 0 && liberi - totale < minimoBytes) {
+            riservati.addAndGet(-stimaPdfBytes);
+            throw new IllegalStateException(SPAZIO_INSUFFICIENTE);
+        }
+        return new Prenotazione(stimaPdfBytes);
+    }
+
+    public SpazioStorageDTO stato() {
+        SpazioStorageDTO dto = new SpazioStorageDTO();
+        dto.setLiberiBytes(liberi);
+        dto.setRiservatiBytes(riservati.get());
+        dto.setDisponibiliBytes(liberi >= 0 ? liberi - riservati.get() : -1);
+        dto.setMinimoBytes(minimoBytes);
+        return dto;
+    }
+
+    private long disponibili() {
+        // senza un campionamento valido non si blocca nulla
+        if (minimoBytes <= 0 || liberi < 0) {
+            return Long.MAX_VALUE;
+        }
+        return liberi - riservati.get();
+    }
+
+    // la cartella base può non esistere ancora: si misura il volume della prima cartella esistente
+    private Path cartellaEsistente() {
+        Path p = Paths.get(basePath).toAbsolutePath().normalize();
+        while (p.getParent() != null && !Files.exists(p)) {
+            p = p.getParent();
+        }
+        return p;
+    }
+}
@@ -1,11 +1,15 @@
 package it.autoflow.configuration.controller;
 
+import it.autoflow.commons.dto.CursorPageDTO;
+import it.autoflow.commons.service.NdjsonExportService;
 import it.autoflow.configuration.dto.ConfigurazioneDTO;
 import it.autoflow.configuration.service.ConfigurazioneService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import jakarta.validation.Valid;
 import java.util.List;
@@ -16,6 +20,7 @@ import java.util.List;
 public class ConfigurazioneController {
 
     private final ConfigurazioneService configurazioneService;
+    private final NdjsonExportService ndjsonExportService;
 
     @PostMapping
     public ResponseEntity<ConfigurazioneDTO> creaConfigurazione(@RequestBody @Valid ConfigurazioneDTO dto) {
@@ -33,6 +38,20 @@ public class ConfigurazioneController {
         return ResponseEntity.ok(configurazioneService.getAll());
     }
 
+    @GetMapping(params = "limit")
+    public ResponseEntity<CursorPageDTO<ConfigurazioneDTO>> getPage(@RequestParam(required = false) Long after,
+                                                                   @RequestParam int limit) {
+        return ResponseEntity.ok(configurazioneService.getPage(after, limit));
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> export() {
+        StreamingResponseBody body = out -> ndjsonExportService.scrivi(configurazioneService::streamAll, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
     @PutMapping("/{id}")
     public ResponseEntity<ConfigurazioneDTO> update(@PathVariable Long id,
                                                     @RequestBody @Valid ConfigurazioneDTO dto) {
@@ -1,10 +1,13 @@
 package it.autoflow.configuration.controller;
 
+import it.autoflow.commons.cache.VersioneCatalogo;
 import it.autoflow.configuration.dto.OptionalAccessorioDTO;
 import it.autoflow.configuration.service.OptionalAccessorioService;
 import jakarta.validation.Valid;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 
@@ -13,14 +16,17 @@ import java.util.List;
 public class OptionalAccessorioController {
 
     private final OptionalAccessorioService optionalAccessorioService;
+    private final VersioneCatalogo versioneCatalogo;
 
-    public OptionalAccessorioController(OptionalAccessorioService optionalAccessorioService) {
+    public OptionalAccessorioController(OptionalAccessorioService optionalAccessorioService,
+                                        VersioneCatalogo versioneCatalogo) {
         this.optionalAccessorioService = optionalAccessorioService;
+        this.versioneCatalogo = versioneCatalogo;
     }
 
     @GetMapping
-    public List<OptionalAccessorioDTO> getAll() {
-        return optionalAccessorioService.findAll();
+    public ResponseEntity<List<OptionalAccessorioDTO>> getAll(WebRequest request) {
+        return versioneCatalogo.risposta(request, optionalAccessorioService.findAll());
     }
 
     @GetMapping("/{id}")
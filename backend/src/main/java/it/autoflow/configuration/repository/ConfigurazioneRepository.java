@@ -2,11 +2,25 @@ package it.autoflow.configuration.repository;
 
 import it.autoflow.configuration.entity.Configurazione;
 import it.autoflow.user.entity.Cliente;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface ConfigurazioneRepository extends JpaRepository<Configurazione, Long> {
 
     List<Configurazione> findByCliente(Cliente cliente);
+
+    List<Configurazione> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    @QueryHints({
+            @QueryHint(name = "org.hibernate.fetchSize", value = "500"),
+            @QueryHint(name = "org.hibernate.readOnly", value = "true")
+    })
+    @Query("select c from Configurazione c order by c.id")
+    Stream<Configurazione> streamAll();
 }
\ No newline at end of file
@@ -1,8 +1,10 @@
 package it.autoflow.configuration.service;
 
+import it.autoflow.commons.dto.CursorPageDTO;
 import it.autoflow.configuration.dto.ConfigurazioneDTO;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface ConfigurazioneService {
 
@@ -12,6 +14,13 @@ public interface ConfigurazioneService {
 
     List<ConfigurazioneDTO> getAll();
 
+    CursorPageDTO<ConfigurazioneDTO> getPage(Long after, int limit);
+
+    /**
+     * Stream di tutte le configurazioni ordinate per id: va consumato dentro una transazione.
+     */
+    Stream<ConfigurazioneDTO> streamAll();
+
     ConfigurazioneDTO update(Long id, ConfigurazioneDTO dto);
 
     void delete(Long id);
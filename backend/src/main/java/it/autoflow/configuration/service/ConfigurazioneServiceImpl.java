@@ -1,5 +1,6 @@
 package it.autoflow.configuration.service;
 
+import it.autoflow.commons.dto.CursorPageDTO;
 import it.autoflow.configuration.dto.ConfigurazioneDTO;
 import it.autoflow.configuration.entity.Configurazione;
 import it.autoflow.configuration.entity.OptionalAccessorio;
@@ -11,6 +12,7 @@ import it.autoflow.vehicle.entity.Veicolo;
 import it.autoflow.vehicle.repository.VeicoloRepository;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
@@ -18,6 +20,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -95,6 +98,19 @@ public class ConfigurazioneServiceImpl implements ConfigurazioneService {
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public CursorPageDTO<ConfigurazioneDTO> getPage(Long after, int limit) {
+        int limite = CursorPageDTO.normalizzaLimite(limit);
+        List<Configurazione> righe = configurazioneRepository.findByIdGreaterThanOrderByIdAsc(
+                CursorPageDTO.normalizzaCursore(after), Limit.of(limite + 1));
+        return CursorPageDTO.of(righe, limite, Configurazione::getId).map(this::toDto);
+    }
+
+    @Override
+    public Stream<ConfigurazioneDTO> streamAll() {
+        return configurazioneRepository.streamAll().map(this::toDto);
+    }
+
     @Override
     public ConfigurazioneDTO update(Long id, ConfigurazioneDTO dto) {
         Configurazione configurazione = configurazioneRepository.findById(id)
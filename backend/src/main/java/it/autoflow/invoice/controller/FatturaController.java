@@ -1,25 +1,32 @@
 package it.autoflow.invoice.controller;
 
+import it.autoflow.commons.cache.CacheDocumentiPdf;
+import it.autoflow.commons.controller.DocumentoPdfController;
+import it.autoflow.commons.dto.CursorPageDTO;
 import it.autoflow.commons.entity.DocumentoPDF;
+import it.autoflow.commons.entity.StatoDocumento;
 import it.autoflow.commons.repository.DocumentoPDFRepository;
-import it.autoflow.commons.service.FileStorageService;
+import it.autoflow.commons.service.NdjsonExportService;
 import it.autoflow.commons.service.PdfDocumentService;
 import it.autoflow.invoice.dto.FatturaDTO;
+import it.autoflow.invoice.service.ArchivioPdfFattureService;
 import it.autoflow.invoice.service.FatturaService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
-import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.List;
 
 @RestController
@@ -27,16 +34,52 @@ import java.util.List;
 @RequiredArgsConstructor
 public class FatturaController {
 
+    // il PDF è personale: solo cache del browser, sempre rivalidata
+    private static final CacheControl CACHE_CONTROL_PDF = CacheControl.noCache().cachePrivate();
+
     private final FatturaService fatturaService;
     private final PdfDocumentService pdfDocumentService;
-    private final FileStorageService fileStorageService;
     private final DocumentoPDFRepository documentoPDFRepository;
+    private final NdjsonExportService ndjsonExportService;
+    private final ArchivioPdfFattureService archivioPdfFattureService;
+    private final CacheDocumentiPdf cacheDocumentiPdf;
 
     @GetMapping
     public List<FatturaDTO> findAll() {
         return fatturaService.findAll();
     }
 
+    // GET /api/fatture?after=<id>&limit=<n>  → pagina a cursore
+    @GetMapping(params = "limit")
+    public CursorPageDTO<FatturaDTO> findPage(@RequestParam(required = false) Long after,
+                                              @RequestParam int limit) {
+        return fatturaService.findPage(after, limit);
+    }
+
+    // GET /api/fatture/export  → application/x-ndjson, una fattura per riga
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> export() {
+        StreamingResponseBody body = out -> ndjsonExportService.scrivi(fatturaService::streamAll, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    // GET /api/fatture/archivio-pdf?from=2025-01-01&to=2025-01-31  → application/zip
+    @GetMapping(value = "/archivio-pdf", produces = "application/zip")
+    public ResponseEntity<StreamingResponseBody> archivioPdf(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        if (to.isBefore(from)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Intervallo di date non valido");
+        }
+        StreamingResponseBody body = out -> archivioPdfFattureService.scrivi(from, to, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"fatture-" + from + "_" + to + ".zip\"")
+                .body(body);
+    }
 
     @GetMapping("/cliente/{id}")
     public List<FatturaDTO> getByCliente(@PathVariable("id") Long clienteId) {
@@ -70,48 +113,57 @@ public class FatturaController {
     //  GET /api/fatture/{id}/pdf  → application/pdf
     // ---------------------------------------------------------
     @GetMapping("/{id}/pdf")
-    public ResponseEntity<Resource> downloadPdf(@PathVariable Long id) {
+    public ResponseEntity<?> downloadPdf(@PathVariable Long id, WebRequest request) {
         // 1) leggo la fattura come DTO
         FatturaDTO fattura = fatturaService.findById(id);
 
-        Long documentoId = fattura.getDocumentoPdfId();
+        // 2) documento collegato, se esiste
+        DocumentoPDF documento = fattura.getDocumentoPdfId() != null
+                ? documentoPDFRepository.findById(fattura.getDocumentoPdfId()).orElse(null)
+                : null;
 
-        // 2) se non esiste ancora il PDF, lo genero adesso
-        if (documentoId == null) {
-            DocumentoPDF documento = pdfDocumentService.generateInvoicePdf(id);
-            documentoId = documento.getId();
+        // 3) rendering fallito: restituisco l'errore, la rigenerazione la chiede il client
+        //    con POST /api/documenti/fattura/{id} invece di ogni GET del polling
+        if (documento != null && documento.getStato() == StatoDocumento.FAILED) {
+            return DocumentoPdfController.renderingFallito(documento);
         }
 
-        DocumentoPDF documento = documentoPDFRepository.findById(documentoId)
-                .orElseThrow(() -> new ResponseStatusException(
-                        HttpStatus.NOT_FOUND,
-                        "DocumentoPDF non trovato per fattura " + id
-                ));
+        // 4) se manca o è in coda (da troppo tempo viene riaccodato), lo accodo:
+        //    il client riceve 202 e interroga /api/documenti/{id} finché non è pronto
+        if (documento == null || !documento.isPronto()) {
+            documento = pdfDocumentService.requestInvoicePdf(id);
+        }
+        if (!documento.isPronto()) {
+            return DocumentoPdfController.inElaborazione(documento.getId());
+        }
+
+        // 5) GET condizionale: ETag e Last-Modified dal documento, 304 se il client ha già questa versione
+        long ultimaModifica = documento.getUltimaModifica() != null
+                ? documento.getUltimaModifica().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                : 0L;
+        String etag = "\"pdf-" + documento.getId() + "-" + ultimaModifica + "\"";
+        if (request.checkNotModified(etag, ultimaModifica)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .cacheControl(CACHE_CONTROL_PDF)
+                    .build();
+        }
 
-        File file = fileStorageService.load(documento.getPath());
-        if (!file.exists()) {
+        // 6) contenuto dalla cache dei PDF recenti, o dallo storage se troppo grande:
+        //    Spring imposta Content-Length e risponde 206 alle richieste con header Range
+        Resource contenuto = cacheDocumentiPdf.contenuto(documento);
+        if (contenuto == null) {
             throw new ResponseStatusException(
                     HttpStatus.NOT_FOUND,
                     "File PDF non trovato su disco"
             );
         }
 
-        try {
-            byte[] bytes = Files.readAllBytes(file.toPath());
-            ByteArrayResource resource = new ByteArrayResource(bytes);
-
-            return ResponseEntity.ok()
-                    .contentType(MediaType.APPLICATION_PDF)
-                    .header(HttpHeaders.CONTENT_DISPOSITION,
-                            "inline; filename=\"" + documento.getNomeFile() + "\"")
-                    .body(resource);
-        } catch (IOException e) {
-            throw new ResponseStatusException(
-                    HttpStatus.INTERNAL_SERVER_ERROR,
-                    "Errore nella lettura del PDF",
-                    e
-            );
-        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_PDF)
+                .cacheControl(CACHE_CONTROL_PDF)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "inline; filename=\"" + documento.getNomeFile() + "\"")
+                .body(contenuto);
     }
 
     @PostMapping("/da-proposta/{propostaId}")
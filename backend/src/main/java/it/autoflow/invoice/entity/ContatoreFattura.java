@@ -0,0 +1,34 @@
+package it.autoflow.invoice.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Ultimo numero di fattura assegnato in un anno.
+ * La riga viene bloccata (SELECT ... FOR UPDATE) dalla transazione che crea la fattura:
+ * il numero e la fattura si confermano o si annullano insieme, quindi la numerazione
+ * non ha buchi né doppioni.
+ */
+@Getter @Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "contatori_fattura")
+public class ContatoreFattura {
+
+    @Id
+    private Integer anno;
+
+    @Column(nullable = false)
+    private long ultimoNumero;
+
+    // cifre del progressivo per tutto l'anno; null sui contatori creati prima della colonna
+    private Integer cifre;
+
+    public ContatoreFattura(Integer anno, long ultimoNumero, Integer cifre) {
+        this.anno = anno;
+        this.ultimoNumero = ultimoNumero;
+        this.cifre = cifre;
+    }
+}
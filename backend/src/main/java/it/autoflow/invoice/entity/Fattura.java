@@ -11,7 +11,9 @@ import java.time.LocalDate;
 
 @Getter @Setter
 @Entity
-@Table(name = "fatture")
+@Table(name = "fatture", indexes = {
+        @Index(name = "idx_fatture_data_emissione", columnList = "data_emissione")
+})
 public class Fattura {
 
     @Id
@@ -21,7 +23,7 @@ public class Fattura {
     @Column(nullable = false, unique = true)
     private String numeroFattura;
 
-    @Column(nullable = false)
+    @Column(name = "data_emissione", nullable = false)
     private LocalDate dataEmissione;
 
     @ManyToOne(optional = false)
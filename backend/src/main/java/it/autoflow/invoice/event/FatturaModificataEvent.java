@@ -0,0 +1,34 @@
+package it.autoflow.invoice.event;
+
+import it.autoflow.invoice.entity.Fattura;
+import it.autoflow.proposal.entity.Proposta;
+
+import java.time.LocalDate;
+
+/**
+ * Pubblicato da FatturaService, dentro la transazione, a ogni scrittura su una fattura.
+ * prima è null in creazione, dopo è null in eliminazione.
+ */
+public record FatturaModificataEvent(Long fatturaId, Valori prima, Valori dopo) {
+
+    /**
+     * I campi della fattura che contano per le statistiche.
+     */
+    public record Valori(LocalDate dataEmissione,
+                         double importoTotale,
+                         boolean pagata,
+                         Long addettoVenditeId) {
+
+        public static Valori di(Fattura fattura) {
+            Proposta proposta = fattura.getProposta();
+            return new Valori(
+                    fattura.getDataEmissione(),
+                    fattura.getImportoTotale() != null ? fattura.getImportoTotale() : 0d,
+                    fattura.getDataPagamento() != null,
+                    proposta != null && proposta.getAddettoVendite() != null
+                            ? proposta.getAddettoVendite().getId()
+                            : null
+            );
+        }
+    }
+}
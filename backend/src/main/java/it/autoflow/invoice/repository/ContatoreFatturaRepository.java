@@ -0,0 +1,18 @@
+package it.autoflow.invoice.repository;
+
+import it.autoflow.invoice.entity.ContatoreFattura;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Optional;
+
+public interface ContatoreFatturaRepository extends JpaRepository<ContatoreFattura, Integer> {
+
+    // il lock resta fino a fine transazione: chi crea un'altra fattura dello stesso anno attende
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select c from ContatoreFattura c where c.anno = :anno")
+    Optional<ContatoreFattura> findPerAggiornamento(@Param("anno") Integer anno);
+}
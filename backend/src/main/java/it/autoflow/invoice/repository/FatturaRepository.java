@@ -1,12 +1,18 @@
 package it.autoflow.invoice.repository;
 
+import it.autoflow.commons.entity.StatoDocumento;
 import it.autoflow.invoice.entity.Fattura;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface FatturaRepository extends JpaRepository<Fattura, Long> {
 
@@ -14,26 +20,84 @@ public interface FatturaRepository extends JpaRepository<Fattura, Long> {
 
     List<Fattura> findByCliente_Id(Long clienteId);
 
+    Optional<Fattura> findByDocumentoPdf_Id(Long documentoPdfId);
+
     @Query("select coalesce(sum(f.importoTotale), 0) from Fattura f")
     Double sumImportoTotale();
 
+    // intervallo semiaperto [da, a): predicato sargable, usa idx_fatture_data_emissione
     @Query("""
            select coalesce(sum(f.importoTotale), 0)
            from Fattura f
-           where year(f.dataEmissione) = :anno
+           where f.dataEmissione >= :da
+             and f.dataEmissione < :a
            """)
-    Double sumImportoTotaleByAnno(@Param("anno") int anno);
+    Double sumImportoTotaleTra(@Param("da") LocalDate da,
+                               @Param("a") LocalDate a);
+
+    long countByDataPagamentoIsNull();
+
+    interface RollupGiorno {
+        LocalDate getGiorno();
+
+        Long getAddettoVenditeId();
+
+        Double getFatturato();
 
+        Long getNumeroFatture();
+
+        Long getNonPagate();
+    }
+
+    // usata solo per ricostruire il rollup giornaliero del fatturato
     @Query("""
-           select coalesce(sum(f.importoTotale), 0)
+           select f.dataEmissione as giorno, a.id as addettoVenditeId,
+                  sum(f.importoTotale) as fatturato, count(f) as numeroFatture,
+                  count(case when f.dataPagamento is null then 1 end) as nonPagate
            from Fattura f
-           where year(f.dataEmissione) = :anno
-             and month(f.dataEmissione) = :mese
+           left join f.proposta p
+           left join p.addettoVendite a
+           group by f.dataEmissione, a.id
            """)
-    Double sumImportoTotaleByAnnoAndMese(@Param("anno") int anno,
-                                         @Param("mese") int mese);
+    List<RollupGiorno> rollupGiornaliero();
 
-    long countByDataPagamentoIsNull();
+    interface DocumentoFattura {
+        Long getFatturaId();
+
+        String getNumeroFattura();
+
+        Long getDocumentoId();
+
+        StatoDocumento getStato();
+
+        String getNomeFile();
+
+        String getPath();
+    }
+
+    // solo i campi necessari all'archivio PDF di un periodo, intervallo semiaperto [da, a)
+    @Query("""
+           select f.id as fatturaId, f.numeroFattura as numeroFattura,
+                  d.id as documentoId, d.stato as stato, d.nomeFile as nomeFile, d.path as path
+           from Fattura f
+           left join f.documentoPdf d
+           where f.dataEmissione >= :da
+             and f.dataEmissione < :a
+           order by f.dataEmissione, f.id
+           """)
+    List<DocumentoFattura> findDocumentiTra(@Param("da") LocalDate da,
+                                            @Param("a") LocalDate a);
+
+    // solo per inizializzare il contatore di un anno dalle fatture già emesse
+    @Query("select f.numeroFattura from Fattura f where f.numeroFattura like concat(:prefisso, '%')")
+    List<String> findNumeriConPrefisso(@Param("prefisso") String prefisso);
+
+    List<Fattura> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
 
-    Fattura findTopByNumeroFatturaStartingWithOrderByNumeroFatturaDesc(String prefix);
+    @QueryHints({
+            @QueryHint(name = "org.hibernate.fetchSize", value = "500"),
+            @QueryHint(name = "org.hibernate.readOnly", value = "true")
+    })
+    @Query("select f from Fattura f order by f.id")
+    Stream<Fattura> streamAll();
 }
\ No newline at end of file
@@ -0,0 +1,184 @@
+package it.autoflow.invoice.service;
+
+import it.autoflow.commons.entity.DocumentoPDF;
+import it.autoflow.commons.entity.StatoDocumento;
+import it.autoflow.commons.repository.DocumentoPDFRepository;
+import it.autoflow.commons.service.CodaRenderingPdf;
+import it.autoflow.commons.service.FileStorageService;
+import it.autoflow.commons.service.PdfDocumentService;
+import it.autoflow.invoice.repository.FatturaRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Archivio ZIP dei PDF delle fatture emesse in un periodo.
+ * I PDF mancanti vengono generati sul pool di impaginazione mentre quelli già
+ * pronti sono copiati subito dal disco nello ZIP: in memoria c'è al più un
+ * buffer di copia, mai l'intero archivio. I rendering in volo sono al più metà
+ * dei thread del pool, così l'archivio non affama la coda di rendering né il
+ * pool di connessioni; i documenti già in coda (PENDING) vengono attesi, non
+ * rigenerati.
+ */
+@Service
+@RequiredArgsConstructor
+public class ArchivioPdfFattureService {
+
+    private static final String FILE_ERRORI = "ERRORI.txt";
+    private static final long INTERVALLO_ATTESA_MS = 200;
+
+    private final FatturaRepository fatturaRepository;
+    private final DocumentoPDFRepository documentoPDFRepository;
+    private final PdfDocumentService pdfDocumentService;
+    private final FileStorageService fileStorageService;
+    private final CodaRenderingPdf codaRendering;
+
+    // quanto aspettare un documento già in coda prima di segnarlo in ERRORI.txt
+    @Value("${autoflow.pdf.archivio.attesa-ms:60000}")
+    private long attesaMs;
+
+    /**
+     * Scrive nello stream lo ZIP con i PDF delle fatture emesse tra da e a (inclusi),
+     * in ordine di emissione. Le fatture il cui PDF non può essere prodotto sono
+     * elencate in ERRORI.txt in coda all'archivio, perché a quel punto la risposta
+     * è già partita con 200.
+     */
+    public void scrivi(LocalDate da, LocalDate a, OutputStream out) throws IOException {
+        if (da == null || a == null || a.isBefore(da)) {
+            throw new IllegalArgumentException("Intervallo di date non valido");
+        }
+
+        List<FatturaRepository.DocumentoFattura> righe = fatturaRepository.findDocumentiTra(da, a.plusDays(1));
+
+        // finestra scorrevole: avvio in anticipo i rendering delle righe successive,
+        // ma mai più di metà dei thread di impaginazione alla volta
+        Semaphore finestra = new Semaphore(Math.max(1, codaRendering.thread() / 2));
+        Map<Long, CompletableFuture<DocumentoPDF>> inGenerazione = new HashMap<>();
+        int avviate = 0;
+
+        List<String> errori = new ArrayList<>();
+        // non chiudo lo ZipOutputStream: lo stream della risposta lo gestisce il container
+        ZipOutputStream zip = new ZipOutputStream(out);
+        // i PDF sono già compressi: inutile spendere CPU per guadagnare pochi byte
+        zip.setLevel(Deflater.BEST_SPEED);
+
+        for (FatturaRepository.DocumentoFattura r : righe) {
+            // le righe precedenti sono già state scritte e hanno liberato i loro permessi,
+            // quindi la riga corrente trova sempre posto se non è ancora partita
+            while (avviate < righe.size()) {
+                FatturaRepository.DocumentoFattura prossima = righe.get(avviate);
+                if (daGenerare(prossima)) {
+                    if (!finestra.tryAcquire()) {
+                        break;
+                    }
+                    Long fatturaId = prossima.getFatturaId();
+                    inGenerazione.put(fatturaId, codaRendering
+                            .esegui(() -> pdfDocumentService.generateInvoicePdf(fatturaId))
+                            .whenComplete((d, e) -> finestra.release()));
+                }
+                avviate++;
+            }
+
+            String nomeFile = r.getNomeFile();
+            String path = r.getPath();
+
+            CompletableFuture<DocumentoPDF> generazione = inGenerazione.remove(r.getFatturaId());
+            if (generazione != null) {
+                try {
+                    DocumentoPDF documento = generazione.join();
+                    nomeFile = documento.getNomeFile();
+                    path = documento.getPath();
+                } catch (CompletionException e) {
+                    Throwable causa = e.getCause() != null ? e.getCause() : e;
+                    errori.add(r.getNumeroFattura() + ": " + causa.getMessage());
+                    continue;
+                }
+            } else if (r.getStato() == StatoDocumento.PENDING) {
+                DocumentoPDF documento = attendi(r.getDocumentoId());
+                if (documento == null) {
+                    errori.add(r.getNumeroFattura() + ": documento PDF non trovato");
+                    continue;
+                }
+                if (documento.getStato() == StatoDocumento.FAILED) {
+                    errori.add(r.getNumeroFattura() + ": "
+                            + (documento.getErrore() != null ? documento.getErrore() : "generazione PDF fallita"));
+                    continue;
+                }
+                if (documento.getStato() == StatoDocumento.PENDING) {
+                    errori.add(r.getNumeroFattura() + ": PDF ancora in generazione, riprovare più tardi");
+                    continue;
+                }
+                nomeFile = documento.getNomeFile();
+                path = documento.getPath();
+            }
+
+            File file = fileStorageService.load(path);
+            if (!file.exists()) {
+                errori.add(r.getNumeroFattura() + ": file PDF non trovato su disco");
+                continue;
+            }
+
+            zip.putNextEntry(new ZipEntry(nomeFile));
+            Files.copy(file.toPath(), zip);
+            zip.closeEntry();
+        }
+
+        if (!errori.isEmpty()) {
+            zip.putNextEntry(new ZipEntry(FILE_ERRORI));
+            zip.write(String.join("\n", errori).getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        zip.finish();
+        zip.flush();
+    }
+
+    /**
+     * Rilegge il documento finché il rendering in coda non finisce o scade l'attesa.
+     * Chi lo ha accodato lo porta a READY o FAILED; se il lavoro è andato perso
+     * lo riaccoda RecuperoRenderingPdf, quindi qui non lo rigenero.
+     */
+    private DocumentoPDF attendi(Long documentoId) {
+        long limite = System.nanoTime() + attesaMs * 1_000_000L;
+        while (true) {
+            DocumentoPDF documento = documentoPDFRepository.findById(documentoId).orElse(null);
+            if (documento == null || documento.getStato() != StatoDocumento.PENDING
+                    || System.nanoTime() - limite >= 0) {
+                return documento;
+            }
+            try {
+                Thread.sleep(INTERVALLO_ATTESA_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return documento;
+            }
+        }
+    }
+
+    // senza documento, fallito o pronto ma senza file: va generato ora
+    private static boolean daGenerare(FatturaRepository.DocumentoFattura r) {
+        return r.getStato() != StatoDocumento.PENDING && !pronto(r);
+    }
+
+    private static boolean pronto(FatturaRepository.DocumentoFattura r) {
+        return r.getDocumentoId() != null
+                && r.getPath() != null
+                && (r.getStato() == null || r.getStato() == StatoDocumento.READY);
+    }
+}
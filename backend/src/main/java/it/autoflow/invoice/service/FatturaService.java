@@ -1,13 +1,22 @@
 package it.autoflow.invoice.service;
 
+import it.autoflow.commons.dto.CursorPageDTO;
 import it.autoflow.invoice.dto.FatturaDTO;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface FatturaService {
 
     List<FatturaDTO> findAll();
 
+    CursorPageDTO<FatturaDTO> findPage(Long after, int limit);
+
+    /**
+     * Stream di tutte le fatture ordinate per id: va consumato dentro una transazione.
+     */
+    Stream<FatturaDTO> streamAll();
+
     FatturaDTO findById(Long id);
 
     FatturaDTO findByNumeroFattura(String numeroFattura);
@@ -1,9 +1,11 @@
 package it.autoflow.invoice.service;
 
+import it.autoflow.commons.dto.CursorPageDTO;
 import it.autoflow.commons.entity.DocumentoPDF;
 import it.autoflow.commons.repository.DocumentoPDFRepository;
 import it.autoflow.invoice.dto.FatturaDTO;
 import it.autoflow.invoice.entity.Fattura;
+import it.autoflow.invoice.event.FatturaModificataEvent;
 import it.autoflow.invoice.repository.FatturaRepository;
 import it.autoflow.invoice.service.FatturaService;
 import it.autoflow.proposal.entity.Proposta;
@@ -13,11 +15,16 @@ import it.autoflow.user.entity.Cliente;
 import it.autoflow.user.repository.ClienteRepository;
 import jakarta.persistence.EntityNotFoundException;
 import it.autoflow.commons.service.PdfDocumentService;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Objects;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class FatturaServiceImpl implements FatturaService {
@@ -27,17 +34,23 @@ public class FatturaServiceImpl implements FatturaService {
     private final PropostaRepository propostaRepository;
     private final DocumentoPDFRepository documentoPDFRepository;
     private final PdfDocumentService pdfDocumentService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final NumeratoreFatture numeratoreFatture;
 
     public FatturaServiceImpl(FatturaRepository fatturaRepository,
                               ClienteRepository clienteRepository,
                               PropostaRepository propostaRepository,
                               DocumentoPDFRepository documentoPDFRepository,
-                              PdfDocumentService pdfDocumentService) {
+                              PdfDocumentService pdfDocumentService,
+                              ApplicationEventPublisher eventPublisher,
+                              NumeratoreFatture numeratoreFatture) {
         this.fatturaRepository = fatturaRepository;
         this.clienteRepository = clienteRepository;
         this.propostaRepository = propostaRepository;
         this.documentoPDFRepository = documentoPDFRepository;
         this.pdfDocumentService = pdfDocumentService;
+        this.eventPublisher = eventPublisher;
+        this.numeratoreFatture = numeratoreFatture;
     }
 
     @Override
@@ -48,6 +61,19 @@ public class FatturaServiceImpl implements FatturaService {
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public CursorPageDTO<FatturaDTO> findPage(Long after, int limit) {
+        int limite = CursorPageDTO.normalizzaLimite(limit);
+        List<Fattura> righe = fatturaRepository.findByIdGreaterThanOrderByIdAsc(
+                CursorPageDTO.normalizzaCursore(after), Limit.of(limite + 1));
+        return CursorPageDTO.of(righe, limite, Fattura::getId).map(this::toDto);
+    }
+
+    @Override
+    public Stream<FatturaDTO> streamAll() {
+        return fatturaRepository.streamAll().map(this::toDto);
+    }
+
     @Override
     public FatturaDTO findById(Long id) {
         Fattura fattura = fatturaRepository.findById(id)
@@ -71,6 +97,7 @@ public class FatturaServiceImpl implements FatturaService {
     }
 
     @Override
+    @Transactional
     public FatturaDTO create(FatturaDTO dto) {
         Fattura fattura = new Fattura();
 
@@ -96,14 +123,30 @@ public class FatturaServiceImpl implements FatturaService {
         fattura.setDataPagamento(dto.getDataPagamento());
         fattura.setDocumentoPdf(documentoPDF);
 
+        return toDto(inserisci(fattura));
+    }
+
+    // salvataggio di una nuova fattura, comune a create() e createFromProposta()
+    private Fattura inserisci(Fattura fattura) {
+        if (fattura.getNumeroFattura() == null) {
+            // lo assegna il contatore dell'anno, nella stessa transazione del salvataggio
+            fattura.setNumeroFattura(numeratoreFatture.prossimo(fattura.getDataEmissione().getYear()));
+        } else {
+            // numero scelto a mano: non deve scavalcare il contatore
+            numeratoreFatture.registraManuale(fattura.getNumeroFattura());
+        }
         fattura = fatturaRepository.save(fattura);
-        return toDto(fattura);
+        eventPublisher.publishEvent(new FatturaModificataEvent(
+                fattura.getId(), null, FatturaModificataEvent.Valori.di(fattura)));
+        return fattura;
     }
 
     @Override
+    @Transactional
     public FatturaDTO update(Long id, FatturaDTO dto) {
         Fattura fattura = fatturaRepository.findById(id)
                 .orElseThrow(() -> new EntityNotFoundException("Fattura non trovata con id: " + id));
+        FatturaModificataEvent.Valori prima = FatturaModificataEvent.Valori.di(fattura);
 
         if (dto.getClienteId() != null &&
                 (fattura.getCliente() == null || !fattura.getCliente().getId().equals(dto.getClienteId()))) {
@@ -127,20 +170,28 @@ public class FatturaServiceImpl implements FatturaService {
             fattura.setDocumentoPdf(null);
         }
 
+        if (!Objects.equals(fattura.getNumeroFattura(), dto.getNumeroFattura())) {
+            numeratoreFatture.registraManuale(dto.getNumeroFattura());
+        }
         fattura.setNumeroFattura(dto.getNumeroFattura());
         fattura.setDataEmissione(dto.getDataEmissione());
         fattura.setImportoTotale(dto.getImportoTotale());
         fattura.setDataPagamento(dto.getDataPagamento());
 
         fattura = fatturaRepository.save(fattura);
+        eventPublisher.publishEvent(new FatturaModificataEvent(
+                fattura.getId(), prima, FatturaModificataEvent.Valori.di(fattura)));
         return toDto(fattura);
     }
 
     @Override
+    @Transactional
     public void delete(Long id) {
         Fattura fattura = fatturaRepository.findById(id)
                 .orElseThrow(() -> new EntityNotFoundException("Fattura non trovata con id: " + id));
         fatturaRepository.delete(fattura);
+        eventPublisher.publishEvent(new FatturaModificataEvent(
+                id, FatturaModificataEvent.Valori.di(fattura), null));
     }
 
     // --------- mapping helper ---------
@@ -158,7 +209,14 @@ public class FatturaServiceImpl implements FatturaService {
         return dto;
     }
 
+    /**
+     * Tutto in una transazione: la fattura, il suo numero e il documento PDF in coda
+     * vengono confermati o annullati insieme. Proposta e cliente si leggono una volta sola
+     * e la fattura resta gestita fino al commit, quindi il collegamento del PDF non richiede
+     * né una nuova lettura né un save esplicito.
+     */
     @Override
+    @Transactional
     public FatturaDTO createFromProposta(Long propostaId) {
 
         // 1. Recupero la proposta (TC5_02)
@@ -176,53 +234,28 @@ public class FatturaServiceImpl implements FatturaService {
             throw new IllegalStateException("La proposta non è confermata");
         }
 
-        // 3. Genero numero fattura
-        String numero = generateInvoiceNumber();
-
-        // 4. Creo il DTO usando i dati della proposta
-        FatturaDTO dto = new FatturaDTO();
-        dto.setNumeroFattura(numero);
-        dto.setDataEmissione(LocalDate.now());
-        dto.setClienteId(cliente.getId());
-        dto.setPropostaId(proposta.getId());
-        dto.setImportoTotale(proposta.getPrezzoProposta());
-        dto.setDataPagamento(null);
-        dto.setDocumentoPdfId(null);
-
-        // 5. Persisto la fattura usando create()
-        FatturaDTO fattura = create(dto);
-
-        // 6. GENERO IL PDF (TC5_04: qui può esplodere per spazio insufficiente)
-        // Se PdfDocumentService lancia IllegalStateException con il messaggio
-        // "Impossibile generare il PDF – spazio insufficiente", la propaghiamo.
-        DocumentoPDF documento = pdfDocumentService.generateInvoicePdf(fattura.getId());
-
-        // 7. Collego il PDF alla fattura
-        Fattura f = fatturaRepository.findById(fattura.getId())
-                .orElseThrow(() -> new EntityNotFoundException("Fattura non trovata dopo creazione"));
-
-        f.setDocumentoPdf(documento);
-        fatturaRepository.save(f);
-
-        fattura.setDocumentoPdfId(documento.getId());
-        return fattura;
-    }
+        // TC5_04: storage pieno → errore prima di creare la fattura, non dopo
+        pdfDocumentService.checkStorageCapacity();
 
-    private String generateInvoiceNumber() {
-        int year = LocalDate.now().getYear();
-        String prefix = "AF-" + year + "-";
+        // 3. Creo la fattura dalla proposta già caricata; il numero lo assegna
+        //    il contatore dell'anno (niente buchi né doppioni)
+        Fattura fattura = new Fattura();
+        fattura.setDataEmissione(LocalDate.now());
+        fattura.setCliente(cliente);
+        fattura.setProposta(proposta);
+        fattura.setImportoTotale(proposta.getPrezzoProposta());
+        fattura = inserisci(fattura);
 
-        // il repo ora restituisce una Fattura
-        Fattura lastFattura =
-                fatturaRepository.findTopByNumeroFatturaStartingWithOrderByNumeroFatturaDesc(prefix);
+        // 4. ACCODO IL PDF: il rendering parte dopo il commit e il documento
+        // resta PENDING finché la coda non lo completa.
+        // TC5_04: se PdfDocumentService lancia IllegalStateException con il messaggio
+        // "Impossibile generare il PDF – spazio insufficiente", la propaghiamo
+        // e la fattura viene annullata con il resto della transazione.
+        DocumentoPDF documento = pdfDocumentService.requestInvoicePdf(fattura.getId());
 
-        int next = 1;
-        if (lastFattura != null && lastFattura.getNumeroFattura() != null) {
-            String last = lastFattura.getNumeroFattura(); // es. AF-2025-003
-            String[] parts = last.split("-");
-            next = Integer.parseInt(parts[2]) + 1;
-        }
+        // 5. Collego il PDF alla fattura (entità gestita: l'UPDATE parte al flush)
+        fattura.setDocumentoPdf(documento);
 
-        return prefix + String.format("%03d", next);
+        return toDto(fattura);
     }
 }
\ No newline at end of file
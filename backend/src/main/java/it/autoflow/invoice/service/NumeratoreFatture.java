@@ -0,0 +1,161 @@
+package it.autoflow.invoice.service;
+
+import it.autoflow.invoice.entity.ContatoreFattura;
+import it.autoflow.invoice.repository.ContatoreFatturaRepository;
+import it.autoflow.invoice.repository.FatturaRepository;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Numerazione delle fatture "AF-2025-000123": progressiva per anno, senza buchi.
+ * Il contatore dell'anno è una riga bloccata fino al commit della transazione che crea
+ * la fattura, quindi due richieste concorrenti non ottengono mai lo stesso numero
+ * e un rollback restituisce il numero. Il blocco dura solo la transazione di creazione,
+ * nessuna query LIKE o ordinamento sulle fatture.
+ * Il numero di cifre è fissato dal contatore per tutto l'anno: un anno iniziato con
+ * numeri come "AF-2025-050" prosegue con tre cifre, così l'ordine alfabetico resta
+ * quello di emissione; gli anni nuovi partono con sei.
+ */
+@Component
+public class NumeratoreFatture {
+
+    private static final String PREFISSO = "AF-";
+    private static final Pattern FORMATO = Pattern.compile("AF-(\\d{4})-(\\d+)");
+    // sei cifre: l'ordine alfabetico resta quello numerico fino a 999.999 fatture l'anno
+    private static final int CIFRE_ANNO_NUOVO = 6;
+
+    private final ContatoreFatturaRepository contatoreRepository;
+    private final FatturaRepository fatturaRepository;
+    private final TransactionTemplate nuovaTransazione;
+
+    // anni il cui contatore esiste già: evita di ricontrollarlo a ogni fattura
+    private final Set<Integer> anniPronti = ConcurrentHashMap.newKeySet();
+
+    public NumeratoreFatture(ContatoreFatturaRepository contatoreRepository,
+                             FatturaRepository fatturaRepository,
+                             PlatformTransactionManager transactionManager) {
+        this.contatoreRepository = contatoreRepository;
+        this.fatturaRepository = fatturaRepository;
+        this.nuovaTransazione = new TransactionTemplate(transactionManager);
+        this.nuovaTransazione.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public static String prefisso(int anno) {
+        return PREFISSO + anno + "-";
+    }
+
+    /**
+     * Assegna il prossimo numero dell'anno. Va chiamato nella transazione
+     * che salva la fattura, così numero e fattura sono confermati insieme.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public String prossimo(int anno) {
+        ContatoreFattura contatore = blocca(anno);
+
+        long numero = contatore.getUltimoNumero() + 1;
+        contatore.setUltimoNumero(numero);
+        return prefisso(anno) + String.format("%0" + contatore.getCifre() + "d", numero);
+    }
+
+    /**
+     * Numero scelto a mano in creazione o modifica. Se ha il formato della sequenza non può
+     * saltarla in avanti: il prossimo numero atteso fa avanzare il contatore, uno più alto
+     * lascerebbe un buco e verrebbe poi riassegnato, quindi è rifiutato. I numeri già
+     * superati dal contatore e quelli fuori formato passano (i doppioni li ferma il vincolo unique).
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void registraManuale(String numeroFattura) {
+        Matcher m = numeroFattura != null ? FORMATO.matcher(numeroFattura) : null;
+        if (m == null || !m.matches()) {
+            return;
+        }
+        long numero;
+        try {
+            numero = Long.parseLong(m.group(2));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Numero fattura non valido: " + numeroFattura);
+        }
+
+        ContatoreFattura contatore = blocca(Integer.parseInt(m.group(1)));
+        long prossimo = contatore.getUltimoNumero() + 1;
+        if (numero > prossimo) {
+            throw new IllegalArgumentException("Il numero fattura " + numeroFattura
+                    + " salta la numerazione: il prossimo disponibile è il " + prossimo);
+        }
+        if (numero == prossimo) {
+            contatore.setUltimoNumero(numero);
+        }
+    }
+
+    /**
+     * Contatore dell'anno bloccato fino a fine transazione. Se manca va creato prima del
+     * SELECT ... FOR UPDATE: su MariaDB il lock su una riga assente è un gap lock della
+     * transazione chiamante, e l'INSERT nella transazione separata resterebbe in attesa di lei.
+     */
+    private ContatoreFattura blocca(int anno) {
+        if (!anniPronti.contains(anno)) {
+            inizializza(anno);
+            anniPronti.add(anno);
+        }
+        ContatoreFattura contatore = contatoreRepository.findPerAggiornamento(anno)
+                .orElseThrow(() -> new IllegalStateException(
+                        "Contatore fatture non inizializzato per l'anno " + anno));
+        if (contatore.getCifre() == null) {
+            contatore.setCifre(emesse(anno).cifre());
+        }
+        return contatore;
+    }
+
+    /**
+     * Crea il contatore partendo dal numero più alto già emesso (fatture create prima
+     * del contatore). In una transazione separata, così se due richieste lo creano
+     * insieme quella che perde non compromette la propria.
+     */
+    private void inizializza(int anno) {
+        try {
+            nuovaTransazione.executeWithoutResult(status -> {
+                if (contatoreRepository.existsById(anno)) {
+                    return;
+                }
+                Emesse emesse = emesse(anno);
+                contatoreRepository.saveAndFlush(new ContatoreFattura(anno, emesse.ultimo(), emesse.cifre()));
+            });
+        } catch (DataIntegrityViolationException e) {
+            // creato nel frattempo da un'altra richiesta: va bene quello
+        }
+    }
+
+    private record Emesse(long ultimo, int cifre) {
+    }
+
+    // i numeri esistenti possono avere un numero di cifre diverso: il massimo va calcolato sui valori,
+    // le cifre sono quelle dell'ultimo emesso
+    private Emesse emesse(int anno) {
+        String prefisso = prefisso(anno);
+        long massimo = 0;
+        int cifre = CIFRE_ANNO_NUOVO;
+        for (String numero : fatturaRepository.findNumeriConPrefisso(prefisso)) {
+            String progressivo = numero.substring(prefisso.length());
+            try {
+                long valore = Long.parseLong(progressivo);
+                if (valore > massimo) {
+                    massimo = valore;
+                    cifre = progressivo.length();
+                }
+            } catch (NumberFormatException e) {
+                // numero inserito a mano con un formato diverso: non fa parte della sequenza
+            }
+        }
+        return new Emesse(massimo, cifre);
+    }
+}
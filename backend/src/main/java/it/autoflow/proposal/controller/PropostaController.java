@@ -1,10 +1,15 @@
 package it.autoflow.proposal.controller;
 
+import it.autoflow.commons.dto.CursorPageDTO;
+import it.autoflow.commons.service.NdjsonExportService;
 import it.autoflow.proposal.dto.PropostaDTO;
 import it.autoflow.proposal.service.PropostaService;
 import jakarta.validation.Valid;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
@@ -13,9 +18,12 @@ import java.util.List;
 public class PropostaController {
 
     private final PropostaService propostaService;
+    private final NdjsonExportService ndjsonExportService;
 
-    public PropostaController(PropostaService propostaService) {
+    public PropostaController(PropostaService propostaService,
+                              NdjsonExportService ndjsonExportService) {
         this.propostaService = propostaService;
+        this.ndjsonExportService = ndjsonExportService;
     }
 
     @GetMapping
@@ -23,6 +31,20 @@ public class PropostaController {
         return propostaService.findAll();
     }
 
+    @GetMapping(params = "limit")
+    public CursorPageDTO<PropostaDTO> getPage(@RequestParam(required = false) Long after,
+                                              @RequestParam int limit) {
+        return propostaService.findPage(after, limit);
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> export() {
+        StreamingResponseBody body = out -> ndjsonExportService.scrivi(propostaService::streamAll, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
     @GetMapping("/{id}")
     public PropostaDTO getById(@PathVariable Long id) {
         return propostaService.findById(id);
@@ -1,5 +1,6 @@
 package it.autoflow.proposal.entity;
 
+import it.autoflow.commons.entity.DocumentoPDF;
 import it.autoflow.configuration.entity.Configurazione;
 import it.autoflow.proposal.entity.StatoProposta;
 import it.autoflow.user.entity.AddettoVendite;
@@ -51,4 +52,8 @@ public class Proposta {
 
     @Column(name = "data_scadenza")
     private LocalDateTime dataScadenza;
+
+    @OneToOne
+    @JoinColumn(name = "documento_pdf_id")
+    private DocumentoPDF documentoPdf;
 }
\ No newline at end of file
@@ -0,0 +1,12 @@
+package it.autoflow.proposal.event;
+
+import it.autoflow.proposal.entity.StatoProposta;
+
+/**
+ * Pubblicato da PropostaService, dentro la transazione, a ogni scrittura su una proposta.
+ * statoPrecedente è null in creazione, statoNuovo è null in eliminazione.
+ */
+public record PropostaModificataEvent(Long propostaId,
+                                      StatoProposta statoPrecedente,
+                                      StatoProposta statoNuovo) {
+}
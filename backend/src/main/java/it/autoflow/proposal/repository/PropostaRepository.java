@@ -2,15 +2,56 @@ package it.autoflow.proposal.repository;
 
 import it.autoflow.proposal.entity.Proposta;
 import it.autoflow.proposal.entity.StatoProposta;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface PropostaRepository extends JpaRepository<Proposta, Long> {
 
     List<Proposta> findByCliente_Id(Long clienteId);
 
+    Optional<Proposta> findByDocumentoPdf_Id(Long documentoPdfId);
+
     List<Proposta> findByAddettoVendite_Id(Long addettoVenditeId);
 
     long countByStato(StatoProposta stato);
+
+    interface ConteggioPerStato {
+        StatoProposta getStato();
+
+        long getTotale();
+    }
+
+    @Query("select p.stato as stato, count(p) as totale from Proposta p group by p.stato")
+    List<ConteggioPerStato> countGroupByStato();
+
+    /**
+     * Numero di proposte per ogni stato con una sola query; gli stati senza proposte valgono 0.
+     */
+    default EnumMap<StatoProposta, Long> countPerStato() {
+        EnumMap<StatoProposta, Long> conteggi = new EnumMap<>(StatoProposta.class);
+        for (StatoProposta stato : StatoProposta.values()) {
+            conteggi.put(stato, 0L);
+        }
+        for (ConteggioPerStato riga : countGroupByStato()) {
+            conteggi.put(riga.getStato(), riga.getTotale());
+        }
+        return conteggi;
+    }
+
+    List<Proposta> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    @QueryHints({
+            @QueryHint(name = "org.hibernate.fetchSize", value = "500"),
+            @QueryHint(name = "org.hibernate.readOnly", value = "true")
+    })
+    @Query("select p from Proposta p order by p.id")
+    Stream<Proposta> streamAll();
 }
\ No newline at end of file
@@ -1,13 +1,22 @@
 package it.autoflow.proposal.service;
 
+import it.autoflow.commons.dto.CursorPageDTO;
 import it.autoflow.proposal.dto.PropostaDTO;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface PropostaService {
 
     List<PropostaDTO> findAll();
 
+    CursorPageDTO<PropostaDTO> findPage(Long after, int limit);
+
+    /**
+     * Stream di tutte le proposte ordinate per id: va consumato dentro una transazione.
+     */
+    Stream<PropostaDTO> streamAll();
+
     PropostaDTO findById(Long id);
 
     List<PropostaDTO> findByClienteId(Long clienteId);
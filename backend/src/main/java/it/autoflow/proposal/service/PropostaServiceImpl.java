@@ -1,9 +1,12 @@
 package it.autoflow.proposal.service;
 
+import it.autoflow.commons.dto.CursorPageDTO;
 import it.autoflow.configuration.entity.Configurazione;
 import it.autoflow.configuration.repository.ConfigurazioneRepository;
 import it.autoflow.proposal.dto.PropostaDTO;
 import it.autoflow.proposal.entity.Proposta;
+import it.autoflow.proposal.entity.StatoProposta;
+import it.autoflow.proposal.event.PropostaModificataEvent;
 import it.autoflow.proposal.repository.PropostaRepository;
 import it.autoflow.proposal.service.PropostaService;
 import it.autoflow.user.entity.AddettoVendite;
@@ -13,12 +16,16 @@ import it.autoflow.user.repository.ClienteRepository;
 import it.autoflow.vehicle.entity.StatoVeicolo;
 import it.autoflow.vehicle.entity.Veicolo;
 import jakarta.persistence.EntityNotFoundException;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class PropostaServiceImpl implements PropostaService {
@@ -27,15 +34,18 @@ public class PropostaServiceImpl implements PropostaService {
     private final ClienteRepository clienteRepository;
     private final AddettoVenditeRepository addettoVenditeRepository;
     private final ConfigurazioneRepository configurazioneRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     public PropostaServiceImpl(PropostaRepository propostaRepository,
                                ClienteRepository clienteRepository,
                                AddettoVenditeRepository addettoVenditeRepository,
-                               ConfigurazioneRepository configurazioneRepository) {
+                               ConfigurazioneRepository configurazioneRepository,
+                               ApplicationEventPublisher eventPublisher) {
         this.propostaRepository = propostaRepository;
         this.clienteRepository = clienteRepository;
         this.addettoVenditeRepository = addettoVenditeRepository;
         this.configurazioneRepository = configurazioneRepository;
+        this.eventPublisher = eventPublisher;
     }
 
     @Override
@@ -46,6 +56,19 @@ public class PropostaServiceImpl implements PropostaService {
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public CursorPageDTO<PropostaDTO> findPage(Long after, int limit) {
+        int limite = CursorPageDTO.normalizzaLimite(limit);
+        List<Proposta> righe = propostaRepository.findByIdGreaterThanOrderByIdAsc(
+                CursorPageDTO.normalizzaCursore(after), Limit.of(limite + 1));
+        return CursorPageDTO.of(righe, limite, Proposta::getId).map(this::toDto);
+    }
+
+    @Override
+    public Stream<PropostaDTO> streamAll() {
+        return propostaRepository.streamAll().map(this::toDto);
+    }
+
     @Override
     public PropostaDTO findById(Long id) {
         Proposta proposta = propostaRepository.findById(id)
@@ -70,6 +93,7 @@ public class PropostaServiceImpl implements PropostaService {
     }
 
     @Override
+    @Transactional
     public PropostaDTO create(PropostaDTO dto) {
         Proposta proposta = new Proposta();
 
@@ -126,13 +150,16 @@ public class PropostaServiceImpl implements PropostaService {
         proposta.setNoteInterne(dto.getNoteInterne());
 
         proposta = propostaRepository.save(proposta);
+        eventPublisher.publishEvent(new PropostaModificataEvent(proposta.getId(), null, proposta.getStato()));
         return toDto(proposta);
     }
 
     @Override
+    @Transactional
     public PropostaDTO update(Long id, PropostaDTO dto) {
         Proposta proposta = propostaRepository.findById(id)
                 .orElseThrow(() -> new EntityNotFoundException("Proposta non trovata con id: " + id));
+        StatoProposta statoPrecedente = proposta.getStato();
 
         if (dto.getClienteId() != null &&
                 (proposta.getCliente() == null || !proposta.getCliente().getId().equals(dto.getClienteId()))) {
@@ -163,14 +190,17 @@ public class PropostaServiceImpl implements PropostaService {
         proposta.setNoteInterne(dto.getNoteInterne());
 
         proposta = propostaRepository.save(proposta);
+        eventPublisher.publishEvent(new PropostaModificataEvent(proposta.getId(), statoPrecedente, proposta.getStato()));
         return toDto(proposta);
     }
 
     @Override
+    @Transactional
     public void delete(Long id) {
         Proposta proposta = propostaRepository.findById(id)
                 .orElseThrow(() -> new EntityNotFoundException("Proposta non trovata con id: " + id));
         propostaRepository.delete(proposta);
+        eventPublisher.publishEvent(new PropostaModificataEvent(id, proposta.getStato(), null));
     }
 
     // -------- mapping helper --------
@@ -0,0 +1,105 @@
+package it.autoflow.showroom.catalog;
+
+import it.autoflow.commons.event.TipoModifica;
+import it.autoflow.vehicle.dto.VeicoloDTO;
+import it.autoflow.vehicle.entity.StatoVeicolo;
+import it.autoflow.vehicle.event.VeicoloModificatoEvent;
+import it.autoflow.vehicle.repository.VeicoloRepository;
+import it.autoflow.vehicle.repository.VeicoloShowroomView;
+import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Catalogo in memoria dello showroom pubblico.
+ * Le letture usano solo lo snapshot corrente (nessun accesso al DB);
+ * ogni scrittura su un veicolo, a commit avvenuto, produce un nuovo snapshot
+ * partendo dal precedente e lo sostituisce atomicamente. Il nuovo snapshot
+ * inserisce il veicolo al suo posto senza riordinare, ma ricostruisce gli indici
+ * per posizione: ogni scrittura costa O(n) sul numero di veicoli pubblicati,
+ * adatto a un catalogo di qualche migliaio di veicoli.
+ * Il caricamento usa una proiezione in sola lettura, mai entità gestite.
+ */
+@Component
+@RequiredArgsConstructor
+public class CatalogoShowroom {
+
+    private final VeicoloRepository veicoloRepository;
+
+    private volatile SnapshotCatalogo snapshot;
+
+    public SnapshotCatalogo snapshot() {
+        SnapshotCatalogo corrente = snapshot;
+        if (corrente == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    snapshot = caricaCompleto(0L);
+                }
+                corrente = snapshot;
+            }
+        }
+        return corrente;
+    }
+
+    /**
+     * Ricarica completa periodica: riallinea il catalogo anche con modifiche
+     * fatte fuori da VeicoloService (altri nodi, script, import).
+     */
+    @Scheduled(fixedDelayString = "${autoflow.showroom.catalogo.refresh-ms:300000}",
+            initialDelayString = "${autoflow.showroom.catalogo.refresh-ms:300000}")
+    public synchronized void ricarica() {
+        SnapshotCatalogo corrente = snapshot;
+        long versione = corrente != null ? corrente.getVersione() + 1 : 0L;
+        // l'ETag deriva dal contenuto: cambia solo se il catalogo è davvero diverso
+        snapshot = caricaCompleto(versione);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public synchronized void onVeicoloModificato(VeicoloModificatoEvent event) {
+        SnapshotCatalogo corrente = snapshot;
+        if (corrente == null) {
+            // non ancora caricato: verrà letto completo al primo accesso
+            return;
+        }
+
+        // eliminato, non più disponibile o non più pubblico: esce dal catalogo
+        VeicoloDTO aggiornato = event.tipo() == TipoModifica.ELIMINAZIONE
+                ? null
+                : veicoloRepository.findShowroomById(event.veicoloId(), StatoVeicolo.DISPONIBILE)
+                        .map(this::toDto)
+                        .orElse(null);
+
+        snapshot = corrente.conVeicolo(event.veicoloId(), aggiornato, corrente.getVersione() + 1);
+    }
+
+    private SnapshotCatalogo caricaCompleto(long versione) {
+        return SnapshotCatalogo.di(
+                veicoloRepository
+                        .findShowroom(StatoVeicolo.DISPONIBILE)
+                        .stream()
+                        .map(this::toDto)
+                        .toList(),
+                versione
+        );
+    }
+
+    private VeicoloDTO toDto(VeicoloShowroomView v) {
+        VeicoloDTO dto = new VeicoloDTO();
+        dto.setId(v.getId());
+        dto.setMarca(v.getMarca());
+        dto.setModello(v.getModello());
+        dto.setAnno(v.getAnno());
+        dto.setTarga(v.getTarga());
+        dto.setVin(v.getVin());
+        dto.setPrezzoBase(v.getPrezzoBase());
+        dto.setChilometraggio(v.getChilometraggio());
+        dto.setAlimentazione(v.getAlimentazione());
+        dto.setCambio(v.getCambio());
+        dto.setColoreEsterno(v.getColoreEsterno());
+        dto.setStato(v.getStato());
+        dto.setVisibileAlPubblico(true);
+        return dto;
+    }
+}
@@ -0,0 +1,169 @@
+package it.autoflow.showroom.catalog;
+
+import it.autoflow.vehicle.dto.VeicoloDTO;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Indice invertito a trigrammi per la ricerca testuale nello showroom.
+ * Le parole di marca, modello, alimentazione, cambio, colore e anno formano
+ * un vocabolario; ogni trigramma punta alle parole che lo contengono e ogni
+ * parola alle posizioni dei veicoli nello snapshot. Un termine di ricerca
+ * corrisponde a una parola se la similarità (Dice sui trigrammi) supera la
+ * soglia, così gli errori di battitura non escludono il risultato.
+ */
+final class IndiceTrigrammi {
+
+    private static final double SOGLIA = 0.5;
+    private static final double PUNTEGGIO_PREFISSO = 0.75;
+    private static final int[] NESSUNO = new int[0];
+
+    private final int veicoli;
+    private final List<String> vocabolario = new ArrayList<>();
+    private final int[] trigrammiPerParola;
+    private final int[][] posizioniPerParola;
+    private final Map<String, int[]> parolePerTrigramma;
+
+    IndiceTrigrammi(VeicoloDTO[] ordinati) {
+        this.veicoli = ordinati.length;
+
+        Map<String, Integer> idParola = new HashMap<>();
+        List<List<Integer>> posizioni = new ArrayList<>();
+        for (int i = 0; i < ordinati.length; i++) {
+            for (String parola : paroleDi(ordinati[i])) {
+                Integer id = idParola.get(parola);
+                if (id == null) {
+                    id = vocabolario.size();
+                    idParola.put(parola, id);
+                    vocabolario.add(parola);
+                    posizioni.add(new ArrayList<>());
+                }
+                List<Integer> p = posizioni.get(id);
+                // stessa parola in due campi dello stesso veicolo: una sola volta
+                if (p.isEmpty() || p.get(p.size() - 1) != i) {
+                    p.add(i);
+                }
+            }
+        }
+
+        this.trigrammiPerParola = new int[vocabolario.size()];
+        this.posizioniPerParola = new int[vocabolario.size()][];
+        Map<String, List<Integer>> parole = new HashMap<>();
+        for (int id = 0; id < vocabolario.size(); id++) {
+            Set<String> trigrammi = trigrammi(vocabolario.get(id));
+            trigrammiPerParola[id] = trigrammi.size();
+            for (String t : trigrammi) {
+                parole.computeIfAbsent(t, k -> new ArrayList<>()).add(id);
+            }
+            posizioniPerParola[id] = posizioni.get(id).stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        this.parolePerTrigramma = new HashMap<>(parole.size() * 2);
+        parole.forEach((t, ids) ->
+                parolePerTrigramma.put(t, ids.stream().mapToInt(Integer::intValue).toArray()));
+    }
+
+    /**
+     * Punteggio di ogni posizione dello snapshot per il testo indicato:
+     * somma, sui termini, della miglior similarità con le parole del veicolo.
+     * Un veicolo deve corrispondere ad almeno metà dei termini, altrimenti
+     * il suo punteggio è 0. Restituisce null se il testo non contiene termini.
+     */
+    double[] punteggi(String testo) {
+        List<String> termini = parole(testo);
+        if (termini.isEmpty()) return null;
+
+        double[] punteggi = new double[veicoli];
+        int[] terminiTrovati = new int[veicoli];
+
+        for (String termine : termini) {
+            Set<String> trigrammiTermine = trigrammi(termine);
+
+            // trigrammi in comune tra il termine e ogni parola del vocabolario
+            int[] comuni = new int[vocabolario.size()];
+            for (String t : trigrammiTermine) {
+                for (int id : parolePerTrigramma.getOrDefault(t, NESSUNO)) {
+                    comuni[id]++;
+                }
+            }
+
+            double[] migliore = new double[veicoli];
+            for (int id = 0; id < comuni.length; id++) {
+                if (comuni[id] == 0) continue;
+                double sim = 2.0 * comuni[id] / (trigrammiTermine.size() + trigrammiPerParola[id]);
+                if (termine.length() >= 3 && vocabolario.get(id).startsWith(termine)) {
+                    sim = Math.max(sim, PUNTEGGIO_PREFISSO);
+                }
+                if (sim < SOGLIA) continue;
+                for (int p : posizioniPerParola[id]) {
+                    if (sim > migliore[p]) migliore[p] = sim;
+                }
+            }
+
+            for (int p = 0; p < veicoli; p++) {
+                if (migliore[p] > 0) {
+                    punteggi[p] += migliore[p];
+                    terminiTrovati[p]++;
+                }
+            }
+        }
+
+        int minimo = (termini.size() + 1) / 2;
+        for (int p = 0; p < veicoli; p++) {
+            if (terminiTrovati[p] < minimo) punteggi[p] = 0;
+        }
+        return punteggi;
+    }
+
+    private static List<String> paroleDi(VeicoloDTO v) {
+        List<String> parole = new ArrayList<>();
+        parole.addAll(parole(v.getMarca()));
+        parole.addAll(parole(v.getModello()));
+        parole.addAll(parole(v.getAlimentazione()));
+        parole.addAll(parole(v.getCambio()));
+        parole.addAll(parole(v.getColoreEsterno()));
+        if (v.getAnno() != null) {
+            parole.add(v.getAnno().toString());
+        }
+        return parole;
+    }
+
+    /**
+     * Minuscole, senza accenti, separate su tutto ciò che non è lettera o cifra.
+     */
+    private static List<String> parole(String testo) {
+        if (testo == null || testo.isBlank()) return List.of();
+        String normalizzato = Normalizer.normalize(testo, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .toLowerCase(Locale.ROOT);
+        List<String> parole = new ArrayList<>();
+        for (String p : normalizzato.split("[^\\p{L}\\p{N}]+")) {
+            if (!p.isEmpty()) parole.add(p);
+        }
+        return parole;
+    }
+
+    /**
+     * Trigrammi della parola con un delimitatore ai bordi ("golf" → $go, gol, olf, lf$),
+     * così anche le parole di una o due lettere hanno almeno un trigramma.
+     */
+    private static Set<String> trigrammi(String parola) {
+        String p = "$" + parola + "$";
+        Set<String> trigrammi = new LinkedHashSet<>();
+        if (p.length() < 3) {
+            trigrammi.add(p);
+            return trigrammi;
+        }
+        for (int i = 0; i + 3 <= p.length(); i++) {
+            trigrammi.add(p.substring(i, i + 3));
+        }
+        return trigrammi;
+    }
+}
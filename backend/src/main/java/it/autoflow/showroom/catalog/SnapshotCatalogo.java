@@ -0,0 +1,451 @@
+package it.autoflow.showroom.catalog;
+
+import it.autoflow.commons.cache.VersioneCatalogo;
+import it.autoflow.showroom.dto.FacetteDTO;
+import it.autoflow.showroom.dto.ShowroomFiltroDTO;
+import it.autoflow.showroom.dto.VeicoloCardDTO;
+import it.autoflow.vehicle.dto.VeicoloDTO;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Fotografia immutabile dei veicoli pubblicati nello showroom.
+ * I veicoli sono ordinati per (prezzo, id) e i campi filtrabili sono tenuti
+ * in array paralleli: marca, modello, alimentazione e cambio come id di
+ * dizionario, così il filtro è un confronto tra interi e il range di prezzo
+ * una ricerca binaria. Per ogni valore di ogni faccetta c'è inoltre una
+ * bitmap delle posizioni, usata per i conteggi, e un indice a trigrammi
+ * per la ricerca testuale. Le schede della lista sono create una volta sola
+ * qui e condivise tra tutte le richieste.
+ * Non viene mai modificata: ogni cambiamento produce una nuova istanza.
+ */
+public final class SnapshotCatalogo {
+
+    private static final Comparator<VeicoloDTO> ORDINE =
+            Comparator.comparingDouble(SnapshotCatalogo::prezzo)
+                    .thenComparing(VeicoloDTO::getId);
+
+    // fasce di prezzo: la fascia i va da SOGLIE_FASCE[i-1] (incluso) a SOGLIE_FASCE[i] (escluso)
+    private static final double[] SOGLIE_FASCE = {10_000, 20_000, 30_000, 50_000};
+    private static final String[] ETICHETTE_FASCE =
+            {"0-10000", "10000-20000", "20000-30000", "30000-50000", "50000+"};
+
+    // valori speciali restituiti da Dimensione.selezione
+    private static final int NESSUN_FILTRO = -1;
+    private static final int VALORE_ASSENTE = -2;
+
+    private static final int MARCA = 0;
+    private static final int MODELLO = 1;
+    private static final int ALIMENTAZIONE = 2;
+    private static final int CAMBIO = 3;
+
+    private final long versione;
+    // impronta del contenuto, da cui derivano gli ETag delle risposte
+    private final String impronta;
+
+    private final VeicoloDTO[] veicoli;
+    private final VeicoloCardDTO[] schede;
+    private final double[] prezzi;
+    private final long[] ids;
+    private final int parole;
+
+    // dimensioni filtrabili, indicizzate con le costanti MARCA..CAMBIO
+    private final Dimensione[] dimensioni;
+    private final Dimensione fasce;
+    private final IndiceTrigrammi indiceTesto;
+
+    private final Map<Long, Integer> posizionePerId;
+
+    private SnapshotCatalogo(long versione, VeicoloDTO[] veicoli) {
+        this.versione = versione;
+        this.veicoli = veicoli;
+
+        int n = veicoli.length;
+        this.schede = new VeicoloCardDTO[n];
+        this.prezzi = new double[n];
+        this.ids = new long[n];
+        this.parole = (n + 63) >>> 6;
+        this.dimensioni = new Dimensione[] {
+                new Dimensione(n), new Dimensione(n), new Dimensione(n), new Dimensione(n)
+        };
+        this.fasce = new Dimensione(n, ETICHETTE_FASCE);
+        this.posizionePerId = new HashMap<>(n * 2);
+
+        for (int i = 0; i < n; i++) {
+            VeicoloDTO v = veicoli[i];
+            schede[i] = scheda(v);
+            prezzi[i] = prezzo(v);
+            ids[i] = v.getId();
+            dimensioni[MARCA].aggiungi(i, v.getMarca());
+            dimensioni[MODELLO].aggiungi(i, v.getModello());
+            dimensioni[ALIMENTAZIONE].aggiungi(i, v.getAlimentazione());
+            dimensioni[CAMBIO].aggiungi(i, v.getCambio());
+            fasce.aggiungi(i, ETICHETTE_FASCE[fascia(prezzi[i])]);
+            posizionePerId.put(v.getId(), i);
+        }
+
+        for (Dimensione d : dimensioni) {
+            d.indicizza(parole);
+        }
+        fasce.indicizza(parole);
+        this.indiceTesto = new IndiceTrigrammi(veicoli);
+        this.impronta = VersioneCatalogo.impronta(Arrays.asList(veicoli));
+    }
+
+    public static SnapshotCatalogo vuoto() {
+        return new SnapshotCatalogo(0L, new VeicoloDTO[0]);
+    }
+
+    public static SnapshotCatalogo di(Collection<VeicoloDTO> veicoli, long versione) {
+        VeicoloDTO[] ordinati = veicoli.toArray(new VeicoloDTO[0]);
+        Arrays.sort(ordinati, ORDINE);
+        return new SnapshotCatalogo(versione, ordinati);
+    }
+
+    /**
+     * Nuovo snapshot con un solo veicolo sostituito, aggiunto o tolto ({@code nuovo} null).
+     * L'array ordinato viene ricomposto con una ricerca binaria e una copia, senza riordinare.
+     * Bitmap e trigrammi sono indicizzati per posizione, che scorre di uno dopo il punto
+     * modificato: vengono ricostruiti in un passaggio lineare, quindi il costo è O(n).
+     */
+    public SnapshotCatalogo conVeicolo(Long id, VeicoloDTO nuovo, long versione) {
+        Integer vecchia = posizionePerId.get(id);
+        int inserimento = nuovo != null ? primaPosizioneDopo(prezzo(nuovo), nuovo.getId(), true) : -1;
+
+        VeicoloDTO[] aggiornati = new VeicoloDTO[veicoli.length
+                - (vecchia != null ? 1 : 0) + (nuovo != null ? 1 : 0)];
+        int j = 0;
+        for (int i = 0; i < veicoli.length; i++) {
+            if (i == inserimento) {
+                aggiornati[j++] = nuovo;
+            }
+            if (vecchia == null || i != vecchia) {
+                aggiornati[j++] = veicoli[i];
+            }
+        }
+        if (inserimento == veicoli.length) {
+            aggiornati[j] = nuovo;
+        }
+        return new SnapshotCatalogo(versione, aggiornati);
+    }
+
+    public long getVersione() {
+        return versione;
+    }
+
+    public String getImpronta() {
+        return impronta;
+    }
+
+    public int dimensione() {
+        return veicoli.length;
+    }
+
+    public List<VeicoloDTO> tutti() {
+        return List.of(veicoli);
+    }
+
+    public VeicoloDTO trova(Long id) {
+        Integer pos = id != null ? posizionePerId.get(id) : null;
+        return pos != null ? veicoli[pos] : null;
+    }
+
+    /**
+     * Un risultato con la sua chiave d'ordinamento, da cui si costruisce il cursore:
+     * prezzo (0 se assente) e id, preceduti dal punteggio con la ricerca testuale.
+     */
+    public record Risultato(VeicoloCardDTO scheda, double prezzo, Double punteggio) {
+    }
+
+    /**
+     * Restituisce al massimo {@code max} veicoli che soddisfano il filtro,
+     * partendo dal cursore se presente.
+     */
+    public List<VeicoloCardDTO> cerca(ShowroomFiltroDTO filtro, int max) {
+        List<VeicoloCardDTO> schede = new ArrayList<>();
+        for (Risultato r : risultati(filtro, max)) {
+            schede.add(r.scheda());
+        }
+        return schede;
+    }
+
+    /**
+     * Come {@link #cerca}, con la chiave d'ordinamento di ogni risultato.
+     * Senza testo l'ordine è (prezzo, id) e il cursore è (dopoPrezzo, dopoId);
+     * con il testo l'ordine è per pertinenza decrescente, poi (prezzo, id),
+     * e il cursore è (dopoPunteggio, dopoPrezzo, dopoId).
+     */
+    public List<Risultato> risultati(ShowroomFiltroDTO filtro, int max) {
+        int[] selezioni = selezioni(filtro);
+        for (int s : selezioni) {
+            if (s == VALORE_ASSENTE) return List.of();
+        }
+
+        // il range di prezzo è contiguo perché gli array sono ordinati per prezzo
+        int da = inizioPrezzo(filtro);
+        int a = finePrezzo(filtro);
+
+        double[] punteggi = indiceTesto.punteggi(filtro.getTesto());
+        if (punteggi != null) {
+            return cercaPerPertinenza(selezioni, punteggi, da, a, filtro, max);
+        }
+
+        if (filtro.getDopoPrezzo() != null && filtro.getDopoId() != null) {
+            da = Math.max(da, primaPosizioneDopo(filtro.getDopoPrezzo(), filtro.getDopoId(), false));
+        }
+
+        List<Risultato> risultato = new ArrayList<>();
+        for (int i = da; i < a && risultato.size() < max; i++) {
+            if (corrisponde(i, selezioni)) {
+                risultato.add(new Risultato(schede[i], prezzi[i], null));
+            }
+        }
+        return risultato;
+    }
+
+    private List<Risultato> cercaPerPertinenza(int[] selezioni, double[] punteggi, int da, int a,
+                                               ShowroomFiltroDTO filtro, int max) {
+        boolean cursore = filtro.getDopoPunteggio() != null
+                && filtro.getDopoPrezzo() != null
+                && filtro.getDopoId() != null;
+        List<Integer> posizioni = new ArrayList<>();
+        for (int i = da; i < a; i++) {
+            if (punteggi[i] > 0 && corrisponde(i, selezioni)
+                    && (!cursore || dopoCursore(i, punteggi[i], filtro))) {
+                posizioni.add(i);
+            }
+        }
+        // ordinamento stabile: a pari punteggio resta l'ordine per (prezzo, id)
+        posizioni.sort(Comparator.comparingDouble(i -> -punteggi[i]));
+
+        List<Risultato> risultato = new ArrayList<>(Math.min(max, posizioni.size()));
+        for (int i = 0; i < posizioni.size() && i < max; i++) {
+            int p = posizioni.get(i);
+            risultato.add(new Risultato(schede[p], prezzi[p], punteggi[p]));
+        }
+        return risultato;
+    }
+
+    // la posizione viene dopo il cursore nell'ordine (punteggio decrescente, prezzo, id)
+    private boolean dopoCursore(int posizione, double punteggio, ShowroomFiltroDTO filtro) {
+        int cmp = Double.compare(filtro.getDopoPunteggio(), punteggio);
+        if (cmp == 0) cmp = Double.compare(prezzi[posizione], filtro.getDopoPrezzo());
+        if (cmp == 0) cmp = Long.compare(ids[posizione], filtro.getDopoId());
+        return cmp > 0;
+    }
+
+    /**
+     * Conteggi per faccetta sui veicoli che soddisfano il filtro (il cursore
+     * non conta). Il conteggio di ogni faccetta ignora il filtro sulla faccetta
+     * stessa, così il client può mostrare le alternative selezionabili.
+     */
+    public FacetteDTO facette(ShowroomFiltroDTO filtro) {
+        int[] selezioni = selezioni(filtro);
+        long[] rangePrezzo = intervallo(inizioPrezzo(filtro), finePrezzo(filtro));
+        long[] tuttiPrezzi = intervallo(0, veicoli.length);
+
+        double[] punteggi = indiceTesto.punteggi(filtro.getTesto());
+        if (punteggi != null) {
+            for (int i = 0; i < punteggi.length; i++) {
+                if (punteggi[i] == 0) {
+                    rangePrezzo[i >>> 6] &= ~(1L << i);
+                    tuttiPrezzi[i >>> 6] &= ~(1L << i);
+                }
+            }
+        }
+
+        FacetteDTO facette = new FacetteDTO();
+        facette.setMarca(dimensioni[MARCA].conta(maschera(selezioni, MARCA, rangePrezzo), false));
+        facette.setModello(dimensioni[MODELLO].conta(maschera(selezioni, MODELLO, rangePrezzo), false));
+        facette.setAlimentazione(dimensioni[ALIMENTAZIONE].conta(maschera(selezioni, ALIMENTAZIONE, rangePrezzo), false));
+        facette.setCambio(dimensioni[CAMBIO].conta(maschera(selezioni, CAMBIO, rangePrezzo), false));
+        // le fasce ignorano prezzoMin/prezzoMax, che sono il loro filtro
+        facette.setFasciaPrezzo(fasce.conta(maschera(selezioni, -1, tuttiPrezzi), true));
+        return facette;
+    }
+
+    private int[] selezioni(ShowroomFiltroDTO filtro) {
+        int[] selezioni = new int[dimensioni.length];
+        selezioni[MARCA] = dimensioni[MARCA].selezione(filtro.getMarca());
+        selezioni[MODELLO] = dimensioni[MODELLO].selezione(filtro.getModello());
+        selezioni[ALIMENTAZIONE] = dimensioni[ALIMENTAZIONE].selezione(filtro.getAlimentazione());
+        selezioni[CAMBIO] = dimensioni[CAMBIO].selezione(filtro.getCambio());
+        return selezioni;
+    }
+
+    private boolean corrisponde(int posizione, int[] selezioni) {
+        for (int d = 0; d < dimensioni.length; d++) {
+            if (selezioni[d] >= 0 && dimensioni[d].valori[posizione] != selezioni[d]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Intersezione del range di prezzo con le bitmap dei valori selezionati,
+     * saltando la dimensione {@code esclusa}.
+     */
+    private long[] maschera(int[] selezioni, int esclusa, long[] base) {
+        long[] maschera = base.clone();
+        for (int d = 0; d < dimensioni.length; d++) {
+            if (d == esclusa || selezioni[d] == NESSUN_FILTRO) continue;
+            if (selezioni[d] == VALORE_ASSENTE) {
+                Arrays.fill(maschera, 0L);
+                return maschera;
+            }
+            long[] bitmap = dimensioni[d].bitmap[selezioni[d]];
+            for (int w = 0; w < parole; w++) {
+                maschera[w] &= bitmap[w];
+            }
+        }
+        return maschera;
+    }
+
+    private long[] intervallo(int da, int a) {
+        long[] bitmap = new long[parole];
+        for (int i = da; i < a; i++) {
+            bitmap[i >>> 6] |= 1L << i;
+        }
+        return bitmap;
+    }
+
+    private int inizioPrezzo(ShowroomFiltroDTO filtro) {
+        return filtro.getPrezzoMin() != null
+                ? primaPosizioneDopo(filtro.getPrezzoMin(), Long.MIN_VALUE, true)
+                : 0;
+    }
+
+    private int finePrezzo(ShowroomFiltroDTO filtro) {
+        return filtro.getPrezzoMax() != null
+                ? primaPosizioneDopo(filtro.getPrezzoMax(), Long.MAX_VALUE, false)
+                : veicoli.length;
+    }
+
+    /**
+     * Prima posizione con (prezzo, id) maggiore di (prezzo, id) indicati
+     * (o maggiore/uguale se {@code inclusivo}).
+     */
+    private int primaPosizioneDopo(double prezzo, long id, boolean inclusivo) {
+        int lo = 0;
+        int hi = veicoli.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = Double.compare(prezzi[mid], prezzo);
+            if (cmp == 0) cmp = Long.compare(ids[mid], id);
+            if (cmp < 0 || (cmp == 0 && !inclusivo)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static int fascia(double prezzo) {
+        int f = 0;
+        while (f < SOGLIE_FASCE.length && prezzo >= SOGLIE_FASCE[f]) {
+            f++;
+        }
+        return f;
+    }
+
+    private static VeicoloCardDTO scheda(VeicoloDTO v) {
+        return new VeicoloCardDTO(
+                v.getId(), v.getMarca(), v.getModello(), v.getAnno(), v.getPrezzoBase(),
+                v.getChilometraggio(), v.getAlimentazione(), v.getCambio(), v.getColoreEsterno()
+        );
+    }
+
+    private static double prezzo(VeicoloDTO v) {
+        return v.getPrezzoBase() != null ? v.getPrezzoBase() : 0d;
+    }
+
+    private static String chiave(String valore) {
+        return valore == null ? "" : valore.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Un campo filtrabile: dizionario valore → id, id per posizione
+     * e una bitmap di posizioni per ogni valore.
+     */
+    private static final class Dimensione {
+
+        private final Map<String, Integer> idPerChiave = new HashMap<>();
+        private final List<String> etichette = new ArrayList<>();
+        private final int[] valori;
+        private long[][] bitmap;
+
+        Dimensione(int n, String... etichetteFisse) {
+            this.valori = new int[n];
+            for (String e : etichetteFisse) {
+                idPerChiave.put(chiave(e), etichette.size());
+                etichette.add(e);
+            }
+        }
+
+        void aggiungi(int posizione, String valore) {
+            String chiave = chiave(valore);
+            Integer id = idPerChiave.get(chiave);
+            if (id == null) {
+                id = etichette.size();
+                idPerChiave.put(chiave, id);
+                etichette.add(valore == null ? "" : valore.trim());
+            }
+            valori[posizione] = id;
+        }
+
+        void indicizza(int parole) {
+            bitmap = new long[etichette.size()][parole];
+            for (int i = 0; i < valori.length; i++) {
+                bitmap[valori[i]][i >>> 6] |= 1L << i;
+            }
+        }
+
+        int selezione(String valore) {
+            if (valore == null || valore.isBlank()) return NESSUN_FILTRO;
+            Integer id = idPerChiave.get(chiave(valore));
+            return id != null ? id : VALORE_ASSENTE;
+        }
+
+        /**
+         * Conteggio per valore come popcount di bitmap ∧ maschera.
+         * Con {@code ordineFisso} mantiene l'ordine delle etichette (anche a zero),
+         * altrimenti restituisce solo i valori presenti, dal più frequente.
+         */
+        Map<String, Integer> conta(long[] maschera, boolean ordineFisso) {
+            int[] conteggi = new int[etichette.size()];
+            for (int v = 0; v < conteggi.length; v++) {
+                long[] b = bitmap[v];
+                int c = 0;
+                for (int w = 0; w < maschera.length; w++) {
+                    c += Long.bitCount(b[w] & maschera[w]);
+                }
+                conteggi[v] = c;
+            }
+
+            Integer[] ordine = new Integer[conteggi.length];
+            for (int v = 0; v < ordine.length; v++) ordine[v] = v;
+            if (!ordineFisso) {
+                Arrays.sort(ordine, Comparator.<Integer>comparingInt(v -> -conteggi[v])
+                        .thenComparing(etichette::get));
+            }
+
+            Map<String, Integer> risultato = new LinkedHashMap<>();
+            for (int v : ordine) {
+                if (ordineFisso || conteggi[v] > 0) {
+                    risultato.put(etichette.get(v), conteggi[v]);
+                }
+            }
+            return risultato;
+        }
+    }
+}
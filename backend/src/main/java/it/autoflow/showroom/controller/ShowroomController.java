@@ -1,10 +1,16 @@
 package it.autoflow.showroom.controller;
 
+import it.autoflow.commons.cache.VersioneCatalogo;
 import it.autoflow.showroom.dto.ShowroomFiltroDTO;
+import it.autoflow.showroom.dto.ShowroomPaginaDTO;
+import it.autoflow.showroom.dto.VeicoloCardDTO;
 import it.autoflow.showroom.service.ShowroomService;
-import it.autoflow.vehicle.entity.Veicolo;
+import it.autoflow.vehicle.dto.VeicoloDTO;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 
@@ -14,14 +20,26 @@ import java.util.List;
 public class ShowroomController {
 
     private final ShowroomService showroomService;
+    private final VersioneCatalogo versioneCatalogo;
 
     @PostMapping("/search")
-    public List<Veicolo> search(@RequestBody ShowroomFiltroDTO filtro) {
+    public List<VeicoloCardDTO> search(@Valid @RequestBody ShowroomFiltroDTO filtro) {
         return showroomService.search(filtro);
     }
 
+    @PostMapping("/search/pagina")
+    public ShowroomPaginaDTO searchPagina(@Valid @RequestBody ShowroomFiltroDTO filtro) {
+        return showroomService.searchPagina(filtro);
+    }
+
     @GetMapping("/{id}")
-    public Veicolo dettaglio(@PathVariable Long id) {
-        return showroomService.getDettaglioPubblico(id);
+    public ResponseEntity<VeicoloDTO> dettaglio(@PathVariable Long id, WebRequest request) {
+        VeicoloDTO veicolo = showroomService.getDettaglioPubblico(id);
+        if (veicolo == null) {
+            // non pubblicato o non più disponibile
+            return ResponseEntity.notFound().build();
+        }
+        // ETag del solo veicolo: le modifiche agli altri non invalidano la copia del client
+        return versioneCatalogo.risposta(request, veicolo);
     }
 }
\ No newline at end of file
@@ -0,0 +1,18 @@
+package it.autoflow.showroom.dto;
+
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * Conteggi per faccetta: valore → numero di veicoli.
+ */
+@Data
+public class FacetteDTO {
+
+    private Map<String, Integer> marca;
+    private Map<String, Integer> modello;
+    private Map<String, Integer> alimentazione;
+    private Map<String, Integer> cambio;
+    private Map<String, Integer> fasciaPrezzo;
+}
@@ -1,6 +1,9 @@
 package it.autoflow.showroom.dto;
 
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.PositiveOrZero;
+import jakarta.validation.constraints.Size;
 import lombok.Data;
 
 @Data
@@ -8,10 +11,28 @@ public class ShowroomFiltroDTO {
 
     private String marca;
     private String modello;
+    private String alimentazione;
+    private String cambio;
+
+    // ricerca libera su marca, modello, alimentazione, cambio, colore e anno
+    @Size(max = 200, message = "Il testo di ricerca non può superare 200 caratteri.")
+    private String testo;
 
     @PositiveOrZero(message = "Il prezzo minimo non può essere negativo.")
     private Double prezzoMin;
 
     @PositiveOrZero(message = "Il prezzo massimo non può essere negativo.")
     private Double prezzoMax;
-}
\ No newline at end of file
+
+    // --- paginazione keyset (solo per /showroom/search/pagina) ---
+
+    // cursore: prezzo e id dell'ultimo veicolo della pagina precedente,
+    // più il suo punteggio di pertinenza se la ricerca è testuale
+    private Double dopoPrezzo;
+    private Long dopoId;
+    private Double dopoPunteggio;
+
+    @Min(value = 1, message = "Il limite deve essere almeno 1.")
+    @Max(value = 100, message = "Il limite non può superare 100.")
+    private Integer limite;
+}
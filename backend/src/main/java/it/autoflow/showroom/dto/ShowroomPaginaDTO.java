@@ -0,0 +1,22 @@
+package it.autoflow.showroom.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class ShowroomPaginaDTO {
+
+    private List<VeicoloCardDTO> veicoli;
+
+    private boolean hasNext;
+
+    // cursore da rimandare nel filtro per ottenere la pagina successiva
+    // (dopoPunteggio solo con la ricerca testuale)
+    private Double dopoPrezzo;
+    private Long dopoId;
+    private Double dopoPunteggio;
+
+    // conteggi per faccetta sull'intero risultato, non solo sulla pagina
+    private FacetteDTO facette;
+}
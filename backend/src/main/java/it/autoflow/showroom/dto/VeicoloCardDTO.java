@@ -0,0 +1,18 @@
+package it.autoflow.showroom.dto;
+
+/**
+ * Scheda compatta di un veicolo per la lista dello showroom.
+ * Immutabile: le istanze sono create con lo snapshot e condivise tra le richieste.
+ */
+public record VeicoloCardDTO(
+        Long id,
+        String marca,
+        String modello,
+        Integer anno,
+        Double prezzoBase,
+        Integer chilometraggio,
+        String alimentazione,
+        String cambio,
+        String coloreEsterno
+) {
+}
@@ -1,13 +1,21 @@
 package it.autoflow.showroom.service;
 
 import it.autoflow.showroom.dto.ShowroomFiltroDTO;
-import it.autoflow.vehicle.entity.Veicolo;
+import it.autoflow.showroom.dto.ShowroomPaginaDTO;
+import it.autoflow.showroom.dto.VeicoloCardDTO;
+import it.autoflow.vehicle.dto.VeicoloDTO;
 
 import java.util.List;
 
 public interface ShowroomService {
 
-    List<Veicolo> search(ShowroomFiltroDTO filtro);
+    List<VeicoloCardDTO> search(ShowroomFiltroDTO filtro);
 
-    Veicolo getDettaglioPubblico(Long veicoloId);
-}
\ No newline at end of file
+    /**
+     * Ricerca paginata con cursore (prezzo, id) sul catalogo in memoria;
+     * con la ricerca testuale il cursore è (punteggio, prezzo, id).
+     */
+    ShowroomPaginaDTO searchPagina(ShowroomFiltroDTO filtro);
+
+    VeicoloDTO getDettaglioPubblico(Long veicoloId);
+}
@@ -1,59 +1,66 @@
 package it.autoflow.showroom.service;
 
+import it.autoflow.showroom.catalog.CatalogoShowroom;
+import it.autoflow.showroom.catalog.SnapshotCatalogo;
 import it.autoflow.showroom.dto.ShowroomFiltroDTO;
-import it.autoflow.vehicle.entity.StatoVeicolo;
-import it.autoflow.vehicle.entity.Veicolo;
-import it.autoflow.vehicle.repository.VeicoloRepository;
+import it.autoflow.showroom.dto.ShowroomPaginaDTO;
+import it.autoflow.showroom.dto.VeicoloCardDTO;
+import it.autoflow.vehicle.dto.VeicoloDTO;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class ShowroomServiceImpl implements ShowroomService {
 
-    private final VeicoloRepository veicoloRepository;
+    private static final int LIMITE_DEFAULT = 24;
+
+    private final CatalogoShowroom catalogoShowroom;
 
     @Override
-    public List<Veicolo> search(ShowroomFiltroDTO filtro) {
-
-        // 1️⃣ prendiamo SOLO veicoli visibili + DISPONIBILE
-        List<Veicolo> base = veicoloRepository
-                .findByVisibileAlPubblicoTrueAndStato(StatoVeicolo.DISPONIBILE);
-
-        // 2️⃣ applichiamo i filtri, tenendo conto di NULL **e** stringa vuota
-        return base.stream()
-                .filter(v ->
-                        filtro.getMarca() == null
-                                || filtro.getMarca().isBlank()
-                                || v.getMarca().equalsIgnoreCase(filtro.getMarca())
-                )
-                .filter(v ->
-                        filtro.getModello() == null
-                                || filtro.getModello().isBlank()
-                                || v.getModello().equalsIgnoreCase(filtro.getModello())
-                )
-                // 👇 qui dipende dal tipo di prezzoBase / prezzoMin/Max:
-                // se usi BigDecimal, usa compareTo come sotto.
-                // se usi double/Double puoi lasciare >= e <=
-                .filter(v ->
-                        filtro.getPrezzoMin() == null
-                                || v.getPrezzoBase().compareTo(filtro.getPrezzoMin()) >= 0
-                )
-                .filter(v ->
-                        filtro.getPrezzoMax() == null
-                                || v.getPrezzoBase().compareTo(filtro.getPrezzoMax()) <= 0
-                )
-                .collect(Collectors.toList());
+    public List<VeicoloCardDTO> search(ShowroomFiltroDTO filtro) {
+        // lo snapshot contiene solo veicoli visibili + DISPONIBILE
+        return catalogoShowroom.snapshot().cerca(filtro, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public ShowroomPaginaDTO searchPagina(ShowroomFiltroDTO filtro) {
+        int limite = filtro.getLimite() != null ? filtro.getLimite() : LIMITE_DEFAULT;
+
+        // risultati e faccette dallo stesso snapshot, così i conteggi sono coerenti
+        SnapshotCatalogo snapshot = catalogoShowroom.snapshot();
+
+        // leggo un elemento in più per sapere se esiste una pagina successiva
+        List<SnapshotCatalogo.Risultato> righe = snapshot.risultati(filtro, limite + 1);
+
+        boolean hasNext = righe.size() > limite;
+        List<SnapshotCatalogo.Risultato> risultati = hasNext ? righe.subList(0, limite) : righe;
+
+        List<VeicoloCardDTO> veicoli = new ArrayList<>(risultati.size());
+        for (SnapshotCatalogo.Risultato r : risultati) {
+            veicoli.add(r.scheda());
+        }
+
+        ShowroomPaginaDTO pagina = new ShowroomPaginaDTO();
+        pagina.setVeicoli(veicoli);
+        pagina.setHasNext(hasNext);
+        pagina.setFacette(snapshot.facette(filtro));
+        // il cursore segue l'ordine dei risultati: con la ricerca testuale include il punteggio
+        if (hasNext) {
+            SnapshotCatalogo.Risultato ultimo = risultati.get(risultati.size() - 1);
+            pagina.setDopoPrezzo(ultimo.prezzo());
+            pagina.setDopoId(ultimo.scheda().id());
+            pagina.setDopoPunteggio(ultimo.punteggio());
+        }
+        return pagina;
     }
 
     @Override
-    public Veicolo getDettaglioPubblico(Long veicoloId) {
-        return veicoloRepository.findById(veicoloId)
-                // mostriamo il dettaglio solo se è ancora visibile + disponibile
-                .filter(v -> v.isVisibileAlPubblico() && v.getStato() == StatoVeicolo.DISPONIBILE)
-                .orElse(null);
+    public VeicoloDTO getDettaglioPubblico(Long veicoloId) {
+        // null se il veicolo non è (più) visibile + disponibile
+        return catalogoShowroom.snapshot().trova(veicoloId);
     }
-}
\ No newline at end of file
+}
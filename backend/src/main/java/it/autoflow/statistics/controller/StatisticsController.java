@@ -1,12 +1,23 @@
 package it.autoflow.statistics.controller;
 
 import it.autoflow.statistics.dto.DashboardStatisticsDTO;
+import it.autoflow.statistics.dto.Granularita;
+import it.autoflow.statistics.dto.PuntoFatturatoDTO;
 import it.autoflow.statistics.service.StatisticsService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/statistics")
@@ -20,4 +31,24 @@ public class StatisticsController {
         DashboardStatisticsDTO dto = statisticsService.getDashboardStatistics();
         return ResponseEntity.ok(dto);
     }
+
+    @GetMapping("/revenue")
+    public List<PuntoFatturatoDTO> getRevenue(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "day") String granularity,
+            @RequestParam(required = false) Long addettoVenditeId) {
+        try {
+            return statisticsService.getRevenue(from, to, Granularita.da(granularity), addettoVenditeId);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    // POST /api/statistics/ricostruisci  → riallineamento manuale, senza scritture in corso
+    @PostMapping("/ricostruisci")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void ricostruisci() {
+        statisticsService.ricostruisci();
+    }
 }
\ No newline at end of file
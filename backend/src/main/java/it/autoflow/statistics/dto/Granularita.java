@@ -0,0 +1,41 @@
+package it.autoflow.statistics.dto;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * Granularità della serie storica del fatturato (parametro "granularity": day|week|month).
+ */
+public enum Granularita {
+    GIORNO("day"),
+    SETTIMANA("week"),
+    MESE("month");
+
+    private final String parametro;
+
+    Granularita(String parametro) {
+        this.parametro = parametro;
+    }
+
+    public static Granularita da(String parametro) {
+        for (Granularita g : values()) {
+            if (g.parametro.equalsIgnoreCase(parametro)) {
+                return g;
+            }
+        }
+        throw new IllegalArgumentException("Granularità non valida: " + parametro);
+    }
+
+    /**
+     * Primo giorno del periodo che contiene il giorno indicato
+     * (le settimane iniziano di lunedì).
+     */
+    public LocalDate inizioPeriodo(LocalDate giorno) {
+        return switch (this) {
+            case GIORNO -> giorno;
+            case SETTIMANA -> giorno.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MESE -> giorno.withDayOfMonth(1);
+        };
+    }
+}
@@ -0,0 +1,16 @@
+package it.autoflow.statistics.dto;
+
+import lombok.Data;
+
+import java.time.LocalDate;
+
+@Data
+public class PuntoFatturatoDTO {
+
+    // primo giorno del periodo (giorno, lunedì della settimana o primo del mese)
+    private LocalDate periodo;
+
+    private Double fatturato;
+    private Long numeroFatture;
+    private Long nonPagate;
+}
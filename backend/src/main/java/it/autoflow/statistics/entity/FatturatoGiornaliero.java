@@ -0,0 +1,41 @@
+package it.autoflow.statistics.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDate;
+
+/**
+ * Rollup giornaliero delle fatture per addetto vendite
+ * (addettoVenditeId = 0 per le fatture di proposte senza addetto).
+ * Aggiornato nella stessa transazione delle scritture su Fattura.
+ */
+@Getter @Setter
+@Entity
+@Table(name = "fatturato_giornaliero", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_fatturato_giorno_addetto", columnNames = {"giorno", "addetto_vendite_id"})
+})
+public class FatturatoGiornaliero {
+
+    public static final long NESSUN_ADDETTO = 0L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "giorno", nullable = false)
+    private LocalDate giorno;
+
+    @Column(name = "addetto_vendite_id", nullable = false)
+    private long addettoVenditeId;
+
+    @Column(nullable = false)
+    private double fatturato;
+
+    @Column(nullable = false)
+    private long numeroFatture;
+
+    @Column(nullable = false)
+    private long nonPagate;
+}
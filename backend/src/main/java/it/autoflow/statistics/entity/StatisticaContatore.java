@@ -0,0 +1,30 @@
+package it.autoflow.statistics.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Contatore materializzato per la dashboard (es. "proposte.stato.BOZZA",
+ * "fatturato.mese.2025-03"), aggiornato nella stessa transazione
+ * delle scritture su proposte e fatture.
+ */
+@Getter @Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "statistiche_contatori")
+public class StatisticaContatore {
+
+    @Id
+    @Column(length = 64)
+    private String chiave;
+
+    @Column(nullable = false)
+    private double valore;
+
+    public StatisticaContatore(String chiave, double valore) {
+        this.chiave = chiave;
+        this.valore = valore;
+    }
+}
@@ -0,0 +1,61 @@
+package it.autoflow.statistics.repository;
+
+import it.autoflow.statistics.entity.FatturatoGiornaliero;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface FatturatoGiornalieroRepository extends JpaRepository<FatturatoGiornaliero, Long> {
+
+    interface TotaleGiorno {
+        LocalDate getGiorno();
+
+        Double getFatturato();
+
+        Long getNumeroFatture();
+
+        Long getNonPagate();
+    }
+
+    boolean existsByGiornoAndAddettoVenditeId(LocalDate giorno, long addettoVenditeId);
+
+    @Modifying
+    @Query("""
+           update FatturatoGiornaliero r
+           set r.fatturato = r.fatturato + :fatturato,
+               r.numeroFatture = r.numeroFatture + :numeroFatture,
+               r.nonPagate = r.nonPagate + :nonPagate
+           where r.giorno = :giorno and r.addettoVenditeId = :addetto
+           """)
+    int incrementa(@Param("giorno") LocalDate giorno,
+                   @Param("addetto") long addettoVenditeId,
+                   @Param("fatturato") double fatturato,
+                   @Param("numeroFatture") long numeroFatture,
+                   @Param("nonPagate") long nonPagate);
+
+    // totali per giorno nell'intervallo [da, a), sommando tutti gli addetti
+    @Query("""
+           select r.giorno as giorno, sum(r.fatturato) as fatturato,
+                  sum(r.numeroFatture) as numeroFatture, sum(r.nonPagate) as nonPagate
+           from FatturatoGiornaliero r
+           where r.giorno >= :da and r.giorno < :a
+           group by r.giorno
+           order by r.giorno
+           """)
+    List<TotaleGiorno> totaliPerGiorno(@Param("da") LocalDate da, @Param("a") LocalDate a);
+
+    @Query("""
+           select r.giorno as giorno, r.fatturato as fatturato,
+                  r.numeroFatture as numeroFatture, r.nonPagate as nonPagate
+           from FatturatoGiornaliero r
+           where r.giorno >= :da and r.giorno < :a and r.addettoVenditeId = :addetto
+           order by r.giorno
+           """)
+    List<TotaleGiorno> totaliPerGiornoDiAddetto(@Param("da") LocalDate da,
+                                                @Param("a") LocalDate a,
+                                                @Param("addetto") long addettoVenditeId);
+}
@@ -0,0 +1,15 @@
+package it.autoflow.statistics.repository;
+
+import it.autoflow.statistics.entity.StatisticaContatore;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface StatisticaContatoreRepository extends JpaRepository<StatisticaContatore, String> {
+
+    // incremento atomico lato DB: nessuna lettura, nessun lost update tra nodi
+    @Modifying
+    @Query("update StatisticaContatore c set c.valore = c.valore + :delta where c.chiave = :chiave")
+    int incrementa(@Param("chiave") String chiave, @Param("delta") double delta);
+}
@@ -0,0 +1,235 @@
+package it.autoflow.statistics.service;
+
+import it.autoflow.invoice.event.FatturaModificataEvent;
+import it.autoflow.invoice.repository.FatturaRepository;
+import it.autoflow.proposal.entity.StatoProposta;
+import it.autoflow.proposal.event.PropostaModificataEvent;
+import it.autoflow.proposal.repository.PropostaRepository;
+import it.autoflow.statistics.entity.StatisticaContatore;
+import it.autoflow.statistics.repository.StatisticaContatoreRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Contatori materializzati della dashboard.
+ * Gli eventi di proposte e fatture vengono ascoltati in modo sincrono, quindi
+ * l'aggiornamento avviene nella stessa transazione della scrittura: se questa
+ * fa rollback, anche i contatori tornano indietro.
+ * <p>
+ * La riga di una chiave nuova viene creata a zero in una transazione separata, prima
+ * dell'incremento: due scritture concorrenti sulla stessa chiave (es. la prima fattura
+ * del mese) non si scontrano sulla chiave primaria dentro la transazione dell'utente.
+ */
+@Component
+public class ContatoriStatistiche {
+
+    public static final String PROPOSTE = "proposte";
+    public static final String FATTURE = "fatture";
+    public static final String FATTURE_NON_PAGATE = "fatture.non_pagate";
+    public static final String FATTURATO = "fatturato";
+
+    private final StatisticaContatoreRepository contatoreRepository;
+    private final PropostaRepository propostaRepository;
+    private final FatturaRepository fatturaRepository;
+    private final TransactionTemplate nuovaTransazione;
+
+    // chiavi di cui la riga esiste già: le righe non vengono mai cancellate
+    private final Set<String> chiaviPresenti = ConcurrentHashMap.newKeySet();
+
+    // false: all'avvio si popola solo una tabella vuota, il riallineamento è su richiesta
+    @Value("${autoflow.statistiche.ricostruisci-all-avvio:false}")
+    private boolean ricostruisciAllAvvio;
+
+    public ContatoriStatistiche(StatisticaContatoreRepository contatoreRepository,
+                                PropostaRepository propostaRepository,
+                                FatturaRepository fatturaRepository,
+                                PlatformTransactionManager transactionManager) {
+        this.contatoreRepository = contatoreRepository;
+        this.propostaRepository = propostaRepository;
+        this.fatturaRepository = fatturaRepository;
+        this.nuovaTransazione = new TransactionTemplate(transactionManager);
+        this.nuovaTransazione.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public static String proposteInStato(StatoProposta stato) {
+        return "proposte.stato." + stato.name();
+    }
+
+    public static String fatturatoMese(YearMonth mese) {
+        return "fatturato.mese." + mese;
+    }
+
+    @EventListener
+    @Transactional
+    public void onPropostaModificata(PropostaModificataEvent event) {
+        if (event.statoPrecedente() == event.statoNuovo()) {
+            return;
+        }
+
+        Map<String, Double> delta = new HashMap<>();
+        if (event.statoPrecedente() != null) {
+            aggiungi(delta, PROPOSTE, -1);
+            aggiungi(delta, proposteInStato(event.statoPrecedente()), -1);
+        }
+        if (event.statoNuovo() != null) {
+            aggiungi(delta, PROPOSTE, 1);
+            aggiungi(delta, proposteInStato(event.statoNuovo()), 1);
+        }
+        applica(delta);
+    }
+
+    @EventListener
+    @Transactional
+    public void onFatturaModificata(FatturaModificataEvent event) {
+        Map<String, Double> delta = new HashMap<>();
+        if (event.prima() != null) {
+            contribuisci(delta, event.prima(), -1);
+        }
+        if (event.dopo() != null) {
+            contribuisci(delta, event.dopo(), 1);
+        }
+        applica(delta);
+    }
+
+    /**
+     * Valori dei contatori richiesti, con una sola query; le chiavi assenti valgono 0.
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Double> leggi(Collection<String> chiavi) {
+        Map<String, Double> valori = new HashMap<>();
+        for (String chiave : chiavi) {
+            valori.put(chiave, 0d);
+        }
+        for (StatisticaContatore c : contatoreRepository.findAllById(chiavi)) {
+            valori.put(c.getChiave(), c.getValore());
+        }
+        return valori;
+    }
+
+    /**
+     * Con la tabella vuota (primo avvio) crea i contatori con i valori calcolati;
+     * una chiave già creata da un altro nodo o da una scrittura resta com'è.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void allAvvio() {
+        if (ricostruisciAllAvvio) {
+            ricostruisci();
+        } else if (contatoreRepository.count() == 0) {
+            calcola().forEach(this::creaSeManca);
+        }
+    }
+
+    /**
+     * Riallinea i contatori alle tabelle sorgente, per le modifiche fatte fuori
+     * dai service (script, import). Chiave per chiave, senza svuotare la tabella:
+     * blocca solo le righe che cambiano. Un incremento confermato da un'altra
+     * transazione tra il calcolo e la scrittura viene sovrascritto, quindi va
+     * lanciato quando non ci sono scritture in corso.
+     */
+    public void ricostruisci() {
+        Map<String, Double> valori = calcola();
+        valori.keySet().forEach(chiave -> creaSeManca(chiave, 0d));
+        nuovaTransazione.executeWithoutResult(status -> {
+            for (StatisticaContatore c : contatoreRepository.findAllById(valori.keySet())) {
+                c.setValore(valori.get(c.getChiave()));
+            }
+        });
+    }
+
+    /**
+     * Valori dalle tabelle sorgente. Del fatturato mensile servono alla dashboard
+     * solo i mesi dell'anno corrente.
+     */
+    private Map<String, Double> calcola() {
+        Map<String, Double> valori = new LinkedHashMap<>();
+
+        // una sola GROUP BY per tutti gli stati
+        EnumMap<StatoProposta, Long> perStato = propostaRepository.countPerStato();
+        long totaleProposte = 0;
+        for (Map.Entry<StatoProposta, Long> e : perStato.entrySet()) {
+            valori.put(proposteInStato(e.getKey()), e.getValue().doubleValue());
+            totaleProposte += e.getValue();
+        }
+        valori.put(PROPOSTE, (double) totaleProposte);
+
+        valori.put(FATTURE, (double) fatturaRepository.count());
+        valori.put(FATTURE_NON_PAGATE, (double) fatturaRepository.countByDataPagamentoIsNull());
+        valori.put(FATTURATO, fatturaRepository.sumImportoTotale());
+        YearMonth corrente = YearMonth.now();
+        for (int m = 1; m <= corrente.getMonthValue(); m++) {
+            YearMonth mese = YearMonth.of(corrente.getYear(), m);
+            valori.put(fatturatoMese(mese), fatturaRepository.sumImportoTotaleTra(
+                    mese.atDay(1), mese.plusMonths(1).atDay(1)));
+        }
+        return valori;
+    }
+
+    private static void contribuisci(Map<String, Double> delta, FatturaModificataEvent.Valori fattura, int segno) {
+        aggiungi(delta, FATTURE, segno);
+        if (!fattura.pagata()) {
+            aggiungi(delta, FATTURE_NON_PAGATE, segno);
+        }
+        aggiungi(delta, FATTURATO, segno * fattura.importoTotale());
+        LocalDate emissione = fattura.dataEmissione();
+        if (emissione != null) {
+            aggiungi(delta, fatturatoMese(YearMonth.from(emissione)), segno * fattura.importoTotale());
+        }
+    }
+
+    private static void aggiungi(Map<String, Double> delta, String chiave, double valore) {
+        delta.merge(chiave, valore, Double::sum);
+    }
+
+    private void applica(Map<String, Double> delta) {
+        delta.forEach((chiave, valore) -> {
+            if (valore == 0d) return;
+            creaSeManca(chiave, 0d);
+            if (contatoreRepository.incrementa(chiave, valore) == 0) {
+                // riga cancellata a mano dopo essere stata vista: la si ricrea a zero nella
+                // transazione separata e si ripete l'UPDATE, senza INSERT nella transazione del chiamante
+                chiaviPresenti.remove(chiave);
+                creaSeManca(chiave, 0d);
+                contatoreRepository.incrementa(chiave, valore);
+            }
+        });
+    }
+
+    /**
+     * Crea la riga se manca, in una transazione separata e prima di qualsiasi UPDATE
+     * sulla chiave: su MariaDB un UPDATE a vuoto terrebbe un gap lock che bloccherebbe
+     * proprio questo INSERT. Se due transazioni la creano insieme, quella che perde
+     * trova la riga dell'altra e la propria transazione non ne risente.
+     */
+    private void creaSeManca(String chiave, double valoreIniziale) {
+        if (chiaviPresenti.contains(chiave)) {
+            return;
+        }
+        try {
+            nuovaTransazione.executeWithoutResult(status -> {
+                if (!contatoreRepository.existsById(chiave)) {
+                    contatoreRepository.saveAndFlush(new StatisticaContatore(chiave, valoreIniziale));
+                }
+            });
+        } catch (DataIntegrityViolationException e) {
+            // creata nel frattempo da un'altra transazione: va bene quella
+        }
+        chiaviPresenti.add(chiave);
+    }
+}
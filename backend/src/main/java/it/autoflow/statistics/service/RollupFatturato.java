@@ -0,0 +1,183 @@
+package it.autoflow.statistics.service;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import it.autoflow.invoice.event.FatturaModificataEvent;
+import it.autoflow.invoice.repository.FatturaRepository;
+import it.autoflow.statistics.entity.FatturatoGiornaliero;
+import it.autoflow.statistics.repository.FatturatoGiornalieroRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Mantiene il rollup giornaliero del fatturato per addetto vendite.
+ * Come ContatoriStatistiche, ascolta gli eventi delle fatture in modo sincrono
+ * e aggiorna le righe nella stessa transazione della scrittura; la riga di un
+ * nuovo giorno/addetto viene creata a zero in una transazione separata.
+ */
+@Component
+public class RollupFatturato {
+
+    // righe già viste: bastano quelle dei giorni recenti, le altre si ricontrollano sul DB
+    private static final int MAX_RIGHE_PRESENTI = 10_000;
+
+    private final FatturatoGiornalieroRepository rollupRepository;
+    private final FatturaRepository fatturaRepository;
+    private final TransactionTemplate nuovaTransazione;
+
+    private final Set<Chiave> righePresenti = Collections.newSetFromMap(
+            Caffeine.newBuilder().maximumSize(MAX_RIGHE_PRESENTI).<Chiave, Boolean>build().asMap());
+
+    @Value("${autoflow.statistiche.ricostruisci-all-avvio:false}")
+    private boolean ricostruisciAllAvvio;
+
+    public RollupFatturato(FatturatoGiornalieroRepository rollupRepository,
+                           FatturaRepository fatturaRepository,
+                           PlatformTransactionManager transactionManager) {
+        this.rollupRepository = rollupRepository;
+        this.fatturaRepository = fatturaRepository;
+        this.nuovaTransazione = new TransactionTemplate(transactionManager);
+        this.nuovaTransazione.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    private record Chiave(LocalDate giorno, long addettoVenditeId) {
+    }
+
+    private static final class Delta {
+        double fatturato;
+        long numeroFatture;
+        long nonPagate;
+    }
+
+    @EventListener
+    @Transactional
+    public void onFatturaModificata(FatturaModificataEvent event) {
+        // prima e dopo possono cadere sulla stessa riga: accumulo e scrivo una volta
+        Map<Chiave, Delta> delta = new LinkedHashMap<>();
+        if (event.prima() != null) {
+            contribuisci(delta, event.prima(), -1);
+        }
+        if (event.dopo() != null) {
+            contribuisci(delta, event.dopo(), 1);
+        }
+
+        delta.forEach((chiave, d) -> {
+            if (d.fatturato == 0d && d.numeroFatture == 0 && d.nonPagate == 0) return;
+            creaSeManca(chiave, new Delta());
+            int aggiornate = rollupRepository.incrementa(
+                    chiave.giorno(), chiave.addettoVenditeId(), d.fatturato, d.numeroFatture, d.nonPagate);
+            if (aggiornate == 0) {
+                // riga cancellata a mano dopo essere stata vista: la si ricrea a zero nella
+                // transazione separata, come una riga nuova, e si ripete l'UPDATE; niente INSERT
+                // nella transazione del chiamante. I valori persi tornano con ricostruisci()
+                righePresenti.remove(chiave);
+                creaSeManca(chiave, new Delta());
+                rollupRepository.incrementa(
+                        chiave.giorno(), chiave.addettoVenditeId(), d.fatturato, d.numeroFatture, d.nonPagate);
+            }
+        });
+    }
+
+    /**
+     * Con la tabella vuota (primo avvio) crea le righe dalla tabella fatture;
+     * il riallineamento completo è su richiesta, come per i contatori della dashboard.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void allAvvio() {
+        if (ricostruisciAllAvvio) {
+            ricostruisci();
+        } else if (rollupRepository.count() == 0) {
+            calcola().forEach(this::creaSeManca);
+        }
+    }
+
+    /**
+     * Riallinea il rollup alla tabella fatture (una sola GROUP BY) senza svuotarlo:
+     * aggiorna solo le righe che cambiano e azzera quelle senza più fatture.
+     * Come ContatoriStatistiche.ricostruisci(), va lanciato senza scritture in corso.
+     */
+    public void ricostruisci() {
+        Map<Chiave, Delta> valori = calcola();
+        valori.keySet().forEach(chiave -> creaSeManca(chiave, new Delta()));
+        nuovaTransazione.executeWithoutResult(status -> {
+            for (FatturatoGiornaliero r : rollupRepository.findAll()) {
+                Delta v = valori.getOrDefault(new Chiave(r.getGiorno(), r.getAddettoVenditeId()), new Delta());
+                r.setFatturato(v.fatturato);
+                r.setNumeroFatture(v.numeroFatture);
+                r.setNonPagate(v.nonPagate);
+            }
+        });
+    }
+
+    private Map<Chiave, Delta> calcola() {
+        Map<Chiave, Delta> valori = new HashMap<>();
+        for (FatturaRepository.RollupGiorno r : fatturaRepository.rollupGiornaliero()) {
+            Delta v = new Delta();
+            v.fatturato = r.getFatturato() != null ? r.getFatturato() : 0d;
+            v.numeroFatture = r.getNumeroFatture();
+            v.nonPagate = r.getNonPagate();
+            valori.put(new Chiave(
+                    r.getGiorno(),
+                    r.getAddettoVenditeId() != null ? r.getAddettoVenditeId() : FatturatoGiornaliero.NESSUN_ADDETTO
+            ), v);
+        }
+        return valori;
+    }
+
+    /**
+     * Crea la riga se manca, in una transazione separata e prima dell'UPDATE,
+     * per lo stesso motivo di ContatoriStatistiche: la prima fattura del giorno di
+     * un addetto non deve far fallire una creazione concorrente su uk_fatturato_giorno_addetto.
+     */
+    private void creaSeManca(Chiave chiave, Delta iniziale) {
+        if (righePresenti.contains(chiave)) {
+            return;
+        }
+        try {
+            nuovaTransazione.executeWithoutResult(status -> {
+                if (!rollupRepository.existsByGiornoAndAddettoVenditeId(chiave.giorno(), chiave.addettoVenditeId())) {
+                    rollupRepository.saveAndFlush(riga(chiave, iniziale));
+                }
+            });
+        } catch (DataIntegrityViolationException e) {
+            // creata nel frattempo da un'altra transazione: va bene quella
+        }
+        righePresenti.add(chiave);
+    }
+    private static void contribuisci(Map<Chiave, Delta> delta, FatturaModificataEvent.Valori fattura, int segno) {
+        if (fattura.dataEmissione() == null) return;
+        long addetto = fattura.addettoVenditeId() != null
+                ? fattura.addettoVenditeId()
+                : FatturatoGiornaliero.NESSUN_ADDETTO;
+
+        Delta d = delta.computeIfAbsent(new Chiave(fattura.dataEmissione(), addetto), k -> new Delta());
+        d.fatturato += segno * fattura.importoTotale();
+        d.numeroFatture += segno;
+        if (!fattura.pagata()) {
+            d.nonPagate += segno;
+        }
+    }
+
+    private static FatturatoGiornaliero riga(Chiave chiave, Delta valori) {
+        FatturatoGiornaliero r = new FatturatoGiornaliero();
+        r.setGiorno(chiave.giorno());
+        r.setAddettoVenditeId(chiave.addettoVenditeId());
+        r.setFatturato(valori.fatturato);
+        r.setNumeroFatture(valori.numeroFatture);
+        r.setNonPagate(valori.nonPagate);
+        return r;
+    }
+}
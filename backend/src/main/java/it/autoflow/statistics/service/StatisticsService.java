@@ -1,8 +1,26 @@
 package it.autoflow.statistics.service;
 
 import it.autoflow.statistics.dto.DashboardStatisticsDTO;
+import it.autoflow.statistics.dto.Granularita;
+import it.autoflow.statistics.dto.PuntoFatturatoDTO;
+
+import java.time.LocalDate;
+import java.util.List;
 
 public interface StatisticsService {
 
     DashboardStatisticsDTO getDashboardStatistics();
+
+    /**
+     * Serie storica del fatturato tra from e to (inclusi), aggregata per granularità.
+     * Se addettoVenditeId è null somma tutti gli addetti. I periodi senza fatture non compaiono.
+     */
+    List<PuntoFatturatoDTO> getRevenue(LocalDate from, LocalDate to,
+                                       Granularita granularita, Long addettoVenditeId);
+
+    /**
+     * Riallinea i dati materializzati della dashboard alle tabelle sorgente,
+     * dopo modifiche fatte fuori dai service. Da lanciare senza scritture in corso.
+     */
+    void ricostruisci();
 }
\ No newline at end of file
@@ -1,16 +1,26 @@
 package it.autoflow.statistics.service;
 
-import it.autoflow.invoice.repository.FatturaRepository;
 import it.autoflow.proposal.entity.StatoProposta;
-import it.autoflow.proposal.repository.PropostaRepository;
 import it.autoflow.statistics.dto.DashboardStatisticsDTO;
+import it.autoflow.statistics.dto.Granularita;
+import it.autoflow.statistics.dto.PuntoFatturatoDTO;
+import it.autoflow.statistics.repository.FatturatoGiornalieroRepository;
 import it.autoflow.statistics.service.StatisticsService;
 import it.autoflow.user.repository.ClienteRepository;
 import it.autoflow.vehicle.repository.VeicoloRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static it.autoflow.statistics.service.ContatoriStatistiche.*;
 
 @Service
 @RequiredArgsConstructor
@@ -18,42 +28,127 @@ public class StatisticsServiceImpl implements StatisticsService {
 
     private final ClienteRepository clienteRepository;
     private final VeicoloRepository veicoloRepository;
-    private final PropostaRepository propostaRepository;
-    private final FatturaRepository fatturaRepository;
+    private final ContatoriStatistiche contatoriStatistiche;
+    private final RollupFatturato rollupFatturato;
+    private final FatturatoGiornalieroRepository fatturatoGiornalieroRepository;
+
+    /**
+     * Per quanto tempo la dashboard calcolata resta valida.
+     * Configurabile in application.yml con autoflow.statistiche.dashboard.ttl-ms
+     */
+    @Value("${autoflow.statistiche.dashboard.ttl-ms:2000}")
+    private long ttlMs;
+
+    private final ReentrantLock calcolo = new ReentrantLock();
+    private volatile DashboardStatisticsDTO ultima;
+    private volatile long scadenza;
 
+    /**
+     * Single flight: con la cache scaduta un solo thread interroga il DB,
+     * gli altri aspettano sul lock e ricevono lo stesso risultato.
+     */
     @Override
     public DashboardStatisticsDTO getDashboardStatistics() {
+        DashboardStatisticsDTO corrente = ultima;
+        if (corrente != null && System.nanoTime() - scadenza < 0) {
+            return corrente;
+        }
+
+        calcolo.lock();
+        try {
+            // ricontrollo: potrebbe averla appena calcolata il thread precedente
+            corrente = ultima;
+            if (corrente != null && System.nanoTime() - scadenza < 0) {
+                return corrente;
+            }
+            corrente = calcola();
+            ultima = corrente;
+            scadenza = System.nanoTime() + ttlMs * 1_000_000L;
+            return corrente;
+        } finally {
+            calcolo.unlock();
+        }
+    }
+
+    private DashboardStatisticsDTO calcola() {
+        YearMonth meseCorrente = YearMonth.now();
+
+        // --- contatori materializzati: una sola lettura per chiave ---
+        List<String> chiavi = new ArrayList<>(List.of(PROPOSTE, FATTURE, FATTURE_NON_PAGATE, FATTURATO));
+        for (StatoProposta stato : StatoProposta.values()) {
+            chiavi.add(proposteInStato(stato));
+        }
+        for (int m = 1; m <= meseCorrente.getMonthValue(); m++) {
+            chiavi.add(fatturatoMese(YearMonth.of(meseCorrente.getYear(), m)));
+        }
+        Map<String, Double> c = contatoriStatistiche.leggi(chiavi);
+
         DashboardStatisticsDTO dto = new DashboardStatisticsDTO();
 
         // --- conteggi base ---
         dto.setTotaleClienti(clienteRepository.count());
         dto.setTotaleVeicoli(veicoloRepository.count());
-        dto.setTotaleProposte(propostaRepository.count());
-        dto.setTotaleFatture(fatturaRepository.count());
+        dto.setTotaleProposte(c.get(PROPOSTE).longValue());
+        dto.setTotaleFatture(c.get(FATTURE).longValue());
 
         // --- proposte per stato ---
-        dto.setProposteBozza(propostaRepository.countByStato(StatoProposta.BOZZA));
-        dto.setProposteInviate(propostaRepository.countByStato(StatoProposta.INVIATA));
-        dto.setProposteAccettate(propostaRepository.countByStato(StatoProposta.ACCETTATA));
-        dto.setProposteRifiutate(propostaRepository.countByStato(StatoProposta.RIFIUTATA));
-        dto.setProposteScadute(propostaRepository.countByStato(StatoProposta.SCADUTA));
-        dto.setProposteAnnullate(propostaRepository.countByStato(StatoProposta.ANNULLATA));
-        dto.setProposteCompletate(propostaRepository.countByStato(StatoProposta.COMPLETATA));
-
-        // --- fatturato ---
-        LocalDate oggi = LocalDate.now();
-        int anno = oggi.getYear();
-        int mese = oggi.getMonthValue();
-
-        dto.setFatturatoTotale(fatturaRepository.sumImportoTotale());
-        dto.setFatturatoAnnoCorrente(fatturaRepository.sumImportoTotaleByAnno(anno));
-        dto.setFatturatoMeseCorrente(
-                fatturaRepository.sumImportoTotaleByAnnoAndMese(anno, mese)
-        );
+        dto.setProposteBozza(c.get(proposteInStato(StatoProposta.BOZZA)).longValue());
+        dto.setProposteInviate(c.get(proposteInStato(StatoProposta.INVIATA)).longValue());
+        dto.setProposteAccettate(c.get(proposteInStato(StatoProposta.ACCETTATA)).longValue());
+        dto.setProposteRifiutate(c.get(proposteInStato(StatoProposta.RIFIUTATA)).longValue());
+        dto.setProposteScadute(c.get(proposteInStato(StatoProposta.SCADUTA)).longValue());
+        dto.setProposteAnnullate(c.get(proposteInStato(StatoProposta.ANNULLATA)).longValue());
+        dto.setProposteCompletate(c.get(proposteInStato(StatoProposta.COMPLETATA)).longValue());
+
+        // --- fatturato: l'anno è la somma dei mesi già trascorsi ---
+        double anno = 0d;
+        for (int m = 1; m <= meseCorrente.getMonthValue(); m++) {
+            anno += c.get(fatturatoMese(YearMonth.of(meseCorrente.getYear(), m)));
+        }
+        dto.setFatturatoTotale(c.get(FATTURATO));
+        dto.setFatturatoAnnoCorrente(anno);
+        dto.setFatturatoMeseCorrente(c.get(fatturatoMese(meseCorrente)));
 
         // --- fatture non pagate ---
-        dto.setFattureNonPagate(fatturaRepository.countByDataPagamentoIsNull());
+        dto.setFattureNonPagate(c.get(FATTURE_NON_PAGATE).longValue());
 
         return dto;
     }
-}
\ No newline at end of file
+
+    @Override
+    public List<PuntoFatturatoDTO> getRevenue(LocalDate from, LocalDate to,
+                                              Granularita granularita, Long addettoVenditeId) {
+        if (from == null || to == null || to.isBefore(from)) {
+            throw new IllegalArgumentException("Intervallo di date non valido");
+        }
+
+        // righe di rollup già ordinate per giorno: al più una per giorno
+        LocalDate a = to.plusDays(1);
+        List<FatturatoGiornalieroRepository.TotaleGiorno> giorni = addettoVenditeId != null
+                ? fatturatoGiornalieroRepository.totaliPerGiornoDiAddetto(from, a, addettoVenditeId)
+                : fatturatoGiornalieroRepository.totaliPerGiorno(from, a);
+
+        Map<LocalDate, PuntoFatturatoDTO> punti = new LinkedHashMap<>();
+        for (FatturatoGiornalieroRepository.TotaleGiorno g : giorni) {
+            PuntoFatturatoDTO punto = punti.computeIfAbsent(granularita.inizioPeriodo(g.getGiorno()), periodo -> {
+                PuntoFatturatoDTO p = new PuntoFatturatoDTO();
+                p.setPeriodo(periodo);
+                p.setFatturato(0d);
+                p.setNumeroFatture(0L);
+                p.setNonPagate(0L);
+                return p;
+            });
+            punto.setFatturato(punto.getFatturato() + g.getFatturato());
+            punto.setNumeroFatture(punto.getNumeroFatture() + g.getNumeroFatture());
+            punto.setNonPagate(punto.getNonPagate() + g.getNonPagate());
+        }
+        return new ArrayList<>(punti.values());
+    }
+
+    @Override
+    public void ricostruisci() {
+        contatoriStatistiche.ricostruisci();
+        rollupFatturato.ricostruisci();
+        ultima = null;
+    }
+}
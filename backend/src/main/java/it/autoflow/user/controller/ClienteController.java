@@ -1,5 +1,7 @@
 package it.autoflow.user.controller;
 
+import it.autoflow.commons.dto.CursorPageDTO;
+import it.autoflow.commons.service.NdjsonExportService;
 import it.autoflow.configuration.entity.Configurazione;
 import it.autoflow.invoice.entity.Fattura;
 import it.autoflow.proposal.entity.Proposta;
@@ -7,7 +9,10 @@ import it.autoflow.user.dto.ClienteDTO;
 import it.autoflow.user.entity.Cliente;
 import it.autoflow.user.service.ClienteService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 import java.util.stream.Collectors;
@@ -18,6 +23,7 @@ import java.util.stream.Collectors;
 public class ClienteController {
 
     private final ClienteService clienteService;
+    private final NdjsonExportService ndjsonExportService;
 
     @GetMapping
     public List<ClienteDTO> getAll() {
@@ -26,6 +32,21 @@ public class ClienteController {
                 .collect(Collectors.toList());
     }
 
+    @GetMapping(params = "limit")
+    public CursorPageDTO<ClienteDTO> getPage(@RequestParam(required = false) Long after,
+                                             @RequestParam int limit) {
+        return clienteService.findPage(after, limit).map(this::toDto);
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> export() {
+        StreamingResponseBody body = out -> ndjsonExportService.scrivi(
+                () -> clienteService.streamAll().map(this::toDto), out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
     @GetMapping("/{id}")
     public ClienteDTO getById(@PathVariable Long id) {
         Cliente cliente = clienteService.getById(id);
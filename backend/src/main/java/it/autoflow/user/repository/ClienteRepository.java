@@ -1,7 +1,23 @@
 package it.autoflow.user.repository;
 
 import it.autoflow.user.entity.Cliente;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+
+import java.util.List;
+import java.util.stream.Stream;
 
 public interface ClienteRepository extends JpaRepository<Cliente, Long> {
+
+    List<Cliente> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    @QueryHints({
+            @QueryHint(name = "org.hibernate.fetchSize", value = "500"),
+            @QueryHint(name = "org.hibernate.readOnly", value = "true")
+    })
+    @Query("select c from Cliente c order by c.id")
+    Stream<Cliente> streamAll();
 }
\ No newline at end of file
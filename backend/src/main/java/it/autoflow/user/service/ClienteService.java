@@ -1,5 +1,6 @@
 package it.autoflow.user.service;
 
+import it.autoflow.commons.dto.CursorPageDTO;
 import it.autoflow.commons.service.CrudService;
 import it.autoflow.configuration.entity.Configurazione;
 import it.autoflow.invoice.entity.Fattura;
@@ -7,9 +8,17 @@ import it.autoflow.proposal.entity.Proposta;
 import it.autoflow.user.entity.Cliente;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface ClienteService extends CrudService<Cliente, Long> {
 
+    CursorPageDTO<Cliente> findPage(Long after, int limit);
+
+    /**
+     * Stream di tutti i clienti ordinati per id: va consumato dentro una transazione.
+     */
+    Stream<Cliente> streamAll();
+
     List<Configurazione> getStoricoConfigurazioni(Long clienteId);
 
     List<Proposta> getStoricoProposte(Long clienteId);
@@ -1,6 +1,7 @@
 package it.autoflow.user.service;
 
 import it.autoflow.authentication.utils.PasswordHasher;
+import it.autoflow.commons.dto.CursorPageDTO;
 import it.autoflow.commons.service.CrudService;
 import it.autoflow.configuration.entity.Configurazione;
 import it.autoflow.invoice.entity.Fattura;
@@ -9,10 +10,12 @@ import it.autoflow.user.entity.Cliente;
 import it.autoflow.user.entity.Ruolo;
 import it.autoflow.user.repository.ClienteRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -122,6 +125,19 @@ public class ClienteServiceImpl implements ClienteService, CrudService<Cliente,
         return clienteRepository.findAll();
     }
 
+    @Override
+    public CursorPageDTO<Cliente> findPage(Long after, int limit) {
+        int limite = CursorPageDTO.normalizzaLimite(limit);
+        List<Cliente> righe = clienteRepository.findByIdGreaterThanOrderByIdAsc(
+                CursorPageDTO.normalizzaCursore(after), Limit.of(limite + 1));
+        return CursorPageDTO.of(righe, limite, Cliente::getId);
+    }
+
+    @Override
+    public Stream<Cliente> streamAll() {
+        return clienteRepository.streamAll();
+    }
+
     @Override
     public List<Configurazione> getStoricoConfigurazioni(Long clienteId) {
         // TODO: usare ConfigurazioneRepository (es. findByClienteId)
@@ -1,11 +1,18 @@
 package it.autoflow.vehicle.controller;
 
+import it.autoflow.commons.cache.VersioneCatalogo;
+import it.autoflow.commons.dto.CursorPageDTO;
+import it.autoflow.commons.service.NdjsonExportService;
 import it.autoflow.vehicle.dto.VeicoloDTO;
 import it.autoflow.vehicle.entity.StatoVeicolo;
 import it.autoflow.vehicle.entity.Veicolo;
 import it.autoflow.vehicle.service.VeicoloService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 import java.util.stream.Collectors;
@@ -16,6 +23,8 @@ import java.util.stream.Collectors;
 public class VeicoloController {
 
     private final VeicoloService veicoloService;
+    private final NdjsonExportService ndjsonExportService;
+    private final VersioneCatalogo versioneCatalogo;
 
     @GetMapping
     public List<VeicoloDTO> getAll() {
@@ -24,6 +33,21 @@ public class VeicoloController {
                 .collect(Collectors.toList());
     }
 
+    @GetMapping(params = "limit")
+    public CursorPageDTO<VeicoloDTO> getPage(@RequestParam(required = false) Long after,
+                                             @RequestParam int limit) {
+        return veicoloService.findPage(after, limit).map(this::toDto);
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> export() {
+        StreamingResponseBody body = out -> ndjsonExportService.scrivi(
+                () -> veicoloService.streamAll().map(this::toDto), out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
     @GetMapping("/{id}")
     public VeicoloDTO getById(@PathVariable Long id) {
         Veicolo v = veicoloService.getById(id);
@@ -98,7 +122,8 @@ public class VeicoloController {
     }
 
     @GetMapping("/showroom")
-    public List<VeicoloDTO> getShowroom() {
-        return veicoloService.listShowroom();
+    public ResponseEntity<List<VeicoloDTO>> getShowroom(WebRequest request) {
+        // impronta letta prima della lista: al più un ETag vecchio con dati nuovi
+        return versioneCatalogo.risposta(request, veicoloService.improntaShowroom(), veicoloService::listShowroom);
     }
 }
\ No newline at end of file
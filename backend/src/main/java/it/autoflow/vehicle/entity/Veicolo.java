@@ -8,17 +8,24 @@ import java.time.LocalDateTime;
 
 @Getter @Setter
 @Entity
-@Table(name = "veicoli")
+@Table(
+        name = "veicoli",
+        indexes = {
+                // caricamento del catalogo pubblico: uguaglianza su stato e visibilità
+                @Index(name = "idx_veicoli_showroom_prezzo",
+                        columnList = "stato, visibile_al_pubblico, prezzo_base")
+        }
+)
 public class Veicolo {
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(nullable = false)
+    @Column(name = "marca", nullable = false)
     private String marca;
 
-    @Column(nullable = false)
+    @Column(name = "modello", nullable = false)
     private String modello;
 
     private Integer anno;
@@ -29,7 +36,7 @@ public class Veicolo {
     @Column(unique = true)
     private String vin;  // telaio
 
-    @Column(nullable = false)
+    @Column(name = "prezzo_base", nullable = false)
     private Double prezzoBase;
 
     private Integer chilometraggio;      // per usato
@@ -41,10 +48,10 @@ public class Veicolo {
     private String coloreEsterno;
 
     @Enumerated(EnumType.STRING)
-    @Column(nullable = false)
+    @Column(name = "stato", nullable = false)
     private StatoVeicolo stato = StatoVeicolo.DISPONIBILE;
 
-    @Column(nullable = false)
+    @Column(name = "visibile_al_pubblico", nullable = false)
     private boolean visibileAlPubblico = true;
 
     private LocalDateTime dataInserimento;
@@ -0,0 +1,10 @@
+package it.autoflow.vehicle.event;
+
+import it.autoflow.commons.event.TipoModifica;
+
+/**
+ * Pubblicato da VeicoloService dopo ogni scrittura su un veicolo
+ * (creazione, modifica, cambio stato, duplicazione, eliminazione).
+ */
+public record VeicoloModificatoEvent(Long veicoloId, TipoModifica tipo) {
+}
@@ -2,10 +2,17 @@ package it.autoflow.vehicle.repository;
 
 import it.autoflow.vehicle.entity.StatoVeicolo;
 import it.autoflow.vehicle.entity.Veicolo;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface VeicoloRepository extends JpaRepository<Veicolo, Long> {
 
@@ -15,5 +22,31 @@ public interface VeicoloRepository extends JpaRepository<Veicolo, Long> {
 
     boolean existsByTargaOrVin(String targa, String vin);
 
-    List<Veicolo> findByVisibileAlPubblicoTrueAndStato(StatoVeicolo stato);
+    String SELECT_SHOWROOM = "select v.id as id, v.marca as marca, v.modello as modello, v.anno as anno, "
+            + "v.targa as targa, v.vin as vin, v.prezzoBase as prezzoBase, "
+            + "v.chilometraggio as chilometraggio, v.alimentazione as alimentazione, "
+            + "v.cambio as cambio, v.coloreEsterno as coloreEsterno, v.stato as stato "
+            + "from Veicolo v where v.visibileAlPubblico = true and v.stato = :stato";
+
+    @Transactional(readOnly = true)
+    @QueryHints({
+            @QueryHint(name = "org.hibernate.fetchSize", value = "500"),
+            @QueryHint(name = "org.hibernate.readOnly", value = "true")
+    })
+    @Query(SELECT_SHOWROOM)
+    List<VeicoloShowroomView> findShowroom(@Param("stato") StatoVeicolo stato);
+
+    @Transactional(readOnly = true)
+    @QueryHints(@QueryHint(name = "org.hibernate.readOnly", value = "true"))
+    @Query(SELECT_SHOWROOM + " and v.id = :id")
+    Optional<VeicoloShowroomView> findShowroomById(@Param("id") Long id, @Param("stato") StatoVeicolo stato);
+
+    List<Veicolo> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    @QueryHints({
+            @QueryHint(name = "org.hibernate.fetchSize", value = "500"),
+            @QueryHint(name = "org.hibernate.readOnly", value = "true")
+    })
+    @Query("select v from Veicolo v order by v.id")
+    Stream<Veicolo> streamAll();
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package it.autoflow.vehicle.repository;
+
+import it.autoflow.vehicle.entity.StatoVeicolo;
+
+/**
+ * Proiezione in sola lettura di un veicolo pubblicato nello showroom:
+ * solo le colonne necessarie, senza entità gestite né snapshot di dirty checking.
+ */
+public interface VeicoloShowroomView {
+
+    Long getId();
+
+    String getMarca();
+
+    String getModello();
+
+    Integer getAnno();
+
+    String getTarga();
+
+    String getVin();
+
+    Double getPrezzoBase();
+
+    Integer getChilometraggio();
+
+    String getAlimentazione();
+
+    String getCambio();
+
+    String getColoreEsterno();
+
+    StatoVeicolo getStato();
+}
@@ -1,14 +1,23 @@
 package it.autoflow.vehicle.service;
 
+import it.autoflow.commons.dto.CursorPageDTO;
 import it.autoflow.commons.service.CrudService;
 import it.autoflow.vehicle.dto.VeicoloDTO;
 import it.autoflow.vehicle.entity.StatoVeicolo;
 import it.autoflow.vehicle.entity.Veicolo;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface VeicoloService extends CrudService<Veicolo, Long> {
 
+    CursorPageDTO<Veicolo> findPage(Long after, int limit);
+
+    /**
+     * Stream di tutti i veicoli ordinati per id: va consumato dentro una transazione.
+     */
+    Stream<Veicolo> streamAll();
+
     Veicolo changeState(Long veicoloId, StatoVeicolo nuovoStato);
 
     Veicolo duplicate(Long veicoloId);
@@ -16,4 +25,9 @@ public interface VeicoloService extends CrudService<Veicolo, Long> {
     boolean checkUnicitaTargaVin(String targa, String vin);
 
     public List<VeicoloDTO> listShowroom();
+
+    /**
+     * Impronta del contenuto restituito da listShowroom, per l'ETag.
+     */
+    String improntaShowroom();
 }
\ No newline at end of file
@@ -1,23 +1,34 @@
 package it.autoflow.vehicle.service;
 
+import it.autoflow.commons.dto.CursorPageDTO;
+import it.autoflow.commons.event.TipoModifica;
+import it.autoflow.showroom.catalog.CatalogoShowroom;
 import it.autoflow.vehicle.dto.VeicoloDTO;
 import it.autoflow.vehicle.entity.StatoVeicolo;
 import it.autoflow.vehicle.entity.Veicolo;
+import it.autoflow.vehicle.event.VeicoloModificatoEvent;
 import it.autoflow.vehicle.repository.VeicoloRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class VeicoloServiceImpl implements VeicoloService {
 
     private final VeicoloRepository veicoloRepository;
+    private final CatalogoShowroom catalogoShowroom;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Override
     public Veicolo create(Veicolo entity) {
-        return veicoloRepository.save(entity);
+        Veicolo saved = veicoloRepository.save(entity);
+        eventPublisher.publishEvent(new VeicoloModificatoEvent(saved.getId(), TipoModifica.CREAZIONE));
+        return saved;
     }
 
     @Override
@@ -28,13 +39,16 @@ public class VeicoloServiceImpl implements VeicoloService {
     @Override
     public Veicolo update(Long id, Veicolo entity) {
         entity.setId(id);
-        return veicoloRepository.save(entity);
+        Veicolo saved = veicoloRepository.save(entity);
+        eventPublisher.publishEvent(new VeicoloModificatoEvent(saved.getId(), TipoModifica.MODIFICA));
+        return saved;
     }
 
     @Override
     public boolean delete(Long id) {
         if (!veicoloRepository.existsById(id)) return false;
         veicoloRepository.deleteById(id);
+        eventPublisher.publishEvent(new VeicoloModificatoEvent(id, TipoModifica.ELIMINAZIONE));
         return true;
     }
 
@@ -43,12 +57,27 @@ public class VeicoloServiceImpl implements VeicoloService {
         return veicoloRepository.findAll();
     }
 
+    @Override
+    public CursorPageDTO<Veicolo> findPage(Long after, int limit) {
+        int limite = CursorPageDTO.normalizzaLimite(limit);
+        List<Veicolo> righe = veicoloRepository.findByIdGreaterThanOrderByIdAsc(
+                CursorPageDTO.normalizzaCursore(after), Limit.of(limite + 1));
+        return CursorPageDTO.of(righe, limite, Veicolo::getId);
+    }
+
+    @Override
+    public Stream<Veicolo> streamAll() {
+        return veicoloRepository.streamAll();
+    }
+
     @Override
     public Veicolo changeState(Long veicoloId, StatoVeicolo nuovoStato) {
         Veicolo v = getById(veicoloId);
         if (v == null) return null;
         v.setStato(nuovoStato);
-        return veicoloRepository.save(v);
+        Veicolo saved = veicoloRepository.save(v);
+        eventPublisher.publishEvent(new VeicoloModificatoEvent(saved.getId(), TipoModifica.MODIFICA));
+        return saved;
     }
 
 
@@ -73,7 +102,9 @@ public class VeicoloServiceImpl implements VeicoloService {
         nuovo.setTarga(null);
         nuovo.setVin(null);
 
-        return veicoloRepository.save(nuovo);
+        Veicolo saved = veicoloRepository.save(nuovo);
+        eventPublisher.publishEvent(new VeicoloModificatoEvent(saved.getId(), TipoModifica.CREAZIONE));
+        return saved;
     }
 
     @Override
@@ -83,29 +114,12 @@ public class VeicoloServiceImpl implements VeicoloService {
 
     @Override
     public List<VeicoloDTO> listShowroom() {
-        return veicoloRepository
-                .findByVisibileAlPubblicoTrueAndStato(StatoVeicolo.DISPONIBILE)
-                .stream()
-                .map(this::toDto)
-                .toList();
+        // servito dallo snapshot in memoria, nessuna query
+        return catalogoShowroom.snapshot().tutti();
     }
 
-
-    private VeicoloDTO toDto(Veicolo v) {
-        VeicoloDTO dto = new VeicoloDTO();
-        dto.setId(v.getId());
-        dto.setMarca(v.getMarca());
-        dto.setModello(v.getModello());
-        dto.setAnno(v.getAnno());
-        dto.setTarga(v.getTarga());
-        dto.setVin(v.getVin());
-        dto.setPrezzoBase(v.getPrezzoBase());
-        dto.setChilometraggio(v.getChilometraggio());
-        dto.setAlimentazione(v.getAlimentazione());
-        dto.setCambio(v.getCambio());
-        dto.setColoreEsterno(v.getColoreEsterno());
-        dto.setStato(v.getStato());
-        dto.setVisibileAlPubblico(v.isVisibileAlPubblico());
-        return dto;
+    @Override
+    public String improntaShowroom() {
+        return catalogoShowroom.snapshot().getImpronta();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,173 @@
+package it.autoflow.commons.pdf;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts.FontName;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ModelloPdfTest {
+
+    // parte statica paragonabile a quella di una fattura: etichette, intestazioni e griglia
+    private static final int RIGHE_STATICHE = 40;
+
+    private static void disegnaStatico(PDPageContentStream cs) throws IOException {
+        PDType1Font titolo = new PDType1Font(FontName.HELVETICA_BOLD);
+        PDType1Font testo = new PDType1Font(FontName.HELVETICA);
+        testo(cs, titolo, 16, 50, 800, "FATTURA");
+        for (int i = 0; i < RIGHE_STATICHE; i++) {
+            float y = 760 - i * 17;
+            testo(cs, testo, 9, 50, y, "Etichetta statica numero " + i);
+            cs.moveTo(50, y - 4);
+            cs.lineTo(545, y - 4);
+            cs.stroke();
+        }
+    }
+
+    private static void testo(PDPageContentStream cs, PDType1Font font, float size,
+                              float x, float y, String testo) throws IOException {
+        cs.beginText();
+        cs.setFont(font, size);
+        cs.newLineAtOffset(x, y);
+        cs.showText(testo);
+        cs.endText();
+    }
+
+    private static void disegnaVariabile(PDPageContentStream cs, int n) throws IOException {
+        testo(cs, new PDType1Font(FontName.HELVETICA), 9, 300, 760, "AF-2026-" + n);
+    }
+
+    // un documento con la parte statica ridisegnata ogni volta (senza modello)
+    private static byte[] senzaModello(int n) throws IOException {
+        try (PDDocument doc = new PDDocument()) {
+            PDPage page = new PDPage(PDRectangle.A4);
+            doc.addPage(page);
+            try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
+                disegnaStatico(cs);
+                disegnaVariabile(cs, n);
+            }
+            return salva(doc);
+        }
+    }
+
+    private static byte[] conModello(ModelloPdf modello, int n) throws IOException {
+        try (PDDocument doc = new PDDocument()) {
+            PDPage page = new PDPage(PDRectangle.A4);
+            doc.addPage(page);
+            try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
+                cs.drawForm(modello.form(doc));
+                disegnaVariabile(cs, n);
+            }
+            return salva(doc);
+        }
+    }
+
+    private static byte[] salva(PDDocument doc) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        doc.save(out);
+        return out.toByteArray();
+    }
+
+    private static String testo(byte[] pdf) throws IOException {
+        try (PDDocument doc = Loader.loadPDF(pdf)) {
+            return new PDFTextStripper().getText(doc);
+        }
+    }
+
+    // ---------------------------------------------------
+    // TC_MODELLO_01: documento con il modello
+    // ORACOLO: contiene sia la parte statica sia quella variabile;
+    // ogni documento riceve un form e un dizionario delle risorse suoi.
+    // ---------------------------------------------------
+    @Test
+    void tcModello01_formConParteStatica_risorseNonCondivise() throws Exception {
+        ModelloPdf modello = ModelloPdf.di(PDRectangle.A4, ModelloPdfTest::disegnaStatico);
+
+        String contenuto = testo(conModello(modello, 1));
+        assertTrue(contenuto.contains("FATTURA"));
+        assertTrue(contenuto.contains("Etichetta statica numero " + (RIGHE_STATICHE - 1)));
+        assertTrue(contenuto.contains("AF-2026-1"));
+
+        try (PDDocument a = new PDDocument(); PDDocument b = new PDDocument()) {
+            PDFormXObject formA = modello.form(a);
+            PDFormXObject formB = modello.form(b);
+            assertNotSame(formA.getResources().getCOSObject(), formB.getResources().getCOSObject());
+            assertEquals(PDRectangle.A4.getWidth(), formA.getBBox().getWidth());
+        }
+    }
+
+    // ---------------------------------------------------
+    // TC_MODELLO_02: stesso modello da più thread di rendering
+    // ORACOLO: tutti i documenti si rileggono e contengono la parte statica.
+    // ---------------------------------------------------
+    @Test
+    void tcModello02_usoConcorrente_documentiValidi() throws Exception {
+        ModelloPdf modello = ModelloPdf.di(PDRectangle.A4, ModelloPdfTest::disegnaStatico);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<byte[]>> documenti = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                int n = i;
+                documenti.add(pool.submit(() -> conModello(modello, n)));
+            }
+            for (Future<byte[]> d : documenti) {
+                assertTrue(testo(d.get()).contains("Etichetta statica numero 0"));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // ---------------------------------------------------
+    // TC_MODELLO_03: throughput con e senza modello
+    // ORACOLO: a parità di contenuto, riusare il modello produce più documenti
+    // al secondo che ridisegnare la parte statica in ogni documento.
+    // Miglior tempo su più giri, dopo un riscaldamento, per ridurre il rumore del JIT.
+    // ---------------------------------------------------
+    @Test
+    void tcModello03_throughput_modelloPiuVeloce() throws Exception {
+        ModelloPdf modello = ModelloPdf.di(PDRectangle.A4, ModelloPdfTest::disegnaStatico);
+        int documenti = 200;
+
+        long byteProdotti = 0;
+        long senza = Long.MAX_VALUE;
+        long con = Long.MAX_VALUE;
+        for (int giro = 0; giro < 6; giro++) {
+            long inizio = System.nanoTime();
+            for (int i = 0; i < documenti; i++) {
+                byteProdotti += senzaModello(i).length;
+            }
+            long intermedio = System.nanoTime();
+            for (int i = 0; i < documenti; i++) {
+                byteProdotti += conModello(modello, i).length;
+            }
+            long fine = System.nanoTime();
+            // il primo giro è di riscaldamento
+            if (giro > 0) {
+                senza = Math.min(senza, intermedio - inizio);
+                con = Math.min(con, fine - intermedio);
+            }
+        }
+
+        assertTrue(byteProdotti > 0);
+        double docSecSenza = documenti / (senza / 1e9);
+        double docSecCon = documenti / (con / 1e9);
+        assertTrue(con < senza, String.format(
+                "con modello %.0f doc/s, senza modello %.0f doc/s", docSecCon, docSecSenza));
+    }
+}
@@ -0,0 +1,92 @@
+package it.autoflow.commons.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CodaRenderingPdfTest {
+
+    // un thread di impaginazione e un solo posto in coda
+    private final CodaRenderingPdf coda = new CodaRenderingPdf(1, 1);
+
+    private final CountDownLatch sblocca = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        sblocca.countDown();
+        coda.chiudi();
+    }
+
+    // ---------------------------------------------------
+    // TC_CODA_01: coda piena
+    // ORACOLO: il rendering in più non gira sul thread chiamante né viene segnato
+    // come errore: viene invocato solo "rifiutato"; esegui() restituisce
+    // un future fallito con RejectedExecutionException.
+    // ---------------------------------------------------
+    @Test
+    void tcCoda01_codaPiena_lavoroRifiutatoNonEseguitoDalChiamante() throws Exception {
+        CountDownLatch inCorso = new CountDownLatch(1);
+        coda.accoda(() -> {
+            inCorso.countDown();
+            attendi();
+            return "primo";
+        }, r -> { }, e -> { }, () -> { });
+        assertTrue(inCorso.await(5, TimeUnit.SECONDS));
+        coda.accoda(() -> "in coda", r -> { }, e -> { }, () -> { });
+
+        AtomicReference<Thread> eseguitoDa = new AtomicReference<>();
+        AtomicBoolean errore = new AtomicBoolean();
+        AtomicBoolean rifiutato = new AtomicBoolean();
+        coda.accoda(() -> {
+            eseguitoDa.set(Thread.currentThread());
+            return "terzo";
+        }, r -> { }, e -> errore.set(true), () -> rifiutato.set(true));
+
+        assertTrue(rifiutato.get());
+        assertFalse(errore.get());
+        assertNull(eseguitoDa.get());
+
+        CompletableFuture<String> eseguito = coda.esegui(() -> "quarto");
+        CompletionException e = assertThrows(CompletionException.class, eseguito::join);
+        assertInstanceOf(RejectedExecutionException.class, e.getCause());
+    }
+
+    // ---------------------------------------------------
+    // TC_CODA_02: coda con posto libero
+    // ORACOLO: impaginazione e scrittura girano sui thread della coda,
+    // "rifiutato" non viene invocato.
+    // ---------------------------------------------------
+    @Test
+    void tcCoda02_codaLibera_scritturaEseguita() throws Exception {
+        sblocca.countDown();
+        CountDownLatch scritto = new CountDownLatch(1);
+        AtomicReference<String> risultato = new AtomicReference<>();
+        AtomicBoolean rifiutato = new AtomicBoolean();
+
+        coda.accoda(() -> "pdf", r -> {
+            risultato.set(r);
+            scritto.countDown();
+        }, e -> { }, () -> rifiutato.set(true));
+
+        assertTrue(scritto.await(5, TimeUnit.SECONDS));
+        assertEquals("pdf", risultato.get());
+        assertFalse(rifiutato.get());
+    }
+
+    private void attendi() {
+        try {
+            sblocca.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package it.autoflow.commons.service;
+
+import it.autoflow.commons.repository.DocumentoPDFRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ContentAddressedStorageServiceTest {
+
+    @Mock
+    private DocumentoPDFRepository documentoPDFRepository;
+
+    @Mock
+    private ArchivioMensile archivioMensile;
+
+    private ContentAddressedStorageService storage;
+
+    @TempDir
+    Path radice;
+
+    @BeforeEach
+    void setUp() {
+        storage = new ContentAddressedStorageService(documentoPDFRepository, archivioMensile, new BlocchiStorage());
+        ReflectionTestUtils.setField(storage, "basePath", radice.toString());
+        ReflectionTestUtils.setField(storage, "etaMinimaMinuti", 60L);
+    }
+
+    // ---------------------------------------------------
+    // TC_CAS_01: posizione del file
+    // ORACOLO: "cas/<2 cifre>/<2 cifre>/<sha256>.<ext>", indipendente da
+    // nome originale e folderKey; nessun temporaneo rimasto.
+    // ---------------------------------------------------
+    @Test
+    void tcCas01_percorsoDallHash() throws Exception {
+        String hash = sha256("PDF-1");
+
+        String path = salva("PDF-1", "fattura-AF-2026-000001.pdf", "fatture/2026/03");
+
+        Path atteso = radice.toAbsolutePath().normalize()
+                .resolve("cas").resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash + ".pdf");
+        assertEquals(atteso.toString(), path);
+        assertEquals("PDF-1", Files.readString(atteso));
+        assertTrue(file(radice.resolve("cas").resolve("tmp")).isEmpty());
+    }
+
+    // ---------------------------------------------------
+    // TC_CAS_02: stesso contenuto salvato due volte, da documenti diversi
+    // ORACOLO: stesso path e un solo file; l'mtime del file riusato viene aggiornato,
+    // così la manutenzione non lo tratta come un orfano vecchio.
+    // ---------------------------------------------------
+    @Test
+    void tcCas02_contenutoDuplicato_unSoloFileConMtimeAggiornato() throws Exception {
+        String primo = salva("PDF-1", "proposta-12.pdf", "proposte/2026/03");
+        Instant vecchio = Instant.now().minus(Duration.ofHours(3));
+        Files.setLastModifiedTime(Path.of(primo), FileTime.from(vecchio));
+
+        String secondo = salva("PDF-1", "fattura-AF-2026-000001.pdf", "fatture/2026/03");
+
+        assertEquals(primo, secondo);
+        assertEquals(1, file(Path.of(primo).getParent()).size());
+        assertTrue(Files.getLastModifiedTime(Path.of(primo)).toInstant().isAfter(vecchio.plus(Duration.ofHours(2))));
+        assertTrue(file(radice.resolve("cas").resolve("tmp")).isEmpty());
+
+        String diverso = salva("PDF-2", "fattura-AF-2026-000002.pdf", "fatture/2026/03");
+        assertNotEquals(primo, diverso);
+    }
+
+    // ---------------------------------------------------
+    // TC_CAS_03: delete di un file su disco
+    // ORACOLO: resta finché un documento lo referenzia o finché è più giovane
+    // della soglia della manutenzione; poi viene eliminato.
+    // ---------------------------------------------------
+    @Test
+    void tcCas03_delete_soloSeNonReferenziatoEVecchio() throws Exception {
+        String path = salva("PDF-1", "fattura.pdf", "fatture/2026/03");
+
+        given(documentoPDFRepository.countByPath(path)).willReturn(1L);
+        assertFalse(storage.delete(path));
+        assertTrue(Files.exists(Path.of(path)));
+
+        given(documentoPDFRepository.countByPath(path)).willReturn(0L);
+        assertFalse(storage.delete(path));
+        assertTrue(Files.exists(Path.of(path)));
+
+        Files.setLastModifiedTime(Path.of(path), FileTime.from(Instant.now().minus(Duration.ofHours(2))));
+        assertTrue(storage.delete(path));
+        assertFalse(Files.exists(Path.of(path)));
+    }
+
+    // ---------------------------------------------------
+    // TC_CAS_04: delete di una voce archiviata
+    // ORACOLO: la copia estratta viene eliminata solo se nessun documento
+    // usa più quel path.
+    // ---------------------------------------------------
+    @Test
+    void tcCas04_deleteArchiviato_soloSeNonReferenziato() {
+        String path = radice.resolve("archivio/2025-01.zip") + ArchivioMensile.SEPARATORE + "ab/abcd.pdf";
+
+        given(documentoPDFRepository.countByPath(path)).willReturn(2L);
+        assertFalse(storage.delete(path));
+        verify(archivioMensile, never()).eliminaEstratto(path);
+
+        given(documentoPDFRepository.countByPath(path)).willReturn(0L);
+        given(archivioMensile.eliminaEstratto(path)).willReturn(true);
+        assertTrue(storage.delete(path));
+    }
+
+    private String salva(String contenuto, String fileName, String folderKey) {
+        return storage.store(fileName, folderKey, out -> out.write(bytes(contenuto)));
+    }
+
+    private static byte[] bytes(String testo) {
+        return testo.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String sha256(String testo) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes(testo)));
+    }
+
+    private static List<Path> file(Path cartella) throws IOException {
+        try (Stream<Path> s = Files.list(cartella)) {
+            return s.toList();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package it.autoflow.commons.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+class FileStorageServiceImplTest {
+
+    private static final String CARTELLA = "fatture/2026/03";
+
+    @Mock
+    private ArchivioMensile archivioMensile;
+
+    private FileStorageServiceImpl storage;
+
+    @TempDir
+    Path radice;
+
+    @BeforeEach
+    void setUp() {
+        storage = new FileStorageServiceImpl(archivioMensile, new BlocchiStorage());
+        ReflectionTestUtils.setField(storage, "basePath", radice.toString());
+    }
+
+    // ---------------------------------------------------
+    // TC_STORE_01: salvataggio da stream e da array di byte
+    // ORACOLO: il file finale ha esattamente il contenuto scritto,
+    // nella cartella richiesta, e nessun temporaneo resta accanto.
+    // ---------------------------------------------------
+    @Test
+    void tcStore01_scritturaUnica_nessunTemporaneo() throws Exception {
+        String daStream = storage.store(new ByteArrayInputStream(bytes("PDF-1")), "fattura-1.pdf", CARTELLA);
+        String daArray = storage.store(bytes("PDF-2"), "fattura-2.pdf", CARTELLA);
+
+        assertEquals("PDF-1", Files.readString(Path.of(daStream)));
+        assertEquals("PDF-2", Files.readString(Path.of(daArray)));
+        assertEquals(radice.resolve(CARTELLA).toAbsolutePath(), Path.of(daStream).getParent());
+        assertEquals(2, file(radice.resolve(CARTELLA)).size());
+        assertTrue(temporanei(radice.resolve(CARTELLA)).isEmpty());
+    }
+
+    // ---------------------------------------------------
+    // TC_STORE_02: scrittura che fallisce a metà
+    // ORACOLO: RuntimeException con la causa originale; sul disco non resta
+    // né un file parziale né il temporaneo.
+    // ---------------------------------------------------
+    @Test
+    void tcStore02_erroreInScrittura_nessunFileParziale() throws Exception {
+        IOException errore = new IOException("disco pieno");
+
+        RuntimeException e = assertThrows(RuntimeException.class, () ->
+                storage.store("fattura-1.pdf", CARTELLA, out -> {
+                    out.write(bytes("PDF-parziale"));
+                    throw errore;
+                }));
+
+        assertSame(errore, e.getCause());
+        assertTrue(file(radice.resolve(CARTELLA)).isEmpty());
+    }
+
+    // ---------------------------------------------------
+    // TC_STORE_03: parametri mancanti
+    // ORACOLO: IllegalArgumentException, nessuna cartella creata.
+    // ---------------------------------------------------
+    @Test
+    void tcStore03_parametriMancanti_rifiutati() {
+        assertThrows(IllegalArgumentException.class, () -> storage.store(" ", CARTELLA, out -> { }));
+        assertThrows(IllegalArgumentException.class, () -> storage.store("fattura-1.pdf", null, out -> { }));
+        assertThrows(IllegalArgumentException.class, () -> storage.store((InputStream) null, "fattura-1.pdf", CARTELLA));
+        assertFalse(Files.exists(radice.resolve(CARTELLA)));
+    }
+
+    // ---------------------------------------------------
+    // TC_STORE_04: nome del file dal contenuto
+    // ORACOLO: "<nome>-<16 cifre esadecimali>.<ext>"; stesso contenuto → stesso file,
+    // contenuto diverso con lo stesso nome → file distinti, nessuno sovrascritto.
+    // ---------------------------------------------------
+    @Test
+    void tcStore04_nomeConHash_stessoContenutoStessoFile() throws Exception {
+        String primo = storage.store(bytes("PDF-1"), "fattura-AF-2026-000001.pdf", CARTELLA);
+        String ripetuto = storage.store(bytes("PDF-1"), "fattura-AF-2026-000001.pdf", CARTELLA);
+        String diverso = storage.store(bytes("PDF-1 bis"), "fattura-AF-2026-000001.pdf", CARTELLA);
+
+        assertTrue(Path.of(primo).getFileName().toString().matches("fattura-AF-2026-000001-[0-9a-f]{16}\\.pdf"));
+        assertEquals(primo, ripetuto);
+        assertNotEquals(primo, diverso);
+        assertEquals("PDF-1", Files.readString(Path.of(primo)));
+        assertEquals("PDF-1 bis", Files.readString(Path.of(diverso)));
+        assertEquals(2, file(radice.resolve(CARTELLA)).size());
+
+        // senza estensione il suffisso va in fondo
+        String senzaEstensione = storage.store(bytes("PDF-1"), "allegato", CARTELLA);
+        assertTrue(Path.of(senzaEstensione).getFileName().toString().matches("allegato-[0-9a-f]{16}"));
+    }
+
+    // ---------------------------------------------------
+    // TC_STORE_05: scrittori concorrenti nella stessa cartella
+    // ORACOLO: ogni contenuto finisce in un solo file integro,
+    // nessun temporaneo rimasto, nessun errore.
+    // ---------------------------------------------------
+    @Test
+    void tcStore05_scrittoriConcorrenti_fileIntegri() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> percorsi = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                String contenuto = "PDF-" + (i % 4);
+                percorsi.add(pool.submit(() -> storage.store(bytes(contenuto), "fattura.pdf", CARTELLA)));
+            }
+
+            Set<String> distinti = new HashSet<>();
+            for (Future<String> p : percorsi) {
+                distinti.add(p.get());
+            }
+
+            assertEquals(4, distinti.size());
+            for (String p : distinti) {
+                assertTrue(Files.readString(Path.of(p)).matches("PDF-[0-3]"));
+            }
+            assertEquals(4, file(radice.resolve(CARTELLA)).size());
+            assertTrue(temporanei(radice.resolve(CARTELLA)).isEmpty());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // ---------------------------------------------------
+    // TC_STORE_06: contenuto già presente, riusato dalla deduplica
+    // ORACOLO: stesso file, l'mtime viene aggiornato così la manutenzione
+    // non lo elimina come orfano vecchio prima che il documento sia salvato.
+    // ---------------------------------------------------
+    @Test
+    void tcStore06_fileRiusato_mtimeAggiornato() throws Exception {
+        String primo = storage.store(bytes("PDF-1"), "fattura-1.pdf", CARTELLA);
+        Instant vecchio = Instant.now().minus(Duration.ofDays(400));
+        Files.setLastModifiedTime(Path.of(primo), FileTime.from(vecchio));
+
+        String ripetuto = storage.store(bytes("PDF-1"), "fattura-1.pdf", CARTELLA);
+
+        assertEquals(primo, ripetuto);
+        assertTrue(Files.getLastModifiedTime(Path.of(primo)).toInstant().isAfter(vecchio.plus(Duration.ofDays(399))));
+        assertTrue(temporanei(radice.resolve(CARTELLA)).isEmpty());
+    }
+
+    private static byte[] bytes(String testo) {
+        return testo.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<Path> file(Path cartella) throws IOException {
+        try (Stream<Path> s = Files.list(cartella)) {
+            return s.toList();
+        }
+    }
+
+    private static List<Path> temporanei(Path cartella) throws IOException {
+        return file(cartella).stream()
+                .filter(p -> p.getFileName().toString().startsWith(FileStorageServiceImpl.PREFISSO_TEMP))
+                .toList();
+    }
+}
@@ -0,0 +1,189 @@
+package it.autoflow.commons.service;
+
+import it.autoflow.commons.repository.DocumentoPDFRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ManutenzioneStorageTest {
+
+    private static final LocalDateTime MARZO_2024 = LocalDateTime.of(2024, 3, 10, 9, 0);
+    private static final LocalDateTime SOGLIA = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+    @Mock
+    private DocumentoPDFRepository documentoPDFRepository;
+
+    // le transazioni girano sul mock: il callback viene eseguito subito
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private ArchivioMensile archivioMensile;
+    private FileStorageServiceImpl storage;
+    private ManutenzioneStorage manutenzione;
+
+    @TempDir
+    Path radice;
+
+    // proiezione di findDaArchiviare
+    record DaArchiviare(String path, LocalDateTime dataCreazione)
+            implements DocumentoPDFRepository.DocumentoDaArchiviare {
+        public String getPath() { return path; }
+        public LocalDateTime getDataCreazione() { return dataCreazione; }
+    }
+
+    @BeforeEach
+    void setUp() {
+        archivioMensile = new ArchivioMensile();
+        ReflectionTestUtils.setField(archivioMensile, "basePath", radice.toString());
+        BlocchiStorage blocchiStorage = new BlocchiStorage();
+        storage = new FileStorageServiceImpl(archivioMensile, blocchiStorage);
+        ReflectionTestUtils.setField(storage, "basePath", radice.toString());
+        manutenzione = new ManutenzioneStorage(documentoPDFRepository, archivioMensile,
+                new TransactionTemplate(transactionManager), blocchiStorage);
+        ReflectionTestUtils.setField(manutenzione, "etaMinimaMinuti", 60L);
+    }
+
+    // ---------------------------------------------------
+    // TC_MANUT_01: archiviazione di documenti vecchi e rilettura
+    // ORACOLO: i file finiscono nel contenitore del loro mese, il DB riceve il path
+    // "<contenitore>!/<voce>" e gli originali spariscono; load() di quel path
+    // restituisce gli stessi byte, anche dopo che delete() ha tolto la copia estratta.
+    // ---------------------------------------------------
+    @Test
+    void tcManut01_archivia_pathConSeparatoreRiletto() throws Exception {
+        String fattura = salvaVecchio("PDF-fattura", "fattura-1.pdf", "fatture/2024/03");
+        String proposta = salvaVecchio("PDF-proposta", "proposta-2.pdf", "proposte/2024/03");
+        given(documentoPDFRepository.findDaArchiviare(SOGLIA)).willReturn(List.of(
+                new DaArchiviare(fattura, MARZO_2024),
+                new DaArchiviare(proposta, MARZO_2024)));
+
+        manutenzione.archivia(SOGLIA);
+
+        String archiviataFattura = nuovoPath(fattura);
+        String archiviataProposta = nuovoPath(proposta);
+        assertTrue(ArchivioMensile.archiviato(archiviataFattura));
+        assertTrue(archiviataFattura.startsWith(radice.resolve("archivio").resolve("2024-03.zip").toAbsolutePath()
+                + ArchivioMensile.SEPARATORE));
+        assertFalse(Files.exists(Path.of(fattura)));
+        assertFalse(Files.exists(Path.of(proposta)));
+
+        assertEquals("PDF-fattura", Files.readString(storage.load(archiviataFattura).toPath()));
+        assertEquals("PDF-proposta", Files.readString(storage.load(archiviataProposta).toPath()));
+
+        // delete toglie solo la copia estratta: la voce resta nel contenitore
+        assertTrue(storage.delete(archiviataFattura));
+        assertEquals("PDF-fattura", Files.readString(storage.load(archiviataFattura).toPath()));
+    }
+
+    // ---------------------------------------------------
+    // TC_MANUT_02: compattazione dopo che un documento archiviato è stato eliminato
+    // ORACOLO: la voce non più referenziata esce dal contenitore, l'altra resta leggibile;
+    // un path archiviato che non esiste più dà un File inesistente, come su disco.
+    // ---------------------------------------------------
+    @Test
+    void tcManut02_compatta_tieneSoloLeVociReferenziate() throws Exception {
+        String fattura = salvaVecchio("PDF-fattura", "fattura-1.pdf", "fatture/2024/03");
+        String proposta = salvaVecchio("PDF-proposta", "proposta-2.pdf", "proposte/2024/03");
+        given(documentoPDFRepository.findDaArchiviare(SOGLIA)).willReturn(List.of(
+                new DaArchiviare(fattura, MARZO_2024),
+                new DaArchiviare(proposta, MARZO_2024)));
+        manutenzione.archivia(SOGLIA);
+        String archiviataFattura = nuovoPath(fattura);
+        String archiviataProposta = nuovoPath(proposta);
+
+        assertEquals(1, archivioMensile.compatta(Set.of(archiviataProposta)));
+
+        File mancante = storage.load(archiviataFattura);
+        assertFalse(mancante.exists());
+        assertEquals("PDF-proposta", Files.readString(storage.load(archiviataProposta).toPath()));
+
+        // senza più voci referenziate il contenitore viene eliminato
+        assertEquals(1, archivioMensile.compatta(Set.of()));
+        assertFalse(Files.exists(radice.resolve("archivio").resolve("2024-03.zip")));
+    }
+
+    // ---------------------------------------------------
+    // TC_MANUT_03: file riusato dalla deduplica mentre l'archiviazione è in corso
+    // ORACOLO: il path nel DB viene comunque spostato nell'archivio,
+    // ma il file con mtime successivo all'inizio resta su disco.
+    // ---------------------------------------------------
+    @Test
+    void tcManut03_fileRiusatoDuranteLArchiviazione_nonEliminato() throws Exception {
+        String fattura = salvaVecchio("PDF-fattura", "fattura-1.pdf", "fatture/2024/03");
+        Files.setLastModifiedTime(Path.of(fattura), FileTime.from(Instant.now().plus(Duration.ofMinutes(5))));
+        given(documentoPDFRepository.findDaArchiviare(SOGLIA)).willReturn(List.of(new DaArchiviare(fattura, MARZO_2024)));
+
+        manutenzione.archivia(SOGLIA);
+
+        assertTrue(ArchivioMensile.archiviato(nuovoPath(fattura)));
+        assertTrue(Files.exists(Path.of(fattura)));
+    }
+
+    // ---------------------------------------------------
+    // TC_MANUT_04: pulizia di orfani e temporanei
+    // ORACOLO: eliminati i temporanei e i file non referenziati più vecchi della soglia;
+    // restano i file referenziati, quelli recenti e i contenitori degli archivi.
+    // ---------------------------------------------------
+    @Test
+    void tcManut04_eliminaOrfani_soloVecchiENonReferenziati() throws Exception {
+        String riferito = salvaVecchio("PDF-1", "fattura-1.pdf", "fatture/2024/03");
+        String orfano = salvaVecchio("PDF-2", "fattura-2.pdf", "fatture/2024/03");
+        String recente = storage.store("PDF-3".getBytes(StandardCharsets.UTF_8), "fattura-3.pdf", "fatture/2024/03");
+        Path temporaneo = Files.createTempFile(radice.resolve("fatture/2024/03"),
+                FileStorageServiceImpl.PREFISSO_TEMP, FileStorageServiceImpl.SUFFISSO_TEMP);
+        invecchia(temporaneo);
+        Path contenitore = Files.createDirectories(radice.resolve("archivio")).resolve("2024-03.zip");
+        Files.writeString(contenitore, "zip");
+        invecchia(contenitore);
+        given(documentoPDFRepository.findPathUsati()).willReturn(List.of(riferito));
+
+        manutenzione.eliminaOrfani();
+
+        assertTrue(Files.exists(Path.of(riferito)));
+        assertFalse(Files.exists(Path.of(orfano)));
+        assertTrue(Files.exists(Path.of(recente)));
+        assertFalse(Files.exists(temporaneo));
+        assertTrue(Files.exists(contenitore));
+    }
+
+    private String salvaVecchio(String contenuto, String fileName, String folderKey) throws Exception {
+        String path = storage.store(contenuto.getBytes(StandardCharsets.UTF_8), fileName, folderKey);
+        invecchia(Path.of(path));
+        return path;
+    }
+
+    private static void invecchia(Path file) throws Exception {
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().minus(Duration.ofDays(400))));
+    }
+
+    // path scritto nel DB al posto di quello originale
+    private String nuovoPath(String vecchio) {
+        ArgumentCaptor<String> nuovo = ArgumentCaptor.forClass(String.class);
+        verify(documentoPDFRepository).aggiornaPath(eq(vecchio), nuovo.capture());
+        return nuovo.getValue();
+    }
+}
@@ -0,0 +1,84 @@
+package it.autoflow.commons.service;
+
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class NdjsonExportServiceTest {
+
+    @Mock
+    private EntityManager entityManager;
+
+    private NdjsonExportService service;
+
+    record Riga(long id, String nome) {
+    }
+
+    @BeforeEach
+    void setUp() {
+        service = new NdjsonExportService(JsonMapper.builder().build(), entityManager);
+    }
+
+    // ---------------------------------------------------
+    // TC_NDJSON_01: export di poche righe
+    // ORACOLO: un oggetto JSON per riga, nell'ordine dello stream,
+    // stream chiuso a fine export, persistence context non toccato.
+    // ---------------------------------------------------
+    @Test
+    void tcNdjson01_unOggettoPerRiga_streamChiuso() throws Exception {
+        AtomicBoolean chiuso = new AtomicBoolean();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        service.scrivi(() -> Stream.of(new Riga(1, "Anna"), new Riga(2, "Bruno"))
+                .onClose(() -> chiuso.set(true)), out);
+
+        assertEquals("{\"id\":1,\"nome\":\"Anna\"}\n{\"id\":2,\"nome\":\"Bruno\"}\n",
+                out.toString(StandardCharsets.UTF_8));
+        assertTrue(chiuso.get());
+        verifyNoInteractions(entityManager);
+    }
+
+    // ---------------------------------------------------
+    // TC_NDJSON_02: export più lungo di un blocco
+    // ORACOLO: tutte le righe scritte, persistence context svuotato
+    // ogni 500 righe per tenere la memoria costante.
+    // ---------------------------------------------------
+    @Test
+    void tcNdjson02_righeOltreIlBlocco_svuotaIlPersistenceContext() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        service.scrivi(() -> IntStream.rangeClosed(1, 1_200).mapToObj(i -> new Riga(i, "r" + i)), out);
+
+        String[] righe = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(1_200, righe.length);
+        assertEquals("{\"id\":1200,\"nome\":\"r1200\"}", righe[1_199]);
+        verify(entityManager, times(2)).clear();
+    }
+
+    // ---------------------------------------------------
+    // TC_NDJSON_03: nessuna riga
+    // ORACOLO: corpo vuoto.
+    // ---------------------------------------------------
+    @Test
+    void tcNdjson03_nessunaRiga_corpoVuoto() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        service.scrivi(Stream::empty, out);
+
+        assertEquals(0, out.size());
+    }
+}
@@ -0,0 +1,191 @@
+package it.autoflow.commons.service;
+
+import it.autoflow.commons.cache.CacheDocumentiPdf;
+import it.autoflow.commons.entity.DocumentoPDF;
+import it.autoflow.commons.entity.StatoDocumento;
+import it.autoflow.commons.repository.DocumentoPDFRepository;
+import it.autoflow.invoice.entity.Fattura;
+import it.autoflow.invoice.repository.FatturaRepository;
+import it.autoflow.proposal.repository.PropostaRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PdfDocumentServiceImplTest {
+
+    @Mock
+    private PropostaRepository propostaRepository;
+
+    @Mock
+    private FatturaRepository fatturaRepository;
+
+    @Mock
+    private DocumentoPDFRepository documentoPDFRepository;
+
+    @Mock
+    private FileStorageService fileStorageService;
+
+    @Mock
+    private CodaRenderingPdf codaRendering;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private CacheDocumentiPdf cacheDocumentiPdf;
+
+    @Mock
+    private SpazioStorage spazioStorage;
+
+    @InjectMocks
+    private PdfDocumentServiceImpl pdfDocumentService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(pdfDocumentService, "scadenzaMinuti", 10L);
+    }
+
+    // ---------------------------------------------------
+    // PENDING accodato da poco: il rendering è ancora in coda,
+    // la richiesta restituisce il documento senza riaccodarlo.
+    // ---------------------------------------------------
+    @Test
+    void requestInvoicePdf_pendingRecente_nonRiaccodato() {
+        DocumentoPDF documento = documento(StatoDocumento.PENDING, LocalDateTime.now().minusMinutes(1));
+        given(fatturaRepository.findById(3L)).willReturn(Optional.of(fattura(documento)));
+
+        DocumentoPDF result = pdfDocumentService.requestInvoicePdf(3L);
+
+        assertSame(documento, result);
+        verifyNoInteractions(codaRendering, spazioStorage);
+        verify(documentoPDFRepository, never()).save(any(DocumentoPDF.class));
+    }
+
+    // ---------------------------------------------------
+    // PENDING oltre la scadenza (coda persa con un riavvio):
+    // la richiesta lo riaccoda e sposta in avanti la scadenza.
+    // ---------------------------------------------------
+    @Test
+    void requestInvoicePdf_pendingScaduto_riaccodato() {
+        LocalDateTime accodato = LocalDateTime.now().minusMinutes(30);
+        DocumentoPDF documento = documento(StatoDocumento.PENDING, accodato);
+        given(fatturaRepository.findById(3L)).willReturn(Optional.of(fattura(documento)));
+        given(documentoPDFRepository.save(documento)).willReturn(documento);
+
+        DocumentoPDF result = pdfDocumentService.requestInvoicePdf(3L);
+
+        assertSame(documento, result);
+        assertEquals(StatoDocumento.PENDING, result.getStato());
+        assertTrue(result.getUltimaModifica().isAfter(accodato));
+        verify(spazioStorage).riserva();
+        verify(codaRendering, times(1)).accoda(any(), any(), any(), any());
+    }
+
+    // ---------------------------------------------------
+    // Recupero periodico: il documento scaduto di una fattura viene riaccodato.
+    // ---------------------------------------------------
+    @Test
+    void requeueStalePdfs_documentoScadutoDiFattura_riaccodato() {
+        DocumentoPDF documento = documento(StatoDocumento.PENDING, LocalDateTime.now().minusHours(2));
+        eseguiTransazioni();
+        given(documentoPDFRepository.findIdInAttesaDa(any(LocalDateTime.class))).willReturn(List.of(7L));
+        given(documentoPDFRepository.rinnovaInAttesa(eq(7L), any(LocalDateTime.class), any(LocalDateTime.class)))
+                .willReturn(1);
+        given(fatturaRepository.findByDocumentoPdf_Id(7L)).willReturn(Optional.of(fattura(documento)));
+        given(documentoPDFRepository.save(documento)).willReturn(documento);
+
+        int riaccodati = pdfDocumentService.requeueStalePdfs();
+
+        assertEquals(1, riaccodati);
+        assertEquals(StatoDocumento.PENDING, documento.getStato());
+        verify(codaRendering, times(1)).accoda(any(), any(), any(), any());
+    }
+
+    // ---------------------------------------------------
+    // Recupero su più nodi: se un altro nodo ha già rinnovato la scadenza
+    // (o il documento è diventato pronto) non si riaccoda una seconda volta.
+    // ---------------------------------------------------
+    @Test
+    void requeueStalePdfs_giaRipresoAltrove_nonRiaccodato() {
+        eseguiTransazioni();
+        given(documentoPDFRepository.findIdInAttesaDa(any(LocalDateTime.class))).willReturn(List.of(7L));
+        given(documentoPDFRepository.rinnovaInAttesa(eq(7L), any(LocalDateTime.class), any(LocalDateTime.class)))
+                .willReturn(0);
+
+        int riaccodati = pdfDocumentService.requeueStalePdfs();
+
+        assertEquals(0, riaccodati);
+        verifyNoInteractions(codaRendering);
+        verify(fatturaRepository, never()).findByDocumentoPdf_Id(anyLong());
+    }
+
+    // ---------------------------------------------------
+    // Documento orfano: nessuno potrebbe impaginarlo, passa a FAILED.
+    // ---------------------------------------------------
+    @Test
+    void requeueStalePdfs_documentoOrfano_segnatoFailed() {
+        DocumentoPDF documento = documento(StatoDocumento.PENDING, LocalDateTime.now().minusHours(2));
+        eseguiTransazioni();
+        given(documentoPDFRepository.findIdInAttesaDa(any(LocalDateTime.class))).willReturn(List.of(7L));
+        given(documentoPDFRepository.rinnovaInAttesa(eq(7L), any(LocalDateTime.class), any(LocalDateTime.class)))
+                .willReturn(1);
+        given(fatturaRepository.findByDocumentoPdf_Id(7L)).willReturn(Optional.empty());
+        given(propostaRepository.findByDocumentoPdf_Id(7L)).willReturn(Optional.empty());
+        given(documentoPDFRepository.findById(7L)).willReturn(Optional.of(documento));
+
+        int riaccodati = pdfDocumentService.requeueStalePdfs();
+
+        assertEquals(0, riaccodati);
+        assertEquals(StatoDocumento.FAILED, documento.getStato());
+        assertNotNull(documento.getErrore());
+        verifyNoInteractions(codaRendering);
+    }
+
+    // i callback del TransactionTemplate vengono eseguiti subito, senza transazione
+    private void eseguiTransazioni() {
+        given(transactionTemplate.execute(any())).willAnswer(invocation -> {
+            TransactionCallback<?> callback = invocation.getArgument(0);
+            return callback.doInTransaction(null);
+        });
+    }
+
+    private static DocumentoPDF documento(StatoDocumento stato, LocalDateTime ultimaModifica) {
+        DocumentoPDF documento = new DocumentoPDF();
+        documento.setId(7L);
+        documento.setNomeFile("fattura-AF-2025-000001.pdf");
+        documento.setStato(stato);
+        documento.setDataCreazione(ultimaModifica);
+        documento.setUltimaModifica(ultimaModifica);
+        return documento;
+    }
+
+    private static Fattura fattura(DocumentoPDF documento) {
+        Fattura fattura = new Fattura();
+        fattura.setId(3L);
+        fattura.setNumeroFattura("AF-2025-000001");
+        fattura.setDataEmissione(LocalDate.now());
+        fattura.setDocumentoPdf(documento);
+        return fattura;
+    }
+}
@@ -0,0 +1,220 @@
+package it.autoflow.commons.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class S3StorageServiceTest {
+
+    private static final String BUCKET = "autoflow";
+    private static final int PARTE = 5 * 1024 * 1024;
+
+    @Mock
+    private S3Client s3;
+
+    @TempDir
+    Path radice;
+
+    private S3StorageService storage;
+
+    // contenuto dei body letto durante la chiamata: il buffer dell'upload viene riusato
+    private final List<byte[]> inviati = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        storage = new S3StorageService(s3, BUCKET, PARTE, radice.resolve("s3-cache"), 10);
+    }
+
+    // ---------------------------------------------------
+    // TC_S3_01: file più piccolo di una parte
+    // ORACOLO: un solo PUT con esattamente i byte scritti e il content type del PDF;
+    // nessun multipart. Il path è "s3://bucket/<cartella>/<nome>-<uuid>.pdf".
+    // ---------------------------------------------------
+    @Test
+    void tcS301_filePiccolo_unSoloPut() {
+        given(s3.putObject(any(PutObjectRequest.class), any(RequestBody.class))).willAnswer(invocation -> {
+            inviati.add(leggi(invocation.getArgument(1)));
+            return null;
+        });
+
+        String path = storage.store("fattura-1.pdf", "fatture/2026/03",
+                out -> out.write(bytes("PDF-1")));
+
+        assertTrue(path.matches("s3://autoflow/fatture/2026/03/fattura-1-[0-9a-f-]{36}\\.pdf"));
+        ArgumentCaptor<PutObjectRequest> put = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(s3).putObject(put.capture(), any(RequestBody.class));
+        assertEquals("application/pdf", put.getValue().contentType());
+        assertEquals(path.substring(("s3://" + BUCKET + "/").length()), put.getValue().key());
+        assertArrayEquals(bytes("PDF-1"), inviati.get(0));
+        verify(s3, never()).createMultipartUpload(any(CreateMultipartUploadRequest.class));
+    }
+
+    // ---------------------------------------------------
+    // TC_S3_02: file di più parti
+    // ORACOLO: multipart con parti piene da 5 MB e l'ultima col resto, in ordine;
+    // la concatenazione delle parti è il contenuto scritto; completa con tutte le parti.
+    // ---------------------------------------------------
+    @Test
+    void tcS302_fileGrande_multipartInOrdine() {
+        multipartAccettato();
+        given(s3.uploadPart(any(UploadPartRequest.class), any(RequestBody.class))).willAnswer(invocation -> {
+            UploadPartRequest richiesta = invocation.getArgument(0);
+            inviati.add(leggi(invocation.getArgument(1)));
+            return UploadPartResponse.builder().eTag("etag-" + richiesta.partNumber()).build();
+        });
+        byte[] contenuto = contenuto(2 * PARTE + 1234);
+
+        storage.store("archivio.zip", "export", out -> {
+            // a pezzi irregolari, come PDDocument.save
+            for (int off = 0; off < contenuto.length; off += 100_000) {
+                out.write(contenuto, off, Math.min(100_000, contenuto.length - off));
+            }
+        });
+
+        assertEquals(3, inviati.size());
+        assertEquals(PARTE, inviati.get(0).length);
+        assertEquals(PARTE, inviati.get(1).length);
+        assertEquals(1234, inviati.get(2).length);
+        assertArrayEquals(contenuto, concatena(inviati));
+
+        ArgumentCaptor<CompleteMultipartUploadRequest> completa =
+                ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(s3).completeMultipartUpload(completa.capture());
+        assertEquals("upload-1", completa.getValue().uploadId());
+        assertEquals(List.of("etag-1", "etag-2", "etag-3"), completa.getValue().multipartUpload().parts().stream()
+                .map(p -> p.eTag()).toList());
+        verify(s3, never()).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+    }
+
+    // ---------------------------------------------------
+    // TC_S3_03: scrittura che fallisce dopo la prima parte
+    // ORACOLO: RuntimeException con la causa originale; l'upload multipart
+    // viene annullato e l'oggetto non viene mai completato.
+    // ---------------------------------------------------
+    @Test
+    void tcS303_erroreInScrittura_uploadAnnullato() {
+        multipartAccettato();
+        given(s3.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .willReturn(UploadPartResponse.builder().eTag("etag-1").build());
+        IOException errore = new IOException("rendering interrotto");
+
+        RuntimeException e = assertThrows(RuntimeException.class, () ->
+                storage.store("fattura-1.pdf", "fatture/2026/03", out -> {
+                    out.write(contenuto(PARTE + 10));
+                    throw errore;
+                }));
+
+        assertSame(errore, e.getCause());
+        ArgumentCaptor<AbortMultipartUploadRequest> annulla =
+                ArgumentCaptor.forClass(AbortMultipartUploadRequest.class);
+        verify(s3).abortMultipartUpload(annulla.capture());
+        assertEquals("upload-1", annulla.getValue().uploadId());
+        verify(s3, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    // ---------------------------------------------------
+    // TC_S3_04: load
+    // ORACOLO: il primo accesso scarica l'oggetto, il secondo lo serve dalla cache
+    // locale senza chiamare S3; oltre il limite della cache il file usato meno
+    // di recente viene eliminato; un oggetto inesistente dà un File inesistente.
+    // ---------------------------------------------------
+    @Test
+    void tcS304_load_cacheLimitataEOggettoMancante() throws Exception {
+        given(s3.getObject(any(GetObjectRequest.class))).willAnswer(invocation -> {
+            GetObjectRequest richiesta = invocation.getArgument(0);
+            if (richiesta.key().contains("mancante")) {
+                throw NoSuchKeyException.builder().message("mancante").build();
+            }
+            // 6 byte per oggetto: nel limite di 10 ne sta uno solo
+            return risposta(bytes(richiesta.key().substring(richiesta.key().length() - 6)));
+        });
+
+        File primo = storage.load("s3://autoflow/fatture/f-0001");
+        assertEquals("f-0001", Files.readString(primo.toPath()));
+        assertEquals(primo, storage.load("s3://autoflow/fatture/f-0001"));
+        verify(s3, times(1)).getObject(any(GetObjectRequest.class));
+
+        File secondo = storage.load("s3://autoflow/fatture/f-0002");
+        assertEquals("f-0002", Files.readString(secondo.toPath()));
+        assertFalse(primo.exists());
+
+        assertFalse(storage.load("s3://autoflow/fatture/mancante").exists());
+        assertThrows(IllegalArgumentException.class, () -> storage.load("s3://altro/fatture/f-0001"));
+    }
+
+    private void multipartAccettato() {
+        given(s3.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .willReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+    }
+
+    private static ResponseInputStream<GetObjectResponse> risposta(byte[] contenuto) {
+        return new ResponseInputStream<>(GetObjectResponse.builder().build(),
+                AbortableInputStream.create(new ByteArrayInputStream(contenuto)));
+    }
+
+    private static byte[] leggi(RequestBody body) {
+        try (InputStream in = body.contentStreamProvider().newStream()) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] contenuto(int dimensione) {
+        byte[] b = new byte[dimensione];
+        for (int i = 0; i < dimensione; i++) {
+            b[i] = (byte) (i % 251);
+        }
+        return b;
+    }
+
+    private static byte[] concatena(List<byte[]> parti) {
+        byte[] tutto = new byte[0];
+        for (byte[] p : parti) {
+            int inizio = tutto.length;
+            tutto = Arrays.copyOf(tutto, inizio + p.length);
+            System.arraycopy(p, 0, tutto, inizio, p.length);
+        }
+        return tutto;
+    }
+
+    private static byte[] bytes(String testo) {
+        return testo.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -1,6 +1,7 @@
 package it.autoflow.invoice.controller;
 
 import it.autoflow.commons.entity.DocumentoPDF;
+import it.autoflow.commons.entity.StatoDocumento;
 import it.autoflow.commons.repository.DocumentoPDFRepository;
 import it.autoflow.commons.service.FileStorageService;
 import it.autoflow.commons.service.PdfDocumentService;
@@ -20,14 +21,20 @@ import it.autoflow.vehicle.repository.VeicoloRepository;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.transaction.Transactional;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -36,6 +43,9 @@ import static org.hamcrest.Matchers.is;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -130,7 +140,7 @@ class FatturaControllerIT {
         doc.setUltimaModifica(LocalDateTime.now());
         doc = documentoPDFRepository.save(doc);
 
-        given(pdfDocumentService.generateInvoicePdf(anyLong()))
+        given(pdfDocumentService.requestInvoicePdf(anyLong()))
                 .willReturn(doc);
 
         mockMvc.perform(post("/api/fatture/da-proposta/{propostaId}", p.getId())
@@ -168,4 +178,119 @@ class FatturaControllerIT {
         assertEquals("Proposta non trovata", cause.getMessage());
         assertEquals(0, fatturaRepository.count());
     }
-}
\ No newline at end of file
+
+    // --------------------------------------------------------
+    // TC5_03 (controller) - GET /api/fatture/{id}/pdf
+    // ORACOLO: 200 con il PDF e un ETag; 304 se il client rimanda l'ETag;
+    // 206 con la sola parte richiesta se c'è l'header Range.
+    // --------------------------------------------------------
+    @Test
+    void tc5_03_downloadPdf_304ConEtagE206ConRange(@TempDir Path cartella) throws Exception {
+        byte[] pdf = "%PDF-1.7 contenuto di prova".getBytes(StandardCharsets.US_ASCII);
+        Path file = Files.write(cartella.resolve("fattura-888.pdf"), pdf);
+
+        Cliente cliente = new Cliente();
+        cliente.setNome("Paolo");
+        cliente.setCognome("Gialli");
+        cliente.setEmail("paolo.gialli@example.com");
+        cliente.setUsername("paolo.gialli@example.com");
+        cliente.setPassword("pwd");
+        cliente.setRuolo(Ruolo.CLIENTE);
+        cliente.setAttivo(true);
+        cliente = clienteRepository.save(cliente);
+
+        Proposta p = new Proposta();
+        p.setCliente(cliente);
+        p.setConfigurazione(creaConfigurazionePerCliente(cliente));
+        p.setPrezzoProposta(21_000.0);
+        p.setStato(StatoProposta.ACCETTATA);
+        p.setDataCreazione(LocalDateTime.now());
+        p = propostaRepository.save(p);
+
+        DocumentoPDF doc = new DocumentoPDF();
+        doc.setNomeFile("fattura-888.pdf");
+        doc.setPath(file.toString());
+        doc.setDimensioneBytes((long) pdf.length);
+        doc.setDataCreazione(LocalDateTime.now());
+        doc.setUltimaModifica(LocalDateTime.now());
+        doc.setStato(StatoDocumento.READY);
+        doc = documentoPDFRepository.save(doc);
+
+        Fattura f = new Fattura();
+        f.setNumeroFattura("AF-TEST-888");
+        f.setDataEmissione(LocalDate.now());
+        f.setCliente(cliente);
+        f.setProposta(p);
+        f.setImportoTotale(21_000.0);
+        f.setDocumentoPdf(doc);
+        f = fatturaRepository.save(f);
+
+        given(fileStorageService.load(file.toString())).willReturn(file.toFile());
+
+        String etag = mockMvc.perform(get("/api/fatture/{id}/pdf", f.getId()))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_PDF))
+                .andExpect(content().bytes(pdf))
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/api/fatture/{id}/pdf", f.getId()).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        mockMvc.perform(get("/api/fatture/{id}/pdf", f.getId()).header(HttpHeaders.RANGE, "bytes=0-3"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 0-3/" + pdf.length))
+                .andExpect(content().bytes("%PDF".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    // --------------------------------------------------------
+    // TC5_04 (controller) - GET /api/fatture/{id}/pdf con rendering fallito
+    // ORACOLO: 500 con lo stato FAILED e l'errore del rendering;
+    // nessun nuovo rendering accodato dal download.
+    // --------------------------------------------------------
+    @Test
+    void tc5_04_downloadPdfFallito_erroreSenzaNuovoRendering() throws Exception {
+        Cliente cliente = new Cliente();
+        cliente.setNome("Marta");
+        cliente.setCognome("Neri");
+        cliente.setEmail("marta.neri@example.com");
+        cliente.setUsername("marta.neri@example.com");
+        cliente.setPassword("pwd");
+        cliente.setRuolo(Ruolo.CLIENTE);
+        cliente.setAttivo(true);
+        cliente = clienteRepository.save(cliente);
+
+        Proposta p = new Proposta();
+        p.setCliente(cliente);
+        p.setConfigurazione(creaConfigurazionePerCliente(cliente));
+        p.setPrezzoProposta(19_000.0);
+        p.setStato(StatoProposta.ACCETTATA);
+        p.setDataCreazione(LocalDateTime.now());
+        p = propostaRepository.save(p);
+
+        DocumentoPDF doc = new DocumentoPDF();
+        doc.setNomeFile("fattura-999.pdf");
+        doc.setDataCreazione(LocalDateTime.now());
+        doc.setUltimaModifica(LocalDateTime.now());
+        doc.setStato(StatoDocumento.FAILED);
+        doc.setErrore("font mancante");
+        doc = documentoPDFRepository.save(doc);
+
+        Fattura f = new Fattura();
+        f.setNumeroFattura("AF-TEST-999");
+        f.setDataEmissione(LocalDate.now());
+        f.setCliente(cliente);
+        f.setProposta(p);
+        f.setImportoTotale(19_000.0);
+        f.setDocumentoPdf(doc);
+        f = fatturaRepository.save(f);
+
+        mockMvc.perform(get("/api/fatture/{id}/pdf", f.getId()))
+                .andExpect(status().isInternalServerError())
+                .andExpect(jsonPath("$.id").value(doc.getId()))
+                .andExpect(jsonPath("$.stato").value("FAILED"))
+                .andExpect(jsonPath("$.errore").value("font mancante"));
+
+        verify(pdfDocumentService, never()).requestInvoicePdf(anyLong());
+    }
+}
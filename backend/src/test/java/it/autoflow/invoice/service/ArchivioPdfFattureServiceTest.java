@@ -0,0 +1,209 @@
+package it.autoflow.invoice.service;
+
+import it.autoflow.commons.entity.DocumentoPDF;
+import it.autoflow.commons.entity.StatoDocumento;
+import it.autoflow.commons.repository.DocumentoPDFRepository;
+import it.autoflow.commons.service.CodaRenderingPdf;
+import it.autoflow.commons.service.FileStorageService;
+import it.autoflow.commons.service.PdfDocumentService;
+import it.autoflow.invoice.repository.FatturaRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ArchivioPdfFattureServiceTest {
+
+    private static final LocalDate DA = LocalDate.of(2026, 3, 1);
+    private static final LocalDate A = LocalDate.of(2026, 3, 31);
+
+    @Mock
+    private FatturaRepository fatturaRepository;
+
+    @Mock
+    private DocumentoPDFRepository documentoPDFRepository;
+
+    @Mock
+    private PdfDocumentService pdfDocumentService;
+
+    @Mock
+    private FileStorageService fileStorageService;
+
+    @Mock
+    private CodaRenderingPdf codaRendering;
+
+    @InjectMocks
+    private ArchivioPdfFattureService archivio;
+
+    @TempDir
+    Path cartella;
+
+    // proiezione di findDocumentiTra
+    record Riga(Long fatturaId, String numeroFattura, Long documentoId, StatoDocumento stato,
+                String nomeFile, String path) implements FatturaRepository.DocumentoFattura {
+        public Long getFatturaId() { return fatturaId; }
+        public String getNumeroFattura() { return numeroFattura; }
+        public Long getDocumentoId() { return documentoId; }
+        public StatoDocumento getStato() { return stato; }
+        public String getNomeFile() { return nomeFile; }
+        public String getPath() { return path; }
+    }
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(archivio, "attesaMs", 0L);
+        lenient().when(codaRendering.thread()).thenReturn(4);
+        // i rendering girano subito, sul thread del test
+        lenient().when(codaRendering.esegui(any())).thenAnswer(invocation -> {
+            Supplier<?> lavoro = invocation.getArgument(0);
+            try {
+                return CompletableFuture.completedFuture(lavoro.get());
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        });
+        lenient().when(fileStorageService.load(anyString()))
+                .thenAnswer(invocation -> cartella.resolve(invocation.<String>getArgument(0)).toFile());
+    }
+
+    // ---------------------------------------------------
+    // TC_ZIP_01: periodo con PDF pronti, mancanti, falliti e senza file
+    // ORACOLO: i PDF pronti o generati sono nello ZIP in ordine di emissione;
+    // rendering fallito, documento in coda fallito e file assente su disco
+    // sono elencati in ERRORI.txt, in coda all'archivio.
+    // ---------------------------------------------------
+    @Test
+    void tcZip01_pdfEErroriNelloZip() throws Exception {
+        scriviPdf("f1.pdf", "PDF-1");
+        scriviPdf("f2.pdf", "PDF-2");
+        given(fatturaRepository.findDocumentiTra(DA, A.plusDays(1))).willReturn(List.of(
+                new Riga(1L, "AF-2026-000001", 10L, StatoDocumento.READY, "f1.pdf", "f1.pdf"),
+                new Riga(2L, "AF-2026-000002", null, null, null, null),
+                new Riga(3L, "AF-2026-000003", 30L, StatoDocumento.FAILED, "f3.pdf", null),
+                new Riga(4L, "AF-2026-000004", 40L, StatoDocumento.PENDING, "f4.pdf", null),
+                new Riga(5L, "AF-2026-000005", 50L, StatoDocumento.READY, "f5.pdf", "f5.pdf")
+        ));
+        given(pdfDocumentService.generateInvoicePdf(2L)).willReturn(documento(20L, StatoDocumento.READY, "f2.pdf"));
+        given(pdfDocumentService.generateInvoicePdf(3L)).willThrow(new IllegalStateException("template non valido"));
+        DocumentoPDF fallito = documento(40L, StatoDocumento.FAILED, "f4.pdf");
+        fallito.setErrore("font mancante");
+        given(documentoPDFRepository.findById(40L)).willReturn(Optional.of(fallito));
+
+        Map<String, String> zip = leggiZip(scrivi());
+
+        assertEquals(List.of("f1.pdf", "f2.pdf", "ERRORI.txt"), List.copyOf(zip.keySet()));
+        assertEquals("PDF-1", zip.get("f1.pdf"));
+        assertEquals("PDF-2", zip.get("f2.pdf"));
+        assertEquals("""
+                AF-2026-000003: template non valido
+                AF-2026-000004: font mancante
+                AF-2026-000005: file PDF non trovato su disco""", zip.get("ERRORI.txt"));
+        verify(pdfDocumentService, never()).generateInvoicePdf(1L);
+        verify(pdfDocumentService, never()).generateInvoicePdf(4L);
+    }
+
+    // ---------------------------------------------------
+    // TC_ZIP_02: documenti già in coda (PENDING)
+    // ORACOLO: vengono attesi e mai rigenerati; quello diventato READY è nello ZIP,
+    // quello ancora in coda allo scadere dell'attesa finisce in ERRORI.txt.
+    // ---------------------------------------------------
+    @Test
+    void tcZip02_documentiInCoda_attesiNonRigenerati() throws Exception {
+        scriviPdf("f6.pdf", "PDF-6");
+        given(fatturaRepository.findDocumentiTra(DA, A.plusDays(1))).willReturn(List.of(
+                new Riga(6L, "AF-2026-000006", 60L, StatoDocumento.PENDING, "f6.pdf", null),
+                new Riga(7L, "AF-2026-000007", 70L, StatoDocumento.PENDING, "f7.pdf", null)
+        ));
+        given(documentoPDFRepository.findById(60L)).willReturn(Optional.of(documento(60L, StatoDocumento.READY, "f6.pdf")));
+        given(documentoPDFRepository.findById(70L)).willReturn(Optional.of(documento(70L, StatoDocumento.PENDING, "f7.pdf")));
+
+        Map<String, String> zip = leggiZip(scrivi());
+
+        assertEquals(List.of("f6.pdf", "ERRORI.txt"), List.copyOf(zip.keySet()));
+        assertEquals("PDF-6", zip.get("f6.pdf"));
+        assertEquals("AF-2026-000007: PDF ancora in generazione, riprovare più tardi", zip.get("ERRORI.txt"));
+        verifyNoInteractions(pdfDocumentService);
+        verify(codaRendering, never()).esegui(any());
+    }
+
+    // ---------------------------------------------------
+    // TC_ZIP_03: tutti i PDF disponibili
+    // ORACOLO: nessun ERRORI.txt nell'archivio.
+    // ---------------------------------------------------
+    @Test
+    void tcZip03_nessunErrore_senzaFileErrori() throws Exception {
+        scriviPdf("f1.pdf", "PDF-1");
+        given(fatturaRepository.findDocumentiTra(DA, A.plusDays(1))).willReturn(List.of(
+                new Riga(1L, "AF-2026-000001", 10L, StatoDocumento.READY, "f1.pdf", "f1.pdf")));
+
+        assertEquals(Map.of("f1.pdf", "PDF-1"), leggiZip(scrivi()));
+    }
+
+    // ---------------------------------------------------
+    // TC_ZIP_04: intervallo di date invertito
+    // ORACOLO: IllegalArgumentException, nessuna query.
+    // ---------------------------------------------------
+    @Test
+    void tcZip04_intervalloInvertito_rifiutato() {
+        assertThrows(IllegalArgumentException.class,
+                () -> archivio.scrivi(A, DA, new ByteArrayOutputStream()));
+        verifyNoInteractions(fatturaRepository);
+    }
+
+    private byte[] scrivi() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        archivio.scrivi(DA, A, out);
+        return out.toByteArray();
+    }
+
+    private void scriviPdf(String nome, String contenuto) throws IOException {
+        Files.writeString(cartella.resolve(nome), contenuto);
+    }
+
+    private static DocumentoPDF documento(Long id, StatoDocumento stato, String nomeFile) {
+        DocumentoPDF documento = new DocumentoPDF();
+        documento.setId(id);
+        documento.setStato(stato);
+        documento.setNomeFile(nomeFile);
+        documento.setPath(stato == StatoDocumento.READY ? nomeFile : null);
+        return documento;
+    }
+
+    // voci dello ZIP nell'ordine in cui sono scritte
+    private static Map<String, String> leggiZip(byte[] zip) throws IOException {
+        Map<String, String> voci = new LinkedHashMap<>();
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            ZipEntry voce;
+            while ((voce = in.getNextEntry()) != null) {
+                voci.put(voce.getName(), new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        return voci;
+    }
+}
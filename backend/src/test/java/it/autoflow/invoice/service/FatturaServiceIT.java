@@ -17,8 +17,11 @@ import it.autoflow.user.repository.ClienteRepository;
 import it.autoflow.vehicle.entity.StatoVeicolo;
 import it.autoflow.vehicle.entity.Veicolo;
 import it.autoflow.vehicle.repository.VeicoloRepository;
+import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.transaction.Transactional;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -62,6 +65,9 @@ class FatturaServiceIT {
     @Autowired
     private DocumentoPDFRepository documentoPDFRepository;
 
+    @Autowired
+    private EntityManager entityManager;
+
     // mockiamo il servizio PDF per non toccare il filesystem
     @MockitoBean
     private PdfDocumentService pdfDocumentService;
@@ -87,6 +93,16 @@ class FatturaServiceIT {
         return configurazioneRepository.save(conf);
     }
 
+    private Proposta nuovaPropostaAccettata(Cliente cliente, double prezzo) {
+        Proposta p = new Proposta();
+        p.setCliente(cliente);
+        p.setConfigurazione(creaConfigurazionePerCliente(cliente));
+        p.setPrezzoProposta(prezzo);
+        p.setStato(StatoProposta.ACCETTATA);
+        p.setDataCreazione(LocalDateTime.now());
+        return propostaRepository.save(p);
+    }
+
     // ---------------------------------------------------
     // TC5_01: PE1, PS1, FS1
     // ORACOLO: Fattura generata e salvata correttamente.
@@ -122,7 +138,7 @@ class FatturaServiceIT {
         // mock PdfDocumentService:
         // genera e SALVA un DocumentoPDF reale su H2,
         // così la FK documento_pdf_id punta a un record esistente
-        given(pdfDocumentService.generateInvoicePdf(anyLong()))
+        given(pdfDocumentService.requestInvoicePdf(anyLong()))
                 .willAnswer(invocation -> {
                     DocumentoPDF doc = new DocumentoPDF();
                     doc.setNomeFile("fattura-test.pdf");
@@ -246,7 +262,7 @@ class FatturaServiceIT {
         p = propostaRepository.save(p);
 
         // PdfDocumentService che fallisce
-        given(pdfDocumentService.generateInvoicePdf(anyLong()))
+        given(pdfDocumentService.requestInvoicePdf(anyLong()))
                 .willThrow(new IllegalStateException("Impossibile generare il PDF – spazio insufficiente"));
 
         final Long propostaId = p.getId();
@@ -259,4 +275,66 @@ class FatturaServiceIT {
         assertEquals("Impossibile generare il PDF – spazio insufficiente", ex.getMessage());
         // niente assert sul DB: dipende dalla transazione se la fattura viene salvata o rollbackata
     }
-}
\ No newline at end of file
+
+    // ---------------------------------------------------
+    // TC5_05: numero di istruzioni SQL della creazione da proposta
+    // ORACOLO: proposta letta una volta, fattura mai riletta,
+    // una INSERT e al più una UPDATE sulla fattura.
+    // ---------------------------------------------------
+    @Test
+    void tc5_05_createFromProposta_numeroMinimoDiIstruzioniSql() {
+        Cliente cliente = new Cliente();
+        cliente.setNome("Marco");
+        cliente.setCognome("Bianchi");
+        cliente.setEmail("marco.bianchi@example.com");
+        cliente.setUsername("marco.bianchi@example.com");
+        cliente.setPassword("pwd");
+        cliente.setRuolo(Ruolo.CLIENTE);
+        cliente.setAttivo(true);
+        cliente = clienteRepository.save(cliente);
+
+        Proposta prima = nuovaPropostaAccettata(cliente, 17_000.0);
+        Proposta p = nuovaPropostaAccettata(cliente, 18_000.0);
+
+        given(pdfDocumentService.requestInvoicePdf(anyLong()))
+                .willAnswer(invocation -> {
+                    DocumentoPDF doc = new DocumentoPDF();
+                    doc.setNomeFile("fattura-test.pdf");
+                    doc.setPath("/tmp/fattura-test.pdf");
+                    doc.setDimensioneBytes(12345L);
+                    doc.setDataCreazione(LocalDateTime.now());
+                    doc.setUltimaModifica(LocalDateTime.now());
+                    return documentoPDFRepository.save(doc);
+                });
+
+        // la prima fattura crea contatore dell'anno, contatori dashboard e riga del rollup
+        // (una volta sola, in transazioni separate): si misura la seconda
+        fatturaService.createFromProposta(prima.getId());
+
+        // contesto di persistenza vuoto: ogni lettura deve andare sul DB
+        entityManager.flush();
+        entityManager.clear();
+        Statistics statistiche = entityManager.getEntityManagerFactory()
+                .unwrap(SessionFactory.class)
+                .getStatistics();
+        statistiche.setStatisticsEnabled(true);
+        statistiche.clear();
+
+        FatturaDTO result = fatturaService.createFromProposta(p.getId());
+        entityManager.flush();
+
+        assertNotNull(result.getDocumentoPdfId());
+        assertEquals(1, statistiche.getEntityStatistics(Proposta.class.getName()).getLoadCount());
+        assertEquals(0, statistiche.getEntityStatistics(Fattura.class.getName()).getLoadCount());
+        assertEquals(1, statistiche.getEntityStatistics(Fattura.class.getName()).getInsertCount());
+        assertTrue(statistiche.getEntityStatistics(Fattura.class.getName()).getUpdateCount() <= 1);
+
+        // proposta (1), contatore FOR UPDATE + UPDATE (2), INSERT fattura (1),
+        // contatori dashboard (4), rollup giornaliero UPDATE (1),
+        // INSERT documento (1), UPDATE fattura con il documento (1)
+        long istruzioni = statistiche.getPrepareStatementCount();
+        assertTrue(istruzioni <= 11, "Istruzioni SQL eseguite: " + istruzioni);
+
+        statistiche.setStatisticsEnabled(false);
+    }
+}
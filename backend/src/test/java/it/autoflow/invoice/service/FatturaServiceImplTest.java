@@ -17,6 +17,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.test.context.ActiveProfiles;
 
 import java.time.LocalDate;
@@ -47,6 +48,12 @@ class FatturaServiceImplTest {
     @Mock
     private PdfDocumentService pdfDocumentService;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private NumeratoreFatture numeratoreFatture;
+
     @InjectMocks
     private FatturaServiceImpl fatturaService;
 
@@ -71,15 +78,11 @@ class FatturaServiceImplTest {
         proposta.setStato(StatoProposta.ACCETTATA);
         proposta.setDataCreazione(LocalDateTime.now());
 
-        // repository proposta (prima chiamata + quella dentro create())
+        // repository proposta: letta una sola volta
         given(propostaRepository.findById(10L)).willReturn(Optional.of(proposta));
 
-        // numerazione fattura: nessuna fattura precedente
-        given(fatturaRepository.findTopByNumeroFatturaStartingWithOrderByNumeroFatturaDesc(prefix))
-                .willReturn(null);
-
-        // repository cliente (usato dentro create())
-        given(clienteRepository.findById(1L)).willReturn(Optional.of(cliente));
+        // numerazione fattura: prima fattura dell'anno
+        given(numeratoreFatture.prossimo(year)).willReturn(prefix + "000001");
 
         // save fattura → assegniamo un id
         when(fatturaRepository.save(any(Fattura.class))).thenAnswer(invocation -> {
@@ -90,22 +93,10 @@ class FatturaServiceImplTest {
             return f;
         });
 
-        // findById dopo create(), usato in createFromProposta
-        given(fatturaRepository.findById(100L)).willReturn(
-                Optional.of(new Fattura() {{
-                    setId(100L);
-                    setNumeroFattura(prefix + "001");
-                    setDataEmissione(LocalDate.now());
-                    setCliente(cliente);
-                    setProposta(proposta);
-                    setImportoTotale(25_000.0);
-                }})
-        );
-
         // PDF generato correttamente
         DocumentoPDF documentoPDF = new DocumentoPDF();
         documentoPDF.setId(999L);
-        given(pdfDocumentService.generateInvoicePdf(100L)).willReturn(documentoPDF);
+        given(pdfDocumentService.requestInvoicePdf(100L)).willReturn(documentoPDF);
 
         // ---- esecuzione ----
         FatturaDTO result = fatturaService.createFromProposta(10L);
@@ -113,14 +104,19 @@ class FatturaServiceImplTest {
         // ---- asserzioni ----
         assertNotNull(result);
         assertEquals(100L, result.getId());
-        assertEquals(prefix + "001", result.getNumeroFattura());
+        assertEquals(prefix + "000001", result.getNumeroFattura());
         assertEquals(1L, result.getClienteId());
         assertEquals(10L, result.getPropostaId());
         assertEquals(25_000.0, result.getImportoTotale());
         assertEquals(999L, result.getDocumentoPdfId());
 
         // verifichiamo che il PDF sia stato generato
-        verify(pdfDocumentService).generateInvoicePdf(100L);
+        verify(pdfDocumentService).requestInvoicePdf(100L);
+
+        // nessuna nuova lettura di cliente o fattura, un solo salvataggio della fattura
+        verifyNoInteractions(clienteRepository);
+        verify(fatturaRepository, never()).findById(anyLong());
+        verify(fatturaRepository, times(1)).save(any(Fattura.class));
     }
 
     // ---------------------------------------------------
@@ -184,10 +180,7 @@ class FatturaServiceImplTest {
         proposta.setStato(StatoProposta.ACCETTATA);
 
         given(propostaRepository.findById(10L)).willReturn(Optional.of(proposta));
-        given(fatturaRepository.findTopByNumeroFatturaStartingWithOrderByNumeroFatturaDesc(prefix))
-                .willReturn(null);
-        given(clienteRepository.findById(1L)).willReturn(Optional.of(cliente));
-
+        given(numeratoreFatture.prossimo(year)).willReturn(prefix + "000001");
         when(fatturaRepository.save(any(Fattura.class))).thenAnswer(invocation -> {
             Fattura f = invocation.getArgument(0);
             if (f.getId() == null) {
@@ -199,7 +192,7 @@ class FatturaServiceImplTest {
         //given(fatturaRepository.findById(200L)).willReturn(Optional.of(new Fattura()));
 
         // simuliamo errore del File System tramite PdfDocumentService
-        given(pdfDocumentService.generateInvoicePdf(200L))
+        given(pdfDocumentService.requestInvoicePdf(200L))
                 .willThrow(new IllegalStateException("Impossibile generare il PDF – spazio insufficiente"));
 
         IllegalStateException ex = assertThrows(
@@ -209,4 +202,34 @@ class FatturaServiceImplTest {
 
         assertEquals("Impossibile generare il PDF – spazio insufficiente", ex.getMessage());
     }
-}
\ No newline at end of file
+
+    // ---------------------------------------------------
+    // TC5_04 (variante): storage già pieno prima della generazione
+    // ORACOLO: Errore "Impossibile generare il PDF – spazio insufficiente"
+    // e nessuna fattura salvata.
+    // ---------------------------------------------------
+    @Test
+    void tc5_04_spazioInsufficientePrimaDellaCreazione_nessunaFatturaSalvata() {
+        Cliente cliente = new Cliente();
+        cliente.setId(1L);
+
+        Proposta proposta = new Proposta();
+        proposta.setId(10L);
+        proposta.setCliente(cliente);
+        proposta.setPrezzoProposta(30_000.0);
+        proposta.setStato(StatoProposta.ACCETTATA);
+
+        given(propostaRepository.findById(10L)).willReturn(Optional.of(proposta));
+        doThrow(new IllegalStateException("Impossibile generare il PDF – spazio insufficiente"))
+                .when(pdfDocumentService).checkStorageCapacity();
+
+        IllegalStateException ex = assertThrows(
+                IllegalStateException.class,
+                () -> fatturaService.createFromProposta(10L)
+        );
+
+        assertEquals("Impossibile generare il PDF – spazio insufficiente", ex.getMessage());
+        verify(fatturaRepository, never()).save(any(Fattura.class));
+        verify(pdfDocumentService, never()).requestInvoicePdf(anyLong());
+    }
+}
@@ -0,0 +1,124 @@
+package it.autoflow.invoice.service;
+
+import it.autoflow.invoice.repository.ContatoreFatturaRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// niente @Transactional: ogni numero va assegnato e confermato nella propria transazione
+@SpringBootTest
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class NumeratoreFattureIT {
+
+    private static final int ANNO = 2031;
+
+    @Autowired
+    private NumeratoreFatture numeratoreFatture;
+
+    @Autowired
+    private ContatoreFatturaRepository contatoreFatturaRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private String assegna() {
+        return transactionTemplate.execute(status -> numeratoreFatture.prossimo(ANNO));
+    }
+
+    // ---------------------------------------------------
+    // TC_NUM_01: richieste concorrenti sullo stesso anno, contatore non ancora creato
+    // ORACOLO: nessun doppione e nessun buco, contatore sull'ultimo numero.
+    // ---------------------------------------------------
+    @Test
+    void tcNum01_richiesteConcorrenti_numeriUniciESenzaBuchi() throws Exception {
+        int thread = 4;
+        int perThread = 25;
+
+        ExecutorService pool = Executors.newFixedThreadPool(thread);
+        List<Future<List<String>>> risultati = new ArrayList<>();
+        try {
+            for (int t = 0; t < thread; t++) {
+                Callable<List<String>> lavoro = () -> {
+                    List<String> numeri = new ArrayList<>();
+                    for (int i = 0; i < perThread; i++) {
+                        numeri.add(assegna());
+                    }
+                    return numeri;
+                };
+                risultati.add(pool.submit(lavoro));
+            }
+
+            List<String> tutti = new ArrayList<>();
+            for (Future<List<String>> r : risultati) {
+                tutti.addAll(r.get());
+            }
+
+            int totale = thread * perThread;
+            Set<String> attesi = LongStream.rangeClosed(1, totale)
+                    .mapToObj(n -> NumeratoreFatture.prefisso(ANNO) + String.format("%06d", n))
+                    .collect(Collectors.toCollection(TreeSet::new));
+            assertEquals(totale, tutti.size());
+            assertEquals(attesi, new TreeSet<>(tutti));
+            assertEquals(totale, contatoreFatturaRepository.findById(ANNO).orElseThrow().getUltimoNumero());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // ---------------------------------------------------
+    // TC_NUM_02: transazione annullata dopo aver ottenuto un numero
+    // ORACOLO: il numero torna disponibile, la numerazione resta senza buchi.
+    // ---------------------------------------------------
+    @Test
+    void tcNum02_rollback_restituisceIlNumero() {
+        assertEquals("AF-2031-000001", assegna());
+
+        String annullato = transactionTemplate.execute(status -> {
+            String numero = numeratoreFatture.prossimo(ANNO);
+            status.setRollbackOnly();
+            return numero;
+        });
+
+        assertEquals("AF-2031-000002", annullato);
+        assertEquals("AF-2031-000002", assegna());
+    }
+
+    // ---------------------------------------------------
+    // TC_NUM_03: numeri scelti a mano
+    // ORACOLO: il prossimo atteso fa avanzare il contatore, uno più alto è rifiutato,
+    // uno già superato o fuori formato non lo tocca.
+    // ---------------------------------------------------
+    @Test
+    void tcNum03_numeroManuale_nonScavalcaIlContatore() {
+        assertEquals("AF-2031-000001", assegna());
+
+        transactionTemplate.executeWithoutResult(status -> numeratoreFatture.registraManuale("AF-2031-000002"));
+        assertEquals("AF-2031-000003", assegna());
+
+        assertThrows(IllegalArgumentException.class, () -> transactionTemplate.executeWithoutResult(
+                status -> numeratoreFatture.registraManuale("AF-2031-000010")));
+
+        transactionTemplate.executeWithoutResult(status -> {
+            numeratoreFatture.registraManuale("AF-2031-000001");
+            numeratoreFatture.registraManuale("PROFORMA-7");
+        });
+        assertEquals("AF-2031-000004", assegna());
+    }
+}
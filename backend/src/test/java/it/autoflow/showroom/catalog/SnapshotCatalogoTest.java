@@ -0,0 +1,239 @@
+package it.autoflow.showroom.catalog;
+
+import it.autoflow.showroom.dto.FacetteDTO;
+import it.autoflow.showroom.dto.ShowroomFiltroDTO;
+import it.autoflow.showroom.dto.VeicoloCardDTO;
+import it.autoflow.vehicle.dto.VeicoloDTO;
+import it.autoflow.vehicle.entity.StatoVeicolo;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotCatalogoTest {
+
+    private static VeicoloDTO veicolo(long id, String marca, String modello, double prezzo,
+                                      String alimentazione, String cambio) {
+        VeicoloDTO v = new VeicoloDTO();
+        v.setId(id);
+        v.setMarca(marca);
+        v.setModello(modello);
+        v.setAnno(2020);
+        v.setPrezzoBase(prezzo);
+        v.setAlimentazione(alimentazione);
+        v.setCambio(cambio);
+        v.setColoreEsterno("Bianco");
+        v.setStato(StatoVeicolo.DISPONIBILE);
+        v.setVisibileAlPubblico(true);
+        return v;
+    }
+
+    private static SnapshotCatalogo catalogo() {
+        return SnapshotCatalogo.di(List.of(
+                veicolo(1, "Fiat", "Panda", 15_000, "Benzina", "Manuale"),
+                veicolo(2, "Volkswagen", "Golf", 25_000, "Diesel", "Automatico"),
+                veicolo(3, "Fiat", "Tipo", 15_000, "Diesel", "Manuale"),
+                veicolo(4, "Toyota", "Yaris", 18_000, "Ibrida", "Automatico"),
+                veicolo(5, "Volkswagen", "Polo", 9_000, "Benzina", "Manuale")
+        ), 0L);
+    }
+
+    private static List<Long> ids(List<VeicoloCardDTO> schede) {
+        return schede.stream().map(VeicoloCardDTO::id).toList();
+    }
+
+    // ---------------------------------------------------
+    // TC_SNAP_01: nessun filtro
+    // ORACOLO: tutti i veicoli, ordinati per (prezzo, id).
+    // ---------------------------------------------------
+    @Test
+    void tcSnap01_nessunFiltro_ordinePrezzoId() {
+        assertEquals(List.of(5L, 1L, 3L, 4L, 2L), ids(catalogo().cerca(new ShowroomFiltroDTO(), 100)));
+    }
+
+    // ---------------------------------------------------
+    // TC_SNAP_02: filtri su marca (senza distinzione di maiuscole) e range di prezzo
+    // ORACOLO: estremi del range inclusi, marca sconosciuta → nessun risultato.
+    // ---------------------------------------------------
+    @Test
+    void tcSnap02_filtriMarcaEPrezzo() {
+        SnapshotCatalogo snapshot = catalogo();
+
+        ShowroomFiltroDTO filtro = new ShowroomFiltroDTO();
+        filtro.setMarca(" fiat ");
+        assertEquals(List.of(1L, 3L), ids(snapshot.cerca(filtro, 100)));
+
+        filtro = new ShowroomFiltroDTO();
+        filtro.setPrezzoMin(15_000d);
+        filtro.setPrezzoMax(18_000d);
+        assertEquals(List.of(1L, 3L, 4L), ids(snapshot.cerca(filtro, 100)));
+
+        filtro = new ShowroomFiltroDTO();
+        filtro.setMarca("Lancia");
+        assertTrue(snapshot.cerca(filtro, 100).isEmpty());
+    }
+
+    // ---------------------------------------------------
+    // TC_SNAP_03: paginazione con il cursore (dopoPrezzo, dopoId)
+    // ORACOLO: le pagine si susseguono senza salti né ripetizioni,
+    // anche a parità di prezzo.
+    // ---------------------------------------------------
+    @Test
+    void tcSnap03_cursore_pagineConsecutive() {
+        SnapshotCatalogo snapshot = catalogo();
+
+        ShowroomFiltroDTO filtro = new ShowroomFiltroDTO();
+        List<SnapshotCatalogo.Risultato> prima = snapshot.risultati(filtro, 2);
+        assertEquals(List.of(5L, 1L), prima.stream().map(r -> r.scheda().id()).toList());
+
+        SnapshotCatalogo.Risultato ultimo = prima.get(1);
+        filtro.setDopoPrezzo(ultimo.prezzo());
+        filtro.setDopoId(ultimo.scheda().id());
+        assertEquals(List.of(3L, 4L), ids(snapshot.cerca(filtro, 2)));
+    }
+
+    // ---------------------------------------------------
+    // TC_SNAP_04: modifica di un singolo veicolo
+    // ORACOLO: veicolo spostato al nuovo prezzo, aggiunto o tolto;
+    // stesso risultato di uno snapshot ricostruito da zero.
+    // ---------------------------------------------------
+    @Test
+    void tcSnap04_conVeicolo_comeRicostruzioneCompleta() {
+        SnapshotCatalogo snapshot = catalogo();
+
+        SnapshotCatalogo rincarato = snapshot.conVeicolo(1L,
+                veicolo(1, "Fiat", "Panda", 30_000, "Benzina", "Manuale"), 1L);
+        assertEquals(List.of(5L, 3L, 4L, 2L, 1L), ids(rincarato.cerca(new ShowroomFiltroDTO(), 100)));
+        assertEquals(30_000d, rincarato.trova(1L).getPrezzoBase());
+        assertEquals(1L, rincarato.getVersione());
+
+        SnapshotCatalogo aggiunto = rincarato.conVeicolo(6L,
+                veicolo(6, "Fiat", "500", 15_000, "Benzina", "Manuale"), 2L);
+        assertEquals(List.of(5L, 3L, 6L, 4L, 2L, 1L), ids(aggiunto.cerca(new ShowroomFiltroDTO(), 100)));
+
+        SnapshotCatalogo tolto = aggiunto.conVeicolo(4L, null, 3L);
+        assertNull(tolto.trova(4L));
+        assertEquals(5, tolto.dimensione());
+
+        SnapshotCatalogo daZero = SnapshotCatalogo.di(tolto.tutti(), 3L);
+        assertEquals(daZero.tutti(), tolto.tutti());
+        assertEquals(daZero.getImpronta(), tolto.getImpronta());
+
+        // non presente e non da aggiungere: contenuto invariato
+        assertEquals(tolto.getImpronta(), tolto.conVeicolo(99L, null, 4L).getImpronta());
+        // lo snapshot di partenza non cambia
+        assertEquals(List.of(5L, 1L, 3L, 4L, 2L), ids(snapshot.cerca(new ShowroomFiltroDTO(), 100)));
+    }
+
+    // ---------------------------------------------------
+    // TC_SNAP_05: faccette con filtri su marca e prezzo massimo
+    // ORACOLO: ogni faccetta ignora il proprio filtro; le fasce ignorano il range
+    // di prezzo e restano tutte in ordine fisso; le altre solo i valori presenti,
+    // dal più frequente. Il cursore non cambia i conteggi.
+    // ---------------------------------------------------
+    @Test
+    void tcSnap05_facette_ignoranoIlProprioFiltro() {
+        ShowroomFiltroDTO filtro = new ShowroomFiltroDTO();
+        filtro.setMarca("Fiat");
+        filtro.setPrezzoMax(20_000d);
+
+        FacetteDTO facette = catalogo().facette(filtro);
+
+        assertEquals(List.of("Fiat", "Toyota", "Volkswagen"), List.copyOf(facette.getMarca().keySet()));
+        assertEquals(Map.of("Fiat", 2, "Toyota", 1, "Volkswagen", 1), facette.getMarca());
+        assertEquals(Map.of("Panda", 1, "Tipo", 1), facette.getModello());
+        assertEquals(Map.of("Benzina", 1, "Diesel", 1), facette.getAlimentazione());
+        assertEquals(Map.of("Manuale", 2), facette.getCambio());
+        assertEquals(List.of("0-10000", "10000-20000", "20000-30000", "30000-50000", "50000+"),
+                List.copyOf(facette.getFasciaPrezzo().keySet()));
+        assertEquals(List.of(0, 2, 0, 0, 0), List.copyOf(facette.getFasciaPrezzo().values()));
+
+        filtro.setDopoPrezzo(15_000d);
+        filtro.setDopoId(3L);
+        assertEquals(facette, catalogo().facette(filtro));
+    }
+
+    // ---------------------------------------------------
+    // TC_SNAP_06: valore di faccetta non presente nel catalogo
+    // ORACOLO: nessun risultato e conteggi a zero sulle altre faccette,
+    // la faccetta filtrata mostra ancora le alternative.
+    // ---------------------------------------------------
+    @Test
+    void tcSnap06_valoreAssente_conteggiAZero() {
+        ShowroomFiltroDTO filtro = new ShowroomFiltroDTO();
+        filtro.setAlimentazione("Elettrica");
+
+        FacetteDTO facette = catalogo().facette(filtro);
+
+        assertTrue(facette.getMarca().isEmpty());
+        assertEquals(5, facette.getAlimentazione().values().stream().mapToInt(Integer::intValue).sum());
+        assertEquals(List.of(0, 0, 0, 0, 0), List.copyOf(facette.getFasciaPrezzo().values()));
+    }
+
+    // ---------------------------------------------------
+    // TC_SNAP_07: ricerca testuale con un errore di battitura
+    // ORACOLO: trova comunque la marca, il veicolo che corrisponde
+    // a entrambi i termini viene prima.
+    // ---------------------------------------------------
+    @Test
+    void tcSnap07_testoConErrore_ordinePerPertinenza() {
+        ShowroomFiltroDTO filtro = new ShowroomFiltroDTO();
+        filtro.setTesto("Volkswagn golf");
+
+        assertEquals(List.of(2L, 5L), ids(catalogo().cerca(filtro, 100)));
+
+        // prefisso di almeno tre lettere
+        filtro.setTesto("toy");
+        assertEquals(List.of(4L), ids(catalogo().cerca(filtro, 100)));
+
+        // solo spazi e punteggiatura: nessun termine, nessun filtro testuale
+        filtro.setTesto(" - ");
+        assertEquals(5, catalogo().cerca(filtro, 100).size());
+    }
+
+    // ---------------------------------------------------
+    // TC_SNAP_08: paginazione dei risultati testuali
+    // ORACOLO: il cursore (dopoPunteggio, dopoPrezzo, dopoId) porta alla pagina
+    // successiva senza ripetizioni, anche a pari punteggio (ordine per prezzo, id).
+    // ---------------------------------------------------
+    @Test
+    void tcSnap08_testo_cursoreConPunteggio() {
+        SnapshotCatalogo snapshot = catalogo();
+        ShowroomFiltroDTO filtro = new ShowroomFiltroDTO();
+        filtro.setTesto("diesel");
+
+        List<Long> visti = new ArrayList<>();
+        List<SnapshotCatalogo.Risultato> pagina = snapshot.risultati(filtro, 1);
+        while (!pagina.isEmpty()) {
+            SnapshotCatalogo.Risultato ultimo = pagina.get(pagina.size() - 1);
+            assertNotNull(ultimo.punteggio());
+            visti.add(ultimo.scheda().id());
+
+            filtro.setDopoPunteggio(ultimo.punteggio());
+            filtro.setDopoPrezzo(ultimo.prezzo());
+            filtro.setDopoId(ultimo.scheda().id());
+            pagina = snapshot.risultati(filtro, 1);
+        }
+
+        assertEquals(List.of(3L, 2L), visti);
+    }
+
+    // ---------------------------------------------------
+    // TC_SNAP_09: faccette con ricerca testuale
+    // ORACOLO: contano solo i veicoli che corrispondono al testo.
+    // ---------------------------------------------------
+    @Test
+    void tcSnap09_facetteConTesto() {
+        ShowroomFiltroDTO filtro = new ShowroomFiltroDTO();
+        filtro.setTesto("diesel");
+
+        FacetteDTO facette = catalogo().facette(filtro);
+
+        assertEquals(List.of("Fiat", "Volkswagen"), List.copyOf(facette.getMarca().keySet()));
+        assertEquals(Map.of("Diesel", 2), facette.getAlimentazione());
+        assertEquals(List.of(0, 1, 1, 0, 0), List.copyOf(facette.getFasciaPrezzo().values()));
+    }
+}
@@ -0,0 +1,168 @@
+package it.autoflow.showroom.controller;
+
+import it.autoflow.configuration.entity.OptionalAccessorio;
+import it.autoflow.configuration.repository.OptionalAccessorioRepository;
+import it.autoflow.showroom.catalog.CatalogoShowroom;
+import it.autoflow.vehicle.entity.StatoVeicolo;
+import it.autoflow.vehicle.entity.Veicolo;
+import it.autoflow.vehicle.repository.VeicoloRepository;
+import jakarta.transaction.Transactional;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * GET condizionali del catalogo pubblico: ETag dal contenuto, 304 alla rivalidazione.
+ * Validazione dei filtri della ricerca.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc(addFilters = false)
+@ActiveProfiles("test")
+@Transactional
+// lo snapshot del catalogo vive nel bean: non va riusato da altre classi di test
+@DirtiesContext
+class ShowroomControllerIT {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private VeicoloRepository veicoloRepository;
+
+    @Autowired
+    private OptionalAccessorioRepository optionalAccessorioRepository;
+
+    @Autowired
+    private CatalogoShowroom catalogoShowroom;
+
+    private Veicolo salvaVeicolo(String modello, double prezzo) {
+        Veicolo v = new Veicolo();
+        v.setMarca("Fiat");
+        v.setModello(modello);
+        v.setAnno(2022);
+        v.setPrezzoBase(prezzo);
+        v.setAlimentazione("Benzina");
+        v.setCambio("Manuale");
+        v.setColoreEsterno("Rosso");
+        v.setStato(StatoVeicolo.DISPONIBILE);
+        v.setVisibileAlPubblico(true);
+        return veicoloRepository.save(v);
+    }
+
+    // --------------------------------------------------------
+    // TC_CACHE_01 - GET /showroom/{id}
+    // ORACOLO: 200 con ETag, 304 se il client rimanda lo stesso ETag,
+    // 404 per un veicolo non pubblicato.
+    // --------------------------------------------------------
+    @Test
+    void tcCache01_dettaglio_304ConLoStessoEtagE404SeAssente() throws Exception {
+        Veicolo v = salvaVeicolo("Panda", 15_000);
+        catalogoShowroom.ricarica();
+
+        String etag = mockMvc.perform(get("/showroom/{id}", v.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.modello", is("Panda")))
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/showroom/{id}", v.getId()).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        mockMvc.perform(get("/showroom/{id}", v.getId() + 1000))
+                .andExpect(status().isNotFound());
+    }
+
+    // --------------------------------------------------------
+    // TC_CACHE_02 - GET /veicoli/showroom
+    // ORACOLO: ETag invariato a parità di contenuto (anche dopo una ricarica),
+    // diverso quando un veicolo cambia; il vecchio ETag riceve 200.
+    // --------------------------------------------------------
+    @Test
+    void tcCache02_listaShowroom_etagDalContenuto() throws Exception {
+        Veicolo v = salvaVeicolo("Tipo", 18_000);
+        catalogoShowroom.ricarica();
+
+        String etag = mockMvc.perform(get("/veicoli/showroom"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(etag);
+
+        // stesso contenuto ricaricato: lo stesso ETag che avrebbe un altro nodo
+        catalogoShowroom.ricarica();
+        mockMvc.perform(get("/veicoli/showroom").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        v.setPrezzoBase(17_500.0);
+        veicoloRepository.saveAndFlush(v);
+        catalogoShowroom.ricarica();
+
+        String nuovo = mockMvc.perform(get("/veicoli/showroom").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotEquals(etag, nuovo);
+    }
+
+    // --------------------------------------------------------
+    // TC_CACHE_03 - GET /api/optional
+    // ORACOLO: 304 finché la lista non cambia, 200 con nuovo ETag dopo una modifica.
+    // --------------------------------------------------------
+    @Test
+    void tcCache03_optional_304FinoAllaModifica() throws Exception {
+        OptionalAccessorio o = new OptionalAccessorio();
+        o.setCodice("TETTO");
+        o.setNome("Tetto apribile");
+        o.setPrezzo(900.0);
+        o = optionalAccessorioRepository.saveAndFlush(o);
+
+        String etag = mockMvc.perform(get("/api/optional"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/api/optional").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        o.setPrezzo(950.0);
+        optionalAccessorioRepository.saveAndFlush(o);
+
+        mockMvc.perform(get("/api/optional").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, not(etag)));
+    }
+
+    // --------------------------------------------------------
+    // TC_SEARCH_01 - POST /showroom/search
+    // ORACOLO: filtri non validi (testo oltre 200 caratteri, prezzo negativo)
+    // rifiutati con 400 come su /showroom/search/pagina; un filtro valido risponde 200.
+    // --------------------------------------------------------
+    @Test
+    void tcSearch01_filtroNonValido_400() throws Exception {
+        mockMvc.perform(post("/showroom/search")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"testo\":\"" + "a".repeat(201) + "\"}"))
+                .andExpect(status().isBadRequest());
+
+        mockMvc.perform(post("/showroom/search")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"prezzoMin\":-1}"))
+                .andExpect(status().isBadRequest());
+
+        mockMvc.perform(post("/showroom/search")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"marca\":\"Fiat\"}"))
+                .andExpect(status().isOk());
+    }
+}
@@ -0,0 +1,206 @@
+package it.autoflow.statistics.service;
+
+import it.autoflow.invoice.event.FatturaModificataEvent;
+import it.autoflow.invoice.repository.FatturaRepository;
+import it.autoflow.proposal.entity.StatoProposta;
+import it.autoflow.proposal.event.PropostaModificataEvent;
+import it.autoflow.proposal.repository.PropostaRepository;
+import it.autoflow.statistics.entity.StatisticaContatore;
+import it.autoflow.statistics.repository.StatisticaContatoreRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ContatoriStatisticheTest {
+
+    private static final LocalDate MARZO = LocalDate.of(2026, 3, 10);
+    private static final LocalDate APRILE = LocalDate.of(2026, 4, 2);
+
+    @Mock
+    private StatisticaContatoreRepository contatoreRepository;
+
+    @Mock
+    private PropostaRepository propostaRepository;
+
+    @Mock
+    private FatturaRepository fatturaRepository;
+
+    // le transazioni separate girano sul mock: il callback viene eseguito subito
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private ContatoriStatistiche contatori;
+
+    @BeforeEach
+    void setUp() {
+        contatori = new ContatoriStatistiche(contatoreRepository, propostaRepository, fatturaRepository,
+                transactionManager);
+        lenient().when(contatoreRepository.existsById(anyString())).thenReturn(true);
+        lenient().when(contatoreRepository.incrementa(anyString(), anyDouble())).thenReturn(1);
+    }
+
+    // ---------------------------------------------------
+    // TC_CONT_01: nuova fattura non pagata
+    // ORACOLO: +1 fatture e non pagate, +importo su fatturato totale e del mese.
+    // ---------------------------------------------------
+    @Test
+    void tcCont01_creazioneFatturaNonPagata() {
+        contatori.onFatturaModificata(new FatturaModificataEvent(1L, null, valori(MARZO, 1_000, false)));
+
+        assertEquals(Map.of(
+                ContatoriStatistiche.FATTURE, 1d,
+                ContatoriStatistiche.FATTURE_NON_PAGATE, 1d,
+                ContatoriStatistiche.FATTURATO, 1_000d,
+                ContatoriStatistiche.fatturatoMese(YearMonth.of(2026, 3)), 1_000d
+        ), incrementi());
+    }
+
+    // ---------------------------------------------------
+    // TC_CONT_02: fattura segnata come pagata
+    // ORACOLO: cambia solo il contatore delle non pagate; le chiavi
+    // con delta nullo non vengono toccate.
+    // ---------------------------------------------------
+    @Test
+    void tcCont02_pagamento_soloNonPagate() {
+        contatori.onFatturaModificata(new FatturaModificataEvent(1L,
+                valori(MARZO, 1_000, false), valori(MARZO, 1_000, true)));
+
+        assertEquals(Map.of(ContatoriStatistiche.FATTURE_NON_PAGATE, -1d), incrementi());
+    }
+
+    // ---------------------------------------------------
+    // TC_CONT_03: data di emissione spostata al mese successivo, con nuovo importo
+    // ORACOLO: il vecchio mese perde il vecchio importo, il nuovo guadagna il nuovo;
+    // il totale cambia della sola differenza, il numero di fatture no.
+    // ---------------------------------------------------
+    @Test
+    void tcCont03_cambioMese_spostaIlFatturato() {
+        contatori.onFatturaModificata(new FatturaModificataEvent(1L,
+                valori(MARZO, 1_000, false), valori(APRILE, 1_200, false)));
+
+        assertEquals(Map.of(
+                ContatoriStatistiche.FATTURATO, 200d,
+                ContatoriStatistiche.fatturatoMese(YearMonth.of(2026, 3)), -1_000d,
+                ContatoriStatistiche.fatturatoMese(YearMonth.of(2026, 4)), 1_200d
+        ), incrementi());
+    }
+
+    // ---------------------------------------------------
+    // TC_CONT_04: eliminazione di una fattura pagata
+    // ORACOLO: tutti i contributi tolti, le non pagate restano invariate.
+    // ---------------------------------------------------
+    @Test
+    void tcCont04_eliminazioneFatturaPagata() {
+        contatori.onFatturaModificata(new FatturaModificataEvent(1L, valori(MARZO, 1_000, true), null));
+
+        assertEquals(Map.of(
+                ContatoriStatistiche.FATTURE, -1d,
+                ContatoriStatistiche.FATTURATO, -1_000d,
+                ContatoriStatistiche.fatturatoMese(YearMonth.of(2026, 3)), -1_000d
+        ), incrementi());
+    }
+
+    // ---------------------------------------------------
+    // TC_CONT_05: cambio di stato, creazione ed eliminazione di una proposta
+    // ORACOLO: il cambio di stato sposta un'unità tra gli stati senza toccare il totale;
+    // stesso stato → nessuna scrittura.
+    // ---------------------------------------------------
+    @Test
+    void tcCont05_proposte_spostamentoTraStati() {
+        contatori.onPropostaModificata(new PropostaModificataEvent(1L, StatoProposta.INVIATA, StatoProposta.ACCETTATA));
+        assertEquals(Map.of(
+                ContatoriStatistiche.proposteInStato(StatoProposta.INVIATA), -1d,
+                ContatoriStatistiche.proposteInStato(StatoProposta.ACCETTATA), 1d
+        ), incrementi());
+
+        clearInvocations(contatoreRepository);
+        contatori.onPropostaModificata(new PropostaModificataEvent(1L, StatoProposta.BOZZA, StatoProposta.BOZZA));
+        verify(contatoreRepository, never()).incrementa(anyString(), anyDouble());
+
+        contatori.onPropostaModificata(new PropostaModificataEvent(2L, null, StatoProposta.BOZZA));
+        contatori.onPropostaModificata(new PropostaModificataEvent(3L, StatoProposta.RIFIUTATA, null));
+        assertEquals(Map.of(
+                ContatoriStatistiche.PROPOSTE, 0d,
+                ContatoriStatistiche.proposteInStato(StatoProposta.BOZZA), 1d,
+                ContatoriStatistiche.proposteInStato(StatoProposta.RIFIUTATA), -1d
+        ), incrementi());
+    }
+
+    // ---------------------------------------------------
+    // TC_CONT_06: prima scrittura su una chiave senza riga
+    // ORACOLO: la riga viene creata a zero una sola volta, in una transazione
+    // separata, poi incrementata; alla scrittura successiva il DB non viene ricontrollato.
+    // ---------------------------------------------------
+    @Test
+    void tcCont06_chiaveNuova_creataAZeroUnaVolta() {
+        given(contatoreRepository.existsById(anyString())).willReturn(false);
+
+        contatori.onFatturaModificata(new FatturaModificataEvent(1L, null, valori(MARZO, 1_000, true)));
+        contatori.onFatturaModificata(new FatturaModificataEvent(2L, null, valori(MARZO, 500, true)));
+
+        ArgumentCaptor<StatisticaContatore> create = ArgumentCaptor.forClass(StatisticaContatore.class);
+        verify(contatoreRepository, times(3)).saveAndFlush(create.capture());
+        assertTrue(create.getAllValues().stream().allMatch(c -> c.getValore() == 0d));
+        verify(contatoreRepository, times(3)).existsById(anyString());
+        verify(transactionManager, times(3)).commit(any());
+        verify(contatoreRepository).incrementa(ContatoriStatistiche.FATTURATO, 1_000d);
+        verify(contatoreRepository).incrementa(ContatoriStatistiche.FATTURATO, 500d);
+    }
+
+    // ---------------------------------------------------
+    // TC_CONT_07: riga cancellata a mano dopo essere stata vista
+    // ORACOLO: l'UPDATE a vuoto la fa ricreare a zero in una transazione separata
+    // (mai un INSERT con il delta nella transazione del chiamante), poi l'UPDATE
+    // viene ripetuto con lo stesso delta.
+    // ---------------------------------------------------
+    @Test
+    void tcCont07_rigaSparita_ricreataAZeroEUpdateRipetuto() {
+        given(contatoreRepository.incrementa(ContatoriStatistiche.PROPOSTE, 1d)).willReturn(0, 1);
+        given(contatoreRepository.existsById(ContatoriStatistiche.PROPOSTE)).willReturn(true, false);
+
+        contatori.onPropostaModificata(new PropostaModificataEvent(1L, null, StatoProposta.BOZZA));
+
+        ArgumentCaptor<StatisticaContatore> ricreate = ArgumentCaptor.forClass(StatisticaContatore.class);
+        verify(contatoreRepository).saveAndFlush(ricreate.capture());
+        assertEquals(ContatoriStatistiche.PROPOSTE, ricreate.getValue().getChiave());
+        assertEquals(0d, ricreate.getValue().getValore());
+        verify(transactionManager, times(3)).commit(any());
+        verify(contatoreRepository, times(2)).incrementa(ContatoriStatistiche.PROPOSTE, 1d);
+        verify(contatoreRepository).incrementa(ContatoriStatistiche.proposteInStato(StatoProposta.BOZZA), 1d);
+    }
+
+    private static FatturaModificataEvent.Valori valori(LocalDate emissione, double importo, boolean pagata) {
+        return new FatturaModificataEvent.Valori(emissione, importo, pagata, 7L);
+    }
+
+    // somma per chiave degli incrementi mandati al DB
+    private Map<String, Double> incrementi() {
+        ArgumentCaptor<String> chiavi = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Double> delta = ArgumentCaptor.forClass(Double.class);
+        verify(contatoreRepository, atLeastOnce()).incrementa(chiavi.capture(), delta.capture());
+
+        List<String> k = chiavi.getAllValues();
+        List<Double> v = delta.getAllValues();
+        Map<String, Double> somme = new HashMap<>();
+        for (int i = 0; i < k.size(); i++) {
+            somme.merge(k.get(i), v.get(i), Double::sum);
+        }
+        return somme;
+    }
+}
@@ -0,0 +1,202 @@
+package it.autoflow.statistics.service;
+
+import it.autoflow.invoice.event.FatturaModificataEvent;
+import it.autoflow.invoice.repository.FatturaRepository;
+import it.autoflow.statistics.entity.FatturatoGiornaliero;
+import it.autoflow.statistics.repository.FatturatoGiornalieroRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RollupFatturatoTest {
+
+    private static final LocalDate GIORNO = LocalDate.of(2026, 3, 10);
+    private static final LocalDate GIORNO_DOPO = LocalDate.of(2026, 3, 11);
+
+    @Mock
+    private FatturatoGiornalieroRepository rollupRepository;
+
+    @Mock
+    private FatturaRepository fatturaRepository;
+
+    // le transazioni separate girano sul mock: il callback viene eseguito subito
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private RollupFatturato rollup;
+
+    record Incremento(LocalDate giorno, long addetto, double fatturato, long numeroFatture, long nonPagate) {
+    }
+
+    @BeforeEach
+    void setUp() {
+        rollup = new RollupFatturato(rollupRepository, fatturaRepository, transactionManager);
+        lenient().when(rollupRepository.existsByGiornoAndAddettoVenditeId(any(), anyLong())).thenReturn(true);
+        lenient().when(rollupRepository.incrementa(any(), anyLong(), anyDouble(), anyLong(), anyLong()))
+                .thenReturn(1);
+    }
+
+    // ---------------------------------------------------
+    // TC_ROLLUP_01: nuova fattura non pagata, poi pagata
+    // ORACOLO: la creazione aggiunge importo, una fattura e una non pagata alla riga
+    // (giorno, addetto); il pagamento toglie solo la non pagata dalla stessa riga.
+    // ---------------------------------------------------
+    @Test
+    void tcRollup01_creazioneEPagamento_stessaRiga() {
+        rollup.onFatturaModificata(new FatturaModificataEvent(1L, null, valori(GIORNO, 1_000, false, 7L)));
+        rollup.onFatturaModificata(new FatturaModificataEvent(1L,
+                valori(GIORNO, 1_000, false, 7L), valori(GIORNO, 1_000, true, 7L)));
+
+        assertEquals(List.of(
+                new Incremento(GIORNO, 7L, 1_000, 1, 1),
+                new Incremento(GIORNO, 7L, 0, 0, -1)
+        ), incrementi());
+    }
+
+    // ---------------------------------------------------
+    // TC_ROLLUP_02: data di emissione spostata al giorno dopo
+    // ORACOLO: la fattura passa per intero dalla vecchia alla nuova riga.
+    // ---------------------------------------------------
+    @Test
+    void tcRollup02_cambioGiorno_spostaLaFattura() {
+        rollup.onFatturaModificata(new FatturaModificataEvent(1L,
+                valori(GIORNO, 1_000, false, 7L), valori(GIORNO_DOPO, 1_000, false, 7L)));
+
+        assertEquals(List.of(
+                new Incremento(GIORNO, 7L, -1_000, -1, -1),
+                new Incremento(GIORNO_DOPO, 7L, 1_000, 1, 1)
+        ), incrementi());
+    }
+
+    // ---------------------------------------------------
+    // TC_ROLLUP_03: proposta riassegnata a un altro addetto, e poi a nessuno
+    // ORACOLO: stesso giorno, la fattura passa da un addetto all'altro;
+    // senza addetto finisce sulla riga NESSUN_ADDETTO.
+    // ---------------------------------------------------
+    @Test
+    void tcRollup03_cambioAddetto_spostaLaFattura() {
+        rollup.onFatturaModificata(new FatturaModificataEvent(1L,
+                valori(GIORNO, 1_000, true, 7L), valori(GIORNO, 1_000, true, 8L)));
+        rollup.onFatturaModificata(new FatturaModificataEvent(1L,
+                valori(GIORNO, 1_000, true, 8L), valori(GIORNO, 1_000, true, null)));
+
+        assertEquals(List.of(
+                new Incremento(GIORNO, 7L, -1_000, -1, 0),
+                new Incremento(GIORNO, 8L, 1_000, 1, 0),
+                new Incremento(GIORNO, 8L, -1_000, -1, 0),
+                new Incremento(GIORNO, FatturatoGiornaliero.NESSUN_ADDETTO, 1_000, 1, 0)
+        ), incrementi());
+    }
+
+    // ---------------------------------------------------
+    // TC_ROLLUP_04: eliminazione di una fattura non pagata
+    // ORACOLO: tutti i contributi tolti dalla sua riga.
+    // ---------------------------------------------------
+    @Test
+    void tcRollup04_eliminazione() {
+        rollup.onFatturaModificata(new FatturaModificataEvent(1L, valori(GIORNO, 1_000, false, 7L), null));
+
+        assertEquals(List.of(new Incremento(GIORNO, 7L, -1_000, -1, -1)), incrementi());
+    }
+
+    // ---------------------------------------------------
+    // TC_ROLLUP_05: modifica che non tocca giorno, addetto, importo né pagamento,
+    // e fattura senza data di emissione
+    // ORACOLO: nessuna scrittura sul rollup.
+    // ---------------------------------------------------
+    @Test
+    void tcRollup05_nessunDelta_nessunaScrittura() {
+        rollup.onFatturaModificata(new FatturaModificataEvent(1L,
+                valori(GIORNO, 1_000, false, 7L), valori(GIORNO, 1_000, false, 7L)));
+        rollup.onFatturaModificata(new FatturaModificataEvent(2L, null, valori(null, 500, false, 7L)));
+
+        verifyNoInteractions(rollupRepository, transactionManager);
+    }
+
+    // ---------------------------------------------------
+    // TC_ROLLUP_06: prima fattura del giorno per un addetto
+    // ORACOLO: la riga viene creata a zero una sola volta, in una transazione
+    // separata, prima dell'UPDATE.
+    // ---------------------------------------------------
+    @Test
+    void tcRollup06_rigaNuova_creataAZeroUnaVolta() {
+        given(rollupRepository.existsByGiornoAndAddettoVenditeId(GIORNO, 7L)).willReturn(false);
+
+        rollup.onFatturaModificata(new FatturaModificataEvent(1L, null, valori(GIORNO, 1_000, false, 7L)));
+        rollup.onFatturaModificata(new FatturaModificataEvent(2L, null, valori(GIORNO, 500, false, 7L)));
+
+        ArgumentCaptor<FatturatoGiornaliero> create = ArgumentCaptor.forClass(FatturatoGiornaliero.class);
+        verify(rollupRepository).saveAndFlush(create.capture());
+        FatturatoGiornaliero riga = create.getValue();
+        assertEquals(GIORNO, riga.getGiorno());
+        assertEquals(7L, riga.getAddettoVenditeId());
+        assertEquals(0d, riga.getFatturato());
+        assertEquals(0L, riga.getNumeroFatture());
+        verify(rollupRepository).existsByGiornoAndAddettoVenditeId(GIORNO, 7L);
+        verify(transactionManager).commit(any());
+        assertEquals(2, incrementi().size());
+    }
+
+    // ---------------------------------------------------
+    // TC_ROLLUP_07: riga cancellata a mano dopo essere stata vista
+    // ORACOLO: l'UPDATE a vuoto la fa ricreare a zero in una transazione separata
+    // (mai un INSERT con il delta nella transazione del chiamante), poi l'UPDATE
+    // viene ripetuto con lo stesso delta.
+    // ---------------------------------------------------
+    @Test
+    void tcRollup07_rigaSparita_ricreataAZeroEUpdateRipetuto() {
+        given(rollupRepository.incrementa(GIORNO, 7L, 1_000d, 1L, 1L)).willReturn(0, 1);
+        given(rollupRepository.existsByGiornoAndAddettoVenditeId(GIORNO, 7L)).willReturn(true, false);
+
+        rollup.onFatturaModificata(new FatturaModificataEvent(1L, null, valori(GIORNO, 1_000, false, 7L)));
+
+        ArgumentCaptor<FatturatoGiornaliero> create = ArgumentCaptor.forClass(FatturatoGiornaliero.class);
+        verify(rollupRepository).saveAndFlush(create.capture());
+        assertEquals(0d, create.getValue().getFatturato());
+        assertEquals(0L, create.getValue().getNumeroFatture());
+        assertEquals(0L, create.getValue().getNonPagate());
+        verify(transactionManager, times(2)).commit(any());
+        assertEquals(List.of(
+                new Incremento(GIORNO, 7L, 1_000, 1, 1),
+                new Incremento(GIORNO, 7L, 1_000, 1, 1)
+        ), incrementi());
+    }
+
+    private static FatturaModificataEvent.Valori valori(LocalDate emissione, double importo, boolean pagata,
+                                                        Long addetto) {
+        return new FatturaModificataEvent.Valori(emissione, importo, pagata, addetto);
+    }
+
+    // incrementi mandati al DB, nell'ordine
+    private List<Incremento> incrementi() {
+        ArgumentCaptor<LocalDate> giorni = ArgumentCaptor.forClass(LocalDate.class);
+        ArgumentCaptor<Long> addetti = ArgumentCaptor.forClass(Long.class);
+        ArgumentCaptor<Double> fatturato = ArgumentCaptor.forClass(Double.class);
+        ArgumentCaptor<Long> numero = ArgumentCaptor.forClass(Long.class);
+        ArgumentCaptor<Long> nonPagate = ArgumentCaptor.forClass(Long.class);
+        verify(rollupRepository, atLeastOnce()).incrementa(giorni.capture(), addetti.capture(),
+                fatturato.capture(), numero.capture(), nonPagate.capture());
+
+        List<Incremento> incrementi = new ArrayList<>();
+        for (int i = 0; i < giorni.getAllValues().size(); i++) {
+            incrementi.add(new Incremento(giorni.getAllValues().get(i), addetti.getAllValues().get(i),
+                    fatturato.getAllValues().get(i), numero.getAllValues().get(i),
+                    nonPagate.getAllValues().get(i)));
+        }
+        return incrementi;
+    }
+}
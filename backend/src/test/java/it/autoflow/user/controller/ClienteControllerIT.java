@@ -17,6 +17,7 @@ import org.springframework.test.web.servlet.MockMvc;
 import java.time.LocalDate;
 
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -119,4 +120,47 @@ class ClienteControllerIT {
                 .andExpect(jsonPath("$.cognome", is("Rossi")))
                 .andExpect(jsonPath("$.email", is("mario.rossi@example.com")));
     }
-}
\ No newline at end of file
+
+    private Cliente salvaCliente(String nome, String email) {
+        Cliente c = new Cliente();
+        c.setUsername(email);
+        c.setPassword(PasswordHasher.sha512("AutoFlow2025!"));
+        c.setRuolo(Ruolo.CLIENTE);
+        c.setAttivo(true);
+        c.setNome(nome);
+        c.setCognome("Test");
+        c.setEmail(email);
+        return clienteRepository.save(c);
+    }
+
+    // --------------------------------------------------------
+    // TC2_03 - GET /clienti?limit=&after= paginazione a cursore
+    // ORACOLO: pagine consecutive senza salti né ripetizioni,
+    // nextCursor = id dell'ultimo elemento, assente sull'ultima pagina.
+    // --------------------------------------------------------
+    @Test
+    void tc2_03_paginazioneACursore_pagineConsecutive() throws Exception {
+        Cliente primo = salvaCliente("Anna", "anna.test@example.com");
+        Cliente secondo = salvaCliente("Bruno", "bruno.test@example.com");
+        Cliente terzo = salvaCliente("Carla", "carla.test@example.com");
+
+        mockMvc.perform(get("/clienti")
+                        .param("after", String.valueOf(primo.getId() - 1))
+                        .param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()", is(2)))
+                .andExpect(jsonPath("$.items[0].id").value(primo.getId()))
+                .andExpect(jsonPath("$.items[1].id").value(secondo.getId()))
+                .andExpect(jsonPath("$.hasNext", is(true)))
+                .andExpect(jsonPath("$.nextCursor").value(secondo.getId()));
+
+        mockMvc.perform(get("/clienti")
+                        .param("after", String.valueOf(secondo.getId()))
+                        .param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()", is(1)))
+                .andExpect(jsonPath("$.items[0].id").value(terzo.getId()))
+                .andExpect(jsonPath("$.hasNext", is(false)))
+                .andExpect(jsonPath("$.nextCursor", nullValue()));
+    }
+}
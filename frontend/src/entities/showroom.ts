@@ -5,4 +5,17 @@ export interface ShowroomFiltro {
     modello?: string
     prezzoMin?: number | null
     prezzoMax?: number | null
-}
\ No newline at end of file
+}
+
+// Scheda compatta restituita dalla ricerca showroom
+export interface VeicoloCardDTO {
+    id: number
+    marca: string
+    modello: string
+    anno: number
+    prezzoBase: number
+    chilometraggio: number
+    alimentazione: string
+    cambio: string
+    coloreEsterno: string
+}
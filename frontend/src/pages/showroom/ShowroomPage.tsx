@@ -1,7 +1,6 @@
 import { useEffect, useState, type FormEvent } from 'react'
 import { Link } from 'react-router-dom'
-import type { ShowroomFiltro } from '../../entities/showroom'
-import type { VeicoloDTO } from '../../entities/vehicle'
+import type { ShowroomFiltro, VeicoloCardDTO } from '../../entities/showroom'
 import { searchShowroom } from '../../services/showroomService'
 import { getAuthState, logout } from '../../services/authService'
 import { getClienteById } from '../../services/clientService' // 👈 IMPORT CORRETTO
@@ -19,7 +18,7 @@ function emptyFiltro(): ShowroomFiltro {
 
 const ShowroomPage: React.FC = () => {
     const [filtro, setFiltro] = useState<ShowroomFiltro>(emptyFiltro())
-    const [veicoli, setVeicoli] = useState<VeicoloDTO[]>([])
+    const [veicoli, setVeicoli] = useState<VeicoloCardDTO[]>([])
     const [loading, setLoading] = useState(false)
     const [error, setError] = useState<string | null>(null)
     const [nomeCliente, setNomeCliente] = useState<string | null>(null) // 👈 NEW
@@ -5,6 +5,7 @@ import { authHeaders, getAuthState } from './authService'
 import type { FatturaDTO } from '../entities/fattura'
 
 const API_BASE_URL = 'http://localhost:8080/api/fatture'
+const PDF_MAX_TENTATIVI = 15
 
 // già usato in AdminPropostaEditPage
 export async function generaFatturaDaProposta(
@@ -52,10 +53,16 @@ export async function downloadFatturaPdf(
     id: number,
     filename?: string,
 ): Promise<void> {
-    const res = await axios.get(`${API_BASE_URL}/${id}/pdf`, {
-        headers: authHeaders(),
-        responseType: 'blob',
-    })
+    // 202 = PDF ancora in coda di rendering: riprova dopo Retry-After secondi
+    let res = await richiediPdf(id)
+    for (let tentativi = 0; res.status === 202; tentativi++) {
+        if (tentativi >= PDF_MAX_TENTATIVI) {
+            throw new Error('Il PDF della fattura non è ancora pronto')
+        }
+        const attesa = Number(res.headers['retry-after'] ?? 2) * 1000
+        await new Promise((resolve) => setTimeout(resolve, attesa))
+        res = await richiediPdf(id)
+    }
 
     const blob = new Blob([res.data], { type: 'application/pdf' })
     const url = window.URL.createObjectURL(blob)
@@ -68,4 +75,22 @@ export async function downloadFatturaPdf(
     link.click()
     link.remove()
     window.URL.revokeObjectURL(url)
-}
\ No newline at end of file
+}
+// 500 = rendering fallito: il corpo (blob) è lo stato del documento con il campo "errore"
+async function richiediPdf(id: number) {
+    try {
+        return await axios.get(`${API_BASE_URL}/${id}/pdf`, {
+            headers: authHeaders(),
+            responseType: 'blob',
+        })
+    } catch (err: any) {
+        const data = axios.isAxiosError(err) ? err.response?.data : undefined
+        if (data instanceof Blob) {
+            const stato = await data.text().then(JSON.parse).catch(() => null)
+            if (stato && typeof stato.errore === 'string') {
+                throw new Error(`Generazione del PDF fallita: ${stato.errore}`)
+            }
+        }
+        throw err
+    }
+}
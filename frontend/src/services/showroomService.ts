@@ -1,6 +1,6 @@
 // src/services/showroomService.ts
 import axios from 'axios'
-import type { ShowroomFiltro } from '../entities/showroom'
+import type { ShowroomFiltro, VeicoloCardDTO } from '../entities/showroom'
 import type { VeicoloDTO } from '../entities/vehicle'
 
 const API_BASE_URL = 'http://localhost:8080'
@@ -8,8 +8,8 @@ const API_BASE_URL = 'http://localhost:8080'
 // Ricerca veicoli per lo showroom pubblico
 export async function searchShowroom(
     filtro: ShowroomFiltro,
-): Promise<VeicoloDTO[]> {
-    const res = await axios.post<VeicoloDTO[]>(
+): Promise<VeicoloCardDTO[]> {
+    const res = await axios.post<VeicoloCardDTO[]>(
         `${API_BASE_URL}/showroom/search`,
         filtro,
     )